@@ -0,0 +1,18 @@
+package com.example.codepilot.config;
+
+import com.example.codepilot.service.ServerMetrics;
+import io.micrometer.observation.ObservationRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class ObservationConfig {
+
+    // Registry the hot path reports to; ServerMetrics turns its observations into timers
+    @Bean
+    public ObservationRegistry observationRegistry(ServerMetrics serverMetrics) {
+        ObservationRegistry registry = ObservationRegistry.create();
+        registry.observationConfig().observationHandler(serverMetrics);
+        return registry;
+    }
+}
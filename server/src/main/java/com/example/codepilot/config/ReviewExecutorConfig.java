@@ -0,0 +1,77 @@
+package com.example.codepilot.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+@Configuration
+public class ReviewExecutorConfig {
+
+    @Value("${app.review.executor.threads:8}")
+    private int threads;
+
+    @Value("${app.review.executor.queue-capacity:32}")
+    private int queueCapacity;
+
+    @Value("${app.review.coordinator.threads:4}")
+    private int coordinatorThreads;
+
+    @Value("${app.github.fetch-parallelism:8}")
+    private int fetchThreads;
+
+    @Value("${app.github.review-threads:8}")
+    private int repositoryReviewThreads;
+
+    // Bounded pool used to run the LLM prompts of a review concurrently.
+    // When both the pool and its queue are full new stages are rejected instead of piling up.
+    @Bean(name = "reviewExecutor")
+    public ThreadPoolTaskExecutor reviewExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(queueCapacity);
+        executor.setThreadNamePrefix("review-");
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        executor.initialize();
+        return executor;
+    }
+
+    // Runs reviews that wait on other review stages themselves (chunked reviews behind the
+    // streaming endpoint), so they never occupy the threads their own stages need
+    @Bean(name = "reviewCoordinatorExecutor")
+    public ThreadPoolTaskExecutor reviewCoordinatorExecutor() {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(coordinatorThreads);
+        executor.setMaxPoolSize(coordinatorThreads);
+        executor.setQueueCapacity(coordinatorThreads * 4);
+        executor.setThreadNamePrefix("review-coordinator-");
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        executor.initialize();
+        return executor;
+    }
+
+    // Downloads repository files; only does I/O against GitHub
+    @Bean(name = "githubFetchExecutor")
+    public ThreadPoolTaskExecutor githubFetchExecutor() {
+        return pipelineExecutor(fetchThreads, "github-fetch-");
+    }
+
+    // Reviews repository files; like the coordinator pool it waits on reviewExecutor stages
+    @Bean(name = "repositoryReviewExecutor")
+    public ThreadPoolTaskExecutor repositoryReviewExecutor() {
+        return pipelineExecutor(repositoryReviewThreads, "repository-review-");
+    }
+
+    // Each analysis bounds its own files in flight, so the queue only has to absorb concurrent analyses
+    private ThreadPoolTaskExecutor pipelineExecutor(int threads, String prefix) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(threads * 16);
+        executor.setThreadNamePrefix(prefix);
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+        executor.initialize();
+        return executor;
+    }
+}
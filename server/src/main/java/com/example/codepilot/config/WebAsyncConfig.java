@@ -0,0 +1,20 @@
+package com.example.codepilot.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+public class WebAsyncConfig implements WebMvcConfigurer {
+
+    // Streamed responses without a timeout of their own (review exports) are cut off after this;
+    // the container default of 30 s is far too short for an export
+    @Value("${app.async.request-timeout-ms:3600000}")
+    private long requestTimeoutMs;
+
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setDefaultTimeout(requestTimeoutMs);
+    }
+}
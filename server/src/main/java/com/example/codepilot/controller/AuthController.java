@@ -3,6 +3,7 @@ package com.example.codepilot.controller;
 import com.example.codepilot.models.User;
 import com.example.codepilot.repository.UserRepository;
 import com.example.codepilot.security.JwtUtils;
+import com.example.codepilot.security.TokenRevocationList;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.crypto.password.PasswordEncoder;
@@ -28,6 +29,9 @@ public class AuthController {
     @Autowired
     private JwtUtils jwtUtils;
 
+    @Autowired
+    private TokenRevocationList revocationList;
+
     @PostMapping("/register")
     public ResponseEntity<?> registerUser(@Valid @RequestBody RegisterRequest registerRequest) {
         try {
@@ -54,7 +58,7 @@ public class AuthController {
             user = userRepository.save(user);
 
             // Generate JWT token
-            String jwt = jwtUtils.generateJwtToken(user.getUsername());
+            String jwt = jwtUtils.generateJwtToken(user);
 
             Map<String, Object> response = new HashMap<>();
             response.put("token", jwt);
@@ -95,10 +99,10 @@ public class AuthController {
 
             // Update last login
             user.setLastLogin(LocalDateTime.now());
-            userRepository.save(user);
+            userRepository.findAndSetLastLoginById(user.getId(), user.getLastLogin());
 
             // Generate JWT token
-            String jwt = jwtUtils.generateJwtToken(user.getUsername());
+            String jwt = jwtUtils.generateJwtToken(user);
 
             Map<String, Object> response = new HashMap<>();
             response.put("token", jwt);
@@ -122,16 +126,13 @@ public class AuthController {
     public ResponseEntity<?> getCurrentUser(@RequestHeader("Authorization") String token) {
         try {
             String jwt = token.substring(7); // Remove "Bearer " prefix
-            String usernameOrEmail = jwtUtils.getUserNameFromJwtToken(jwt);
-            // System.out.println("Username===="+ usernameOrEmail);
-
-            // Try to find user by username first, then by email (for OAuth users)
-            Optional<User> userOptional = userRepository.findByUsername(usernameOrEmail);
-            if (userOptional.isEmpty()) {
-                userOptional = userRepository.findByEmail(usernameOrEmail);
+            JwtUtils.AuthToken authToken = jwtUtils.parseJwtToken(jwt);
+            // Tokens without a uid claim predate it and are no longer accepted, as in JwtAuthenticationFilter
+            if (authToken == null || authToken.userId() == null || revocationList.isRevoked(authToken)) {
+                return ResponseEntity.status(401).body(Map.of("error", "Invalid or expired token"));
             }
 
-
+            Optional<User> userOptional = userRepository.findById(authToken.userId());
             if (userOptional.isEmpty()) {
                 return ResponseEntity.badRequest()
                         .body(Map.of("error", "User not found!"));
@@ -158,6 +159,17 @@ public class AuthController {
         }
     }
 
+    // Revokes the presented token; other sessions of the user stay signed in
+    @PostMapping("/logout")
+    public ResponseEntity<?> logout(@RequestHeader("Authorization") String token) {
+        JwtUtils.AuthToken authToken = token.startsWith("Bearer ") ? jwtUtils.parseJwtToken(token.substring(7)) : null;
+        if (authToken == null) {
+            return ResponseEntity.status(401).body(Map.of("error", "Invalid or expired token"));
+        }
+        revocationList.revokeToken(authToken);
+        return ResponseEntity.ok(Map.of("message", "Logged out"));
+    }
+
     // Request DTOs
     public static class RegisterRequest {
         private String username;
@@ -4,6 +4,7 @@ import com.example.codepilot.models.Credit;
 import com.example.codepilot.models.User;
 import com.example.codepilot.repository.CreditRepository;
 import com.example.codepilot.repository.UserRepository;
+import com.example.codepilot.service.CreditService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.ResponseEntity;
@@ -26,6 +27,9 @@ public class CreditController {
     @Autowired
     private UserRepository userRepository;
 
+    @Autowired
+    private CreditService creditService;
+
     @GetMapping("/balance")
     public ResponseEntity<?> getCreditBalance() {
         try {
@@ -94,23 +98,21 @@ public class CreditController {
             }
 
             // For demo purposes, directly add credits (in production, integrate with payment gateway)
-            User user = userRepository.findById(currentUser.getId()).orElse(null);
-            if (user != null) {
-                user.addCredits(credits);
-                user.setTotalSpent(user.getTotalSpent() + price);
-                userRepository.save(user);
-
-                // Save credit record
-                Credit credit = new Credit(user.getId(), credits, "DEMO_PURCHASE");
-                credit.setPrice(price);
-                credit.setStatus("SUCCESS");
-                creditRepository.save(credit);
+            Integer newBalance = creditService.addCredits(currentUser.getId(), credits, price);
+            if (newBalance == null) {
+                return ResponseEntity.badRequest().body(Map.of("error", "User not found"));
             }
 
+            // Save credit record
+            Credit credit = new Credit(currentUser.getId(), credits, "DEMO_PURCHASE");
+            credit.setPrice(price);
+            credit.setStatus("SUCCESS");
+            creditRepository.save(credit);
+
             Map<String, Object> response = new HashMap<>();
             response.put("success", true);
             response.put("creditsAdded", credits);
-            response.put("newBalance", user.getCredits());
+            response.put("newBalance", newBalance);
             response.put("message", "Credits purchased successfully!");
 
             return ResponseEntity.ok(response);
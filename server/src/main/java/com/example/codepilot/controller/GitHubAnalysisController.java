@@ -1,17 +1,24 @@
 package com.example.codepilot.controller;
 
 import com.example.codepilot.models.CodeRequest;
+import com.example.codepilot.models.RepositoryAnalysis;
 import com.example.codepilot.models.User;
-import com.example.codepilot.repository.UserRepository;
+import com.example.codepilot.service.ModelAdmissionGate;
+import com.example.codepilot.service.RepositoryAnalysisService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
 
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.validation.Valid;
+import java.io.IOException;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -19,70 +26,79 @@ import java.util.Map;
 @CrossOrigin(origins = "${app.cors.allowed-origins}")
 public class GitHubAnalysisController {
 
+    private static final Logger logger = LoggerFactory.getLogger(GitHubAnalysisController.class);
+
     @Autowired
-    private UserRepository userRepository;
+    private RepositoryAnalysisService repositoryAnalysisService;
 
     @Autowired
-    private ReviewController reviewController; // Inject the ReviewController
+    private ModelAdmissionGate admissionGate;
 
+    // source=tree fetches files one by one through the API; source=tarball downloads one archive
     @PostMapping("/analyze")
-    public ResponseEntity<?> analyzeRepository(@Valid @RequestBody CodeRequest request) {
-        String githubUrl = request.getCode(); // Assuming the URL is sent in the code field
-
-        // Fetch repository files (this is a placeholder, implement the actual fetching logic)
-        List<String> files = fetchRepositoryFiles(githubUrl);
-
-        // Prepare a map to hold the review results
-        Map<String, Object> analysisResults = new HashMap<>();
-        for (String file : files) {
-            // Create a CodeRequest for each file
-            CodeRequest codeRequest = new CodeRequest();
-            codeRequest.setCode(file); // Set the file content
-            codeRequest.setLanguage("JavaScript"); // Set the appropriate language
-
-            // Call the review method from ReviewController
-            ResponseEntity<?> reviewResponse = reviewController.reviewCode(codeRequest);
-            analysisResults.put(file, reviewResponse.getBody());
+    public ResponseEntity<?> analyzeRepository(@Valid @RequestBody CodeRequest request,
+                                               @RequestParam(defaultValue = "tree") String source) {
+        String githubUrl = request.getCode(); // The repository URL is sent in the code field
+        if (!"tree".equals(source) && !"tarball".equals(source)) {
+            return ResponseEntity.badRequest().body(Map.of("error", "source must be tree or tarball"));
         }
+        return analyze(githubUrl, HttpStatus.BAD_GATEWAY, user -> "tarball".equals(source)
+                ? repositoryAnalysisService.analyzeTarball(githubUrl, user)
+                : repositoryAnalysisService.analyze(githubUrl, user));
+    }
 
-        // Prepare final response
-        Map<String, Object> result = new HashMap<>();
-        result.put("analysis", analysisResults);
+    // The body is the raw .zip or .tar.gz, read as a stream rather than as a buffered multipart upload
+    @PostMapping(value = "/analyze/upload", consumes = { "application/zip", "application/gzip",
+            "application/x-gzip", "application/octet-stream" })
+    public ResponseEntity<?> analyzeUpload(HttpServletRequest request,
+                                           @RequestParam(defaultValue = "upload") String name) {
+        // A broken upload is the client's fault, not an upstream failure
+        return analyze(name, HttpStatus.BAD_REQUEST,
+                user -> repositoryAnalysisService.analyzeArchive(name, request.getInputStream(), user));
+    }
+
+    private interface Analysis {
+        RepositoryAnalysis run(User user) throws IOException, InterruptedException;
+    }
 
-        // Check user credits and deduct if necessary
+    private ResponseEntity<?> analyze(String source, HttpStatus readFailureStatus, Analysis analysisRun) {
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        User currentUser  = null;
+        User currentUser = authentication != null && authentication.getPrincipal() instanceof User
+                ? (User) authentication.getPrincipal() : null;
 
-        if (authentication != null && authentication.getPrincipal() instanceof User) {
-            currentUser  = (User ) authentication.getPrincipal();
+        if (currentUser == null) {
+            return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body(Map.of("error", "Authentication required"));
+        }
 
-            // Check if user has credits
-            if (!currentUser .hasCredits()) {
-                return ResponseEntity.badRequest()
-                        .body(Map.of("error", "Insufficient credits. Please purchase more credits to continue."));
-            }
+        if (admissionGate.isSaturated()) {
+            long retryAfterSeconds = admissionGate.retryAfterSeconds();
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+                    .body(Map.of("error", "The review service is busy. Please retry in " + retryAfterSeconds + " seconds."));
+        }
 
-            // Deduct credit
-            currentUser .deductCredit();
-            userRepository.save(currentUser );
+        // Every reviewed file is charged one credit as it reaches the model; see RepositoryAnalysisService
+        RepositoryAnalysis analysis;
+        try {
+            analysis = analysisRun.run(currentUser);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (IOException e) {
+            logger.warn("Reading {} failed: {}", source, e.getMessage());
+            return ResponseEntity.status(readFailureStatus)
+                    .body(Map.of("error", "Failed to read repository: " + e.getMessage()));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return ResponseEntity.status(500).body(Map.of("error", "Repository analysis was interrupted"));
         }
 
+        if (analysis.isOutOfCredits() && analysis.getReviewed() == 0 && analysis.getReused() == 0) {
+            return ResponseEntity.badRequest()
+                    .body(Map.of("error", "Insufficient credits. Please purchase more credits to continue."));
+        }
+        Map<String, Object> result = new HashMap<>();
+        result.put("analysis", analysis);
+        result.put("creditsRemaining", analysis.getCreditsRemaining());
         return ResponseEntity.ok(result);
     }
-
-    private List<String> fetchRepositoryFiles(String githubUrl) {
-    // Use GitHub API to fetch repository contents
-    // You may need to parse the URL to get the owner and repo name
-    String owner = "username"; // Extract from githubUrl
-    String repo = "repository"; // Extract from githubUrl
-
-    // Example API call to GitHub to get repository contents
-    String apiUrl = "https://api.github.com/repos/" + owner + "/" + repo + "/contents";
-    
-    // Use HttpClient to make the request and retrieve the file contents
-    // Parse the response to get the file contents
-    // Return a list of file contents
-    return List.of("file1.js content", "file2.js content"); // Placeholder for actual file contents
-}
-
 }
@@ -92,7 +92,7 @@ public class OAuthController {
                 // Update provider info if needed
                 if (user.getOauthProvider() == null) {
                     user.setOauthProvider(provider);
-                    userRepository.save(user);
+                    userRepository.findAndSetOauthProviderById(user.getId(), provider);
                 }
             } else {
                 String baseUsername = name != null ? name.replaceAll("\\s+", "").toLowerCase() : email.split("@")[0];
@@ -109,7 +109,7 @@ public class OAuthController {
             }
 
             // Generate JWT token
-            String token = jwtUtils.generateJwtToken(user.getEmail());
+            String token = jwtUtils.generateJwtToken(user);
             logger.info("JWT token generated for user: {}", user.getUsername());
 
             // Redirect to frontend with token
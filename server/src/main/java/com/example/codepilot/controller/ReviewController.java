@@ -2,229 +2,366 @@ package com.example.codepilot.controller;
 
 import com.example.codepilot.models.CodeRequest;
 import com.example.codepilot.models.Review;
+import com.example.codepilot.models.ReviewResult;
 import com.example.codepilot.models.User;
-import com.example.codepilot.repository.ReviewRepository;
-import com.example.codepilot.repository.UserRepository;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
-
-
+import com.example.codepilot.service.CreditService;
+import com.example.codepilot.service.ModelAdmissionGate;
+import com.example.codepilot.service.ReviewCache;
+import com.example.codepilot.service.ReviewExportService;
+import com.example.codepilot.service.ReviewHistoryService;
+import com.example.codepilot.service.ReviewSearchService;
+import com.example.codepilot.service.ReviewService;
+import com.example.codepilot.service.UsageRollups;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.Authentication;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import org.springframework.format.annotation.DateTimeFormat;
 
 import jakarta.validation.Valid;
 
 import java.io.IOException;
-import java.net.URI;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
-import java.net.http.HttpResponse;
+import java.io.UncheckedIOException;
 import java.time.LocalDateTime;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
-import java.util.Arrays;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 @RestController
 @RequestMapping("/api/review")
 @CrossOrigin(origins = "${app.cors.allowed-origins}")
 public class ReviewController {
 
-    private final ObjectMapper objectMapper = new ObjectMapper();
+    private static final Logger logger = LoggerFactory.getLogger(ReviewController.class);
+
+    @Autowired
+    private ReviewHistoryService reviewHistoryService;
+
+    @Autowired
+    private ReviewExportService reviewExportService;
+
+    @Autowired
+    private ReviewSearchService reviewSearchService;
+
+    @Autowired
+    private CreditService creditService;
+
+    @Autowired
+    private ReviewService reviewService;
+
+    @Autowired
+    private ReviewCache reviewCache;
 
     @Autowired
-    private ReviewRepository reviewRepository;
+    private ModelAdmissionGate admissionGate;
 
     @Autowired
-    private UserRepository userRepository;
+    private UsageRollups usageRollups;
+
+    @Value("${app.review.stream-timeout-ms:300000}")
+    private long streamTimeoutMs;
 
 @PostMapping
 public ResponseEntity<?> reviewCode(@Valid @RequestBody CodeRequest request) {
+    User currentUser = null;
+    CreditService.Reservation reservation = null;
     try {
         // Get authenticated user
         Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
-        User currentUser = null;
-            System.out.println("Authentication====="+authentication);
 
         if (authentication != null && authentication.getPrincipal() instanceof User) {
             currentUser = (User) authentication.getPrincipal();
-            System.out.println("Currentuser======="+currentUser);
+        }
 
-            // Check if user has credits
-            if (!currentUser.hasCredits()) {
-                return ResponseEntity.badRequest()
-                        .body(Map.of("error", "Insufficient credits. Please purchase more credits to continue."));
-            }
+        // Shed load before charging anything when the model queue is already full
+        if (admissionGate.isSaturated()) {
+            return overloaded(admissionGate.retryAfterSeconds());
+        }
 
-            // Deduct credit
-            currentUser.deductCredit();
-            userRepository.save(currentUser);
+        if (currentUser != null) {
+            // Check and deduct in one atomic update
+            reservation = creditService.reserve(currentUser.getId());
+            if (reservation == null) {
+                return insufficientCredits();
+            }
+            currentUser.setCredits(reservation.getRemaining());
         }
 
         String code = request.getCode();
         String language = request.getLanguage();
 
-        // Prompt for Suggestions
-        String suggestionsPrompt = "You're a senior software engineer. Review the following " + language +
-                " code and tell the bugs, give improvement suggestions and keep it short and simple to understand. List them as:\n" +
-                "1. Bug in the code :-\n2. Suggestion and improvements in code can be :-\n...\n\nCode:\n\n" + code;
-
-        // Prompt for Corrected Code
-String correctedCodePrompt = "Return ONLY the corrected " + language + " code with:\n" +
-    "- NO explanations\n" +
-    "- NO comments\n" +
-    "- NO markdown formatting\n" +
-    "- NO code blocks (```)\n" +
-    "- NO section headers\n" +
-    "- NO line numbers\n" +
-    "- NO additional text of any kind\n\n" +
-    "Just return the pure executable code with proper syntax. If you include anything other than code, the response will be rejected.\n\n" +
-    "Code to correct:\n\n" + code;
-
-
-        // Call Ollama for both prompts
-        String suggestionsText = queryOllama(suggestionsPrompt);
-        String correctedCodeText = queryOllama(correctedCodePrompt);
-
-        // Prepare response
-        Map<String, Object> result = new HashMap<>();
-        result.put("review", cleanSuggestions(suggestionsText));
-        result.put("correctedCode", extractCleanCode(correctedCodeText.trim()));
-        result.put("creditsRemaining", currentUser != null ? currentUser.getCredits() : null);
-
-        // Save to DB if user authenticated
-        if (currentUser != null) {
-            Review review = new Review();
-            review.setLanguage(language);
-            review.setCode(code);
-            review.setReview(suggestionsText + "\n\n" + correctedCodeText); // Save both
-            review.setTimestamp(LocalDateTime.now());
-            Review savedReview = reviewRepository.save(review);
-            result.put("reviewId", savedReview.getId());
+        // Both prompts run concurrently; a failed stage leaves the other one usable
+        ReviewResult reviewResult = reviewService.review(currentUser != null ? currentUser.getId() : null, code, language);
+
+        if (reviewResult.isFailed()) {
+            release(reservation);
+            if (reviewResult.isOverloaded()) {
+                return overloaded(reviewResult.getRetryAfterSeconds());
+            }
+            return ResponseEntity.status(500)
+                    .body(Map.of("error", "Failed to process review: " + reviewResult.getSuggestionsError()));
         }
 
+        Map<String, Object> result = completeReview(reviewResult, currentUser, code, language);
+        if (reservation != null) {
+            reservation.settle();
+        }
         return ResponseEntity.ok(result);
 
     } catch (Exception e) {
-        e.printStackTrace();
+        logger.error("Review failed", e);
 
         // Refund credit if request failed
-        Authentication auth = SecurityContextHolder.getContext().getAuthentication();
-        if (auth != null && auth.getPrincipal() instanceof User) {
-            User user = (User) auth.getPrincipal();
-            user.addCredits(1);
-            userRepository.save(user);
-        }
+        release(reservation);
 
         return ResponseEntity.status(500)
                 .body(Map.of("error", "Failed to process review: " + e.getMessage()));
     }
 }
 
+@PostMapping("/stream")
+public ResponseEntity<?> reviewCodeStream(@Valid @RequestBody CodeRequest request) {
+    Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+    User currentUser = authentication != null && authentication.getPrincipal() instanceof User
+            ? (User) authentication.getPrincipal() : null;
 
- private String cleanSuggestions(String suggestions) {
-    if (suggestions == null || suggestions.isBlank())
-        return "";
-
-    // First remove all code blocks from suggestions
-    suggestions = suggestions.replaceAll("```[a-zA-Z]*\\n", "")
-                           .replaceAll("```", "");
+    if (admissionGate.isSaturated()) {
+        return overloaded(admissionGate.retryAfterSeconds());
+    }
 
-    // Normalize line endings
-    suggestions = suggestions.replace("\r\n", "\n").trim();
+    // The credit is reserved before streaming starts and given back if the review fails
+    CreditService.Reservation reservation = null;
+    if (currentUser != null) {
+        reservation = creditService.reserve(currentUser.getId());
+        if (reservation == null) {
+            return insufficientCredits();
+        }
+        currentUser.setCredits(reservation.getRemaining());
+    }
 
-    // Fix numbering format
-    suggestions = suggestions.replaceAll("(?m)^(\\d+)\\)", "$1.")
-                           .replaceAll("(?m)^(\\d+)\\.\\s*", "$1. ");
+    String code = request.getCode();
+    String language = request.getLanguage();
+    SseEmitter emitter = new SseEmitter(streamTimeoutMs);
+    AtomicBoolean closed = new AtomicBoolean(false);
+    emitter.onTimeout(() -> closed.set(true));
+    emitter.onError(error -> closed.set(true));
+    emitter.onCompletion(() -> closed.set(true));
+
+    User user = currentUser;
+    CreditService.Reservation charge = reservation;
+    reviewService.reviewStream(currentUser != null ? currentUser.getId() : null, code, language, (stage, token) -> {
+        if (closed.get()) {
+            throw new IllegalStateException("Client disconnected");
+        }
+        sendEvent(emitter, stage, Map.of("token", token));
+    }).whenComplete((reviewResult, error) -> {
+        try {
+            if (error != null || reviewResult.isFailed()) {
+                String message = error != null ? error.getMessage() : reviewResult.getSuggestionsError();
+                Map<String, Object> body = new HashMap<>();
+                body.put("error", "Failed to process review: " + message);
+                if (reviewResult != null && reviewResult.isOverloaded()) {
+                    body.put("retryAfterSeconds", reviewResult.getRetryAfterSeconds());
+                }
+                release(charge);
+                sendEvent(emitter, "error", body);
+                emitter.complete();
+                return;
+            }
+            Map<String, Object> done = completeReview(reviewResult, user, code, language);
+            if (charge != null) {
+                charge.settle();
+            }
+            sendEvent(emitter, "done", done);
+            emitter.complete();
+        } catch (Exception e) {
+            release(charge);
+            emitter.completeWithError(e);
+        }
+    });
 
-    // Remove bullet points and other special chars at line start
-    suggestions = suggestions.replaceAll("(?m)^[\\s*\\-+]\\s*", "");
+    return ResponseEntity.ok()
+            .contentType(MediaType.TEXT_EVENT_STREAM)
+            .body(emitter);
+}
 
-    // Remove extra empty lines
-    suggestions = suggestions.replaceAll("(?m)^\\s*$[\r\n]+", "");
+private void sendEvent(SseEmitter emitter, String name, Object data) {
+    // Both stages emit from their own threads; SseEmitter writes must not interleave
+    synchronized (emitter) {
+        try {
+            emitter.send(SseEmitter.event().name(name).data(data, MediaType.APPLICATION_JSON));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
 
-    // Remove any remaining code fragments
-    suggestions = suggestions.replaceAll("\\b(?:public|class|void|static)\\b", "")
-                           .replaceAll("\\{[^}]*\\}", "");
+// Cleans the raw model output into the response body and persists the review for authenticated users
+private Map<String, Object> completeReview(ReviewResult reviewResult, User currentUser, String code, String language) {
+    Map<String, Object> result = reviewService.toResponse(reviewResult);
+    usageRollups.recordReview(language, reviewResult.isCached() || reviewResult.getSimilarReviewId() != null,
+            reviewResult.isPartial());
+    result.put("creditsRemaining", currentUser != null ? currentUser.getCredits() : null);
+
+    // Save to DB if user authenticated
+    if (currentUser != null) {
+        Review savedReview = reviewService.save(currentUser.getId(), code, language, reviewResult);
+        result.put("reviewId", savedReview.getId());
+    }
+    return result;
+}
 
-    return suggestions.trim();
+private ResponseEntity<?> overloaded(long retryAfterSeconds) {
+    return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+            .header(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfterSeconds))
+            .body(Map.of("error", "The review service is busy. Please retry in " + retryAfterSeconds + " seconds."));
 }
 
-  private String queryOllama(String prompt) throws IOException, InterruptedException {
-    String model = "deepseek-coder:6.7b";
+private ResponseEntity<?> insufficientCredits() {
+    return ResponseEntity.badRequest()
+            .body(Map.of("error", "Insufficient credits. Please purchase more credits to continue."));
+}
 
-    String requestBody = objectMapper.writeValueAsString(Map.of(
-        "model", model,
-        "prompt", prompt,
-        "stream", false,
-        "options", Map.of(
-            "temperature", 0.2,
-            "num_ctx", 2048
-        )
-    ));
+private void release(CreditService.Reservation reservation) {
+    if (reservation != null) {
+        reservation.release();
+    }
+}
 
-    HttpRequest ollamaRequest = HttpRequest.newBuilder()
-            .uri(URI.create("http://localhost:11434/api/generate"))
-            .header("Content-Type", "application/json")
-            .POST(HttpRequest.BodyPublishers.ofString(requestBody))
-            .build();
+    // Drops every cached review, e.g. after editing the prompts without bumping PROMPT_VERSION
+    @DeleteMapping("/cache")
+    public ResponseEntity<?> invalidateCache() {
+        long removed = reviewCache.invalidateAll();
+        return ResponseEntity.ok(Map.of("removed", removed));
+    }
 
-    HttpResponse<String> response = HttpClient.newHttpClient()
-            .send(ollamaRequest, HttpResponse.BodyHandlers.ofString());
+    // Newest first; pass the returned nextCursor to get the following page
+    @GetMapping
+    public ResponseEntity<?> getAllReviews(@RequestParam(required = false) String cursor,
+                                           @RequestParam(required = false) Integer size) {
+        return listReviews(new Criteria(), cursor, size);
+    }
 
-    String body = response.body();
+    @GetMapping("/language/{language}")
+    public ResponseEntity<?> getReviewsByLanguage(@PathVariable String language,
+                                                  @RequestParam(required = false) String cursor,
+                                                  @RequestParam(required = false) Integer size) {
+        return listReviews(Criteria.where("language").is(language), cursor, size);
+    }
 
-    JsonNode json = objectMapper.readTree(body);
+    // The caller's own reviews, newest first
+    @GetMapping("/mine")
+    public ResponseEntity<?> getMyReviews(@RequestParam(required = false) String cursor,
+                                          @RequestParam(required = false) Integer size) {
+        User currentUser = authenticatedUser();
+        if (currentUser == null) {
+            return ResponseEntity.badRequest().body(Map.of("error", "User not authenticated"));
+        }
+        return listReviews(Criteria.where("userId").is(currentUser.getId()), cursor, size);
+    }
 
-    if (json.has("response")) {
-        return json.get("response").asText();
-    } else {
-        // Log entire response for debugging
-        System.err.println("Unexpected response from Ollama: " + body);
-        throw new IllegalStateException("Ollama response missing 'response' field.");
+    @GetMapping("/mine/language/{language}")
+    public ResponseEntity<?> getMyReviewsByLanguage(@PathVariable String language,
+                                                    @RequestParam(required = false) String cursor,
+                                                    @RequestParam(required = false) Integer size) {
+        User currentUser = authenticatedUser();
+        if (currentUser == null) {
+            return ResponseEntity.badRequest().body(Map.of("error", "User not authenticated"));
+        }
+        return listReviews(Criteria.where("userId").is(currentUser.getId()).and("language").is(language),
+                cursor, size);
     }
-}
 
-public static String extractCleanCode(String response) {
-    // Regex to match code between triple backticks, with optional language label
-    Pattern pattern = Pattern.compile("(?s)```(?:\\w+)?\\s*\\n(.*?)\\n```");
-    Matcher matcher = pattern.matcher(response);
-    
-    if (matcher.find()) {
-        return matcher.group(1).trim(); // return only the inner code
+    // The caller's reviews whose code or review mention any word of q, best match first
+    @GetMapping("/mine/search")
+    public ResponseEntity<?> searchMyReviews(@RequestParam String q,
+                                             @RequestParam(required = false) String language,
+                                             @RequestParam(required = false) Integer page,
+                                             @RequestParam(required = false) Integer size) {
+        User currentUser = authenticatedUser();
+        if (currentUser == null) {
+            return ResponseEntity.badRequest().body(Map.of("error", "User not authenticated"));
+        }
+        if (q.isBlank()) {
+            return ResponseEntity.badRequest().body(Map.of("error", "Search text is required"));
+        }
+        try {
+            ReviewSearchService.Page results = reviewSearchService.search(currentUser.getId(), q, language, page, size);
+            Map<String, Object> response = new HashMap<>();
+            response.put("reviews", results.reviews());
+            response.put("page", results.page());
+            response.put("hasMore", results.hasMore());
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        } catch (Exception e) {
+            logger.error("Review search failed", e);
+            return ResponseEntity.status(500).body(Map.of("error", "Failed to search reviews: " + e.getMessage()));
+        }
     }
 
-    // If no code block, return as-is (maybe fallback)
-    return response.trim();
-}
+    // Every matching review as NDJSON, newest first; from is inclusive, to exclusive (ISO date-times)
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportReviews(
+            @RequestParam(required = false) String userId,
+            @RequestParam(required = false) String language,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(defaultValue = "false") boolean gzip) {
+        return export(ReviewExportService.filter(userId, language, from, to), gzip);
+    }
 
+    @GetMapping("/mine/export")
+    public ResponseEntity<?> exportMyReviews(
+            @RequestParam(required = false) String language,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(defaultValue = "false") boolean gzip) {
+        User currentUser = authenticatedUser();
+        if (currentUser == null) {
+            return ResponseEntity.badRequest().body(Map.of("error", "User not authenticated"));
+        }
+        return export(ReviewExportService.filter(currentUser.getId(), language, from, to), gzip);
+    }
 
+    // gzip=true sends a .ndjson.gz file rather than compressing in transit, so it is saved compressed
+    private ResponseEntity<StreamingResponseBody> export(Criteria filter, boolean gzip) {
+        StreamingResponseBody body = out -> reviewExportService.export(filter, out, gzip);
+        return ResponseEntity.ok()
+                .contentType(gzip ? MediaType.parseMediaType("application/gzip") : MediaType.parseMediaType("application/x-ndjson"))
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"reviews.ndjson" + (gzip ? ".gz" : "") + "\"")
+                .body(body);
+    }
 
-    @GetMapping
-    public ResponseEntity<List<Review>> getAllReviews() {
-        try {
-            List<Review> reviews = reviewRepository.findAllByOrderByTimestampDesc();
-            return ResponseEntity.ok(reviews);
-        } catch (Exception e) {
-            e.printStackTrace();
-            return ResponseEntity.status(500).body(null);
-        }
+    private static User authenticatedUser() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication != null && authentication.getPrincipal() instanceof User
+                ? (User) authentication.getPrincipal() : null;
     }
 
-    @GetMapping("/language/{language}")
-    public ResponseEntity<List<Review>> getReviewsByLanguage(@PathVariable String language) {
+    private ResponseEntity<?> listReviews(Criteria filter, String cursor, Integer size) {
         try {
-            List<Review> reviews = reviewRepository.findByLanguage(language);
-            return ResponseEntity.ok(reviews);
+            ReviewHistoryService.Page page = reviewHistoryService.page(filter, cursor, size);
+            Map<String, Object> response = new HashMap<>();
+            response.put("reviews", page.reviews());
+            response.put("nextCursor", page.nextCursor());
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         } catch (Exception e) {
-            e.printStackTrace();
-            return ResponseEntity.status(500).body(null);
+            logger.error("Listing reviews failed", e);
+            return ResponseEntity.status(500).body(Map.of("error", "Failed to list reviews: " + e.getMessage()));
         }
     }
 }
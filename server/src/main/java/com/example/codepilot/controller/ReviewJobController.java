@@ -0,0 +1,80 @@
+package com.example.codepilot.controller;
+
+import com.example.codepilot.models.CodeRequest;
+import com.example.codepilot.models.ReviewJob;
+import com.example.codepilot.models.User;
+import com.example.codepilot.service.ReviewJobService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.bind.annotation.*;
+
+import jakarta.validation.Valid;
+import java.util.HashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/review/jobs")
+@CrossOrigin(origins = "${app.cors.allowed-origins}")
+public class ReviewJobController {
+
+    @Autowired
+    private ReviewJobService reviewJobService;
+
+    @PostMapping
+    public ResponseEntity<?> submitJob(@Valid @RequestBody CodeRequest request) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !(authentication.getPrincipal() instanceof User)) {
+            return ResponseEntity.badRequest().body(Map.of("error", "User not authenticated"));
+        }
+
+        User currentUser = (User) authentication.getPrincipal();
+        try {
+            ReviewJob job = reviewJobService.submit(currentUser, request.getCode(), request.getLanguage());
+            if (job == null) {
+                return ResponseEntity.badRequest()
+                        .body(Map.of("error", "Insufficient credits. Please purchase more credits to continue."));
+            }
+            return ResponseEntity.status(HttpStatus.ACCEPTED).body(toResponse(job));
+        } catch (Exception e) {
+            return ResponseEntity.status(500)
+                    .body(Map.of("error", "Failed to submit review job: " + e.getMessage()));
+        }
+    }
+
+    @GetMapping("/{id}")
+    public ResponseEntity<?> getJob(@PathVariable String id) {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        if (authentication == null || !(authentication.getPrincipal() instanceof User)) {
+            return ResponseEntity.badRequest().body(Map.of("error", "User not authenticated"));
+        }
+
+        User currentUser = (User) authentication.getPrincipal();
+        ReviewJob job = reviewJobService.find(id).orElse(null);
+        // Other users' jobs are reported as missing rather than forbidden
+        if (job == null || !job.getUserId().equals(currentUser.getId())) {
+            return ResponseEntity.status(404).body(Map.of("error", "Job not found"));
+        }
+        return ResponseEntity.ok(toResponse(job));
+    }
+
+    private Map<String, Object> toResponse(ReviewJob job) {
+        Map<String, Object> response = new HashMap<>();
+        response.put("jobId", job.getId());
+        response.put("status", job.getStatus());
+        response.put("position", reviewJobService.queuePosition(job));
+        response.put("createdAt", job.getCreatedAt());
+        if (job.getFinishedAt() != null) {
+            response.put("finishedAt", job.getFinishedAt());
+        }
+        if (job.getResult() != null) {
+            response.put("result", job.getResult());
+        }
+        if (job.getError() != null) {
+            response.put("error", job.getError());
+        }
+        return response;
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.codepilot.controller;
+
+import com.example.codepilot.service.ModelAdmissionGate;
+import com.example.codepilot.service.OllamaClient;
+import com.example.codepilot.service.ReviewCache;
+import com.example.codepilot.service.ServerMetrics;
+import com.example.codepilot.service.SimilarityIndex;
+import com.example.codepilot.service.UsageRollups;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/stats")
+@CrossOrigin(origins = "${app.cors.allowed-origins}")
+public class StatsController {
+
+    @Autowired
+    private OllamaClient ollamaClient;
+
+    @Autowired
+    private ModelAdmissionGate admissionGate;
+
+    @Autowired
+    private ReviewCache reviewCache;
+
+    @Autowired
+    private SimilarityIndex similarityIndex;
+
+    @Autowired
+    private UsageRollups usageRollups;
+
+    @Autowired
+    private ServerMetrics serverMetrics;
+
+    @GetMapping
+    public ResponseEntity<?> getStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("ollama", ollamaClient.getStats());
+        stats.put("admission", admissionGate.getStats());
+        stats.put("reviewCache", reviewCache.getStats());
+        stats.put("similarity", similarityIndex.getStats());
+        return ResponseEntity.ok(stats);
+    }
+
+    // Prometheus scrape target: model call, post-processing, review save, JWT check and credit timers
+    @GetMapping(value = "/prometheus", produces = "text/plain; version=0.0.4; charset=utf-8")
+    public String getPrometheusMetrics() {
+        return serverMetrics.scrape();
+    }
+
+    // Usage reports read the daily rollups; from and to are inclusive UTC days (yyyy-MM-dd)
+    @GetMapping("/usage/reviews")
+    public ResponseEntity<?> getReviewUsage(@RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                            @RequestParam(required = false) String language) {
+        return ResponseEntity.ok(Map.of("days", usageRollups.reviews(from, to, language)));
+    }
+
+    @GetMapping("/usage/credits")
+    public ResponseEntity<?> getCreditUsage(@RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                            @RequestParam(required = false) String userId) {
+        return ResponseEntity.ok(Map.of("days", usageRollups.credits(from, to, userId)));
+    }
+
+    @GetMapping("/usage/latency")
+    public ResponseEntity<?> getLatency(@RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+                                        @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+                                        @RequestParam(required = false) String model) {
+        return ResponseEntity.ok(Map.of("models", usageRollups.latency(from, to, model)));
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.codepilot.models;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+// Deflated text shared by every document that refers to its hash
+@Document(collection = "content_blobs")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ContentBlob {
+
+    @Id
+    private String hash; // SHA-256 of the UTF-8 text
+
+    private byte[] data; // deflated text; null when it lives in GridFS
+
+    private String gridFsId;
+
+    private int size; // bytes before compression
+
+    private int storedSize; // bytes after compression
+
+    private Instant createdAt;
+}
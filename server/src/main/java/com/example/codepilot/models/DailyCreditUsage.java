@@ -0,0 +1,33 @@
+package com.example.codepilot.models;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Credits moved per user and UTC day, incremented by UsageRollups
+@Document(collection = "usage_credits_daily")
+@CompoundIndex(name = "user_day", def = "{'userId': 1, 'day': 1}")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DailyCreditUsage {
+
+    @Id
+    private String id; // day|userId
+
+    @Indexed
+    private String day; // yyyy-MM-dd
+
+    private String userId;
+
+    private long consumed; // charged minus refunded
+
+    private long purchased;
+
+    private double spent;
+}
@@ -0,0 +1,37 @@
+package com.example.codepilot.models;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+// Model call latencies per model and UTC day, as LatencyHistogram bucket counts
+@Document(collection = "usage_latency_daily")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DailyLatency {
+
+    @Id
+    private String id; // day|model
+
+    @Indexed
+    private String day; // yyyy-MM-dd
+
+    private String model;
+
+    private long calls;
+
+    private long failures;
+
+    private long totalMs;
+
+    private long maxMs;
+
+    private Map<String, Long> buckets; // bucket index -> calls
+}
@@ -0,0 +1,31 @@
+package com.example.codepilot.models;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+// Reviews completed per language and UTC day, incremented by UsageRollups
+@Document(collection = "usage_reviews_daily")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DailyReviewUsage {
+
+    @Id
+    private String id; // day|language
+
+    @Indexed
+    private String day; // yyyy-MM-dd
+
+    private String language;
+
+    private long reviews;
+
+    private long cached; // served from the review cache or a near-duplicate
+
+    private long partial; // at least one stage failed
+}
@@ -0,0 +1,17 @@
+package com.example.codepilot.models;
+
+import lombok.Data;
+
+import java.util.Map;
+
+// Review of one file of a repository analysis; error is set instead of review when it failed
+@Data
+public class FileReview {
+    private String path;
+    private String sha;
+    private String language;
+    private Map<String, Object> review;
+    private String reviewId;
+    private String error;
+    private boolean reused; // unchanged since the last analysis, not fetched or reviewed again
+}
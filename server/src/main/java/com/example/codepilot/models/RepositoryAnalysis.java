@@ -0,0 +1,26 @@
+package com.example.codepilot.models;
+
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// Outcome of reviewing every reviewable file of a repository at one commit
+@Data
+public class RepositoryAnalysis {
+    private String repository; // owner/name
+    private String ref;
+    private String commitSha;
+    private boolean truncated; // the file list was cut short by GitHub or app.github.max-files
+    private int reviewed; // files sent to the model in this analysis
+    private int reused; // unchanged files served from the repository index
+    private int failed;
+    private int skipped;
+    private Map<String, Integer> skippedByReason = new TreeMap<>(); // skipped, by FileClassifier.SkipReason label
+    private boolean outOfCredits; // files were left unreviewed because the user ran out of credits
+    private Integer creditsRemaining; // balance after the last charged file; null when nothing was charged
+    private long durationMs;
+    private List<FileReview> files = new ArrayList<>();
+}
@@ -0,0 +1,45 @@
+package com.example.codepilot.models;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+// Last review of one file of a repository, reused while the file's blob SHA is unchanged
+@Document(collection = "repository_files")
+@CompoundIndex(name = "user_repository", def = "{'userId': 1, 'repository': 1}")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RepositoryFileEntry {
+
+    @Id
+    private String id; // userId + ":" + repository + ":" + path
+
+    private String userId; // owner of the index and of reviewId
+
+    private String repository; // lower-cased owner/name
+
+    private String path;
+
+    private String sha; // git blob SHA of the reviewed content
+
+    private String language;
+
+    private String model;
+
+    private String promptVersion;
+
+    private String suggestions;
+
+    private String correctedCode;
+
+    private String reviewId;
+
+    private Instant updatedAt;
+}
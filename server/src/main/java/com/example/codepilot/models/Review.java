@@ -4,16 +4,21 @@ import org.springframework.data.annotation.Id;
 import org.springframework.data.annotation.CreatedDate;
 import org.springframework.data.mongodb.core.mapping.Document;
 import org.springframework.data.annotation.TypeAlias;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
 
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import jakarta.validation.constraints.NotBlank;
-import jakarta.validation.constraints.NotNull;
 import java.time.LocalDateTime;
+import java.util.List;
 
 @Document(collection = "reviews")
+@CompoundIndex(name = "timestamp_id", def = "{'timestamp': -1, '_id': -1}")
+@CompoundIndex(name = "language_timestamp_id", def = "{'language': 1, 'timestamp': -1, '_id': -1}")
+@CompoundIndex(name = "user_timestamp_id", def = "{'userId': 1, 'timestamp': -1, '_id': -1}")
+@CompoundIndex(name = "user_language_timestamp_id", def = "{'userId': 1, 'language': 1, 'timestamp': -1, '_id': -1}")
 @TypeAlias("Review")
 @Data
 @NoArgsConstructor
@@ -23,14 +28,33 @@ public class Review {
     @Id
     private String id;
 
+    private String userId; // owner; null for reviews saved before owners were recorded
+
     @NotBlank(message = "Language is required")
     private String language;
 
-    @NotBlank(message = "Code is required")
+    // Bodies live in content_blobs under these hashes (see BlobStore); the inline fields below
+    // are only stored by reviews saved before that and are filled from the refs on load
+    private String codeRef;
+
+    private String suggestionsRef;
+
+    private String correctedCodeRef;
+
     private String code;
 
-    @NotBlank(message = "Review is required")
-    private String review;
+    private String review; // legacy: suggestions and corrected code concatenated
+
+    // Raw model output of the two review stages, kept separately so the review can be reused
+    private String suggestions;
+
+    private String correctedCode;
+
+    private List<String> terms; // SearchTerms of the bodies, covered by the text index
+
+    private Long simHash; // CodeFingerprint SimHash of code, used for near-duplicate lookup
+
+    private byte[] shingleSketch; // encoded CodeFingerprint sketch, confirms a near duplicate in memory
 
     @CreatedDate
     private LocalDateTime timestamp;
@@ -0,0 +1,37 @@
+package com.example.codepilot.models;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Document(collection = "review_cache")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ReviewCacheEntry {
+
+    @Id
+    private String key; // SHA-256 of normalized code, language, model and prompt version
+
+    private String language;
+
+    private String model;
+
+    @Indexed
+    private String promptVersion;
+
+    private String suggestions;
+
+    private String correctedCode;
+
+    private Instant createdAt;
+
+    @Indexed(expireAfterSeconds = 0) // Mongo drops the entry once expiresAt has passed
+    private Instant expiresAt;
+}
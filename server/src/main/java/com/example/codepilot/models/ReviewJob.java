@@ -0,0 +1,64 @@
+package com.example.codepilot.models;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.Map;
+
+@Document(collection = "review_jobs")
+@CompoundIndex(name = "status_created", def = "{'status': 1, 'createdAt': 1}")
+@Data
+@NoArgsConstructor
+public class ReviewJob {
+
+    public static final String QUEUED = "QUEUED";
+    public static final String RUNNING = "RUNNING";
+    public static final String DONE = "DONE";
+    public static final String FAILED = "FAILED";
+
+    @Id
+    private String id;
+
+    private String userId;
+
+    private String language;
+
+    private String code;
+
+    private String status; // QUEUED, RUNNING, DONE, FAILED
+
+    private boolean creditReserved; // one credit taken at submission
+
+    private boolean creditSettled; // reservation consumed (DONE) or refunded (FAILED)
+
+    private int attempts;
+
+    private String workerId;
+
+    private Instant createdAt;
+
+    private Instant startedAt;
+
+    private Instant leaseExpiresAt; // a RUNNING job past its lease is reclaimed by another worker
+
+    private Instant finishedAt;
+
+    private String reviewId;
+
+    private Map<String, Object> result;
+
+    private String error;
+
+    public ReviewJob(String userId, String language, String code) {
+        this.userId = userId;
+        this.language = language;
+        this.code = code;
+        this.status = QUEUED;
+        this.createdAt = Instant.now();
+    }
+}
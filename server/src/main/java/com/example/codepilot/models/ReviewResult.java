@@ -0,0 +1,37 @@
+package com.example.codepilot.models;
+
+import lombok.Data;
+
+// Raw model output of one review; a stage that failed carries an error instead of text
+@Data
+public class ReviewResult {
+    private String suggestions;
+    private String correctedCode;
+    private String suggestionsError;
+    private String correctedCodeError;
+    private boolean cached;
+    private String similarReviewId; // set when the review was reused from a near-duplicate snippet
+    private Double similarity;
+    private Long retryAfterSeconds; // set when a stage was shed by the model admission gate
+    private int chunks; // number of pieces large code was reviewed in, 0 when reviewed whole
+
+    public boolean hasSuggestions() {
+        return suggestions != null;
+    }
+
+    public boolean hasCorrectedCode() {
+        return correctedCode != null;
+    }
+
+    public boolean isFailed() {
+        return !hasSuggestions() && !hasCorrectedCode();
+    }
+
+    public boolean isOverloaded() {
+        return retryAfterSeconds != null;
+    }
+
+    public boolean isPartial() {
+        return hasSuggestions() != hasCorrectedCode();
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.codepilot.models;
+
+import org.springframework.data.annotation.Id;
+
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+// Listing view of a Review; the code and review bodies are left out of the query projection
+@Data
+@NoArgsConstructor
+public class ReviewSummary {
+
+    @Id
+    private String id;
+
+    private String language;
+
+    private LocalDateTime timestamp;
+}
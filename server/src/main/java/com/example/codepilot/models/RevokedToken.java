@@ -0,0 +1,34 @@
+package com.example.codepilot.models;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+// Revokes one token (tokenId) or every token of a user issued before issuedBefore
+@Document(collection = "revoked_tokens")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RevokedToken {
+
+    @Id
+    private String id;
+
+    private String tokenId; // jti claim
+
+    private String userId;
+
+    private Instant issuedBefore;
+
+    @Indexed
+    private Instant createdAt;
+
+    @Indexed(expireAfterSeconds = 0) // no longer needed once every token it covers has expired
+    private Instant expiresAt;
+}
@@ -0,0 +1,17 @@
+package com.example.codepilot.repository;
+
+import com.example.codepilot.models.RepositoryFileEntry;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface RepositoryFileRepository extends MongoRepository<RepositoryFileEntry, String> {
+
+    List<RepositoryFileEntry> findByUserIdAndRepository(String userId, String repository);
+
+    // Drop files that were deleted or renamed since the last analysis
+    long deleteByUserIdAndRepositoryAndPathNotIn(String userId, String repository, Collection<String> paths);
+}
@@ -0,0 +1,12 @@
+package com.example.codepilot.repository;
+
+import com.example.codepilot.models.ReviewCacheEntry;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface ReviewCacheRepository extends MongoRepository<ReviewCacheEntry, String> {
+
+    // Drop entries produced by older prompt templates
+    long deleteByPromptVersionNot(String promptVersion);
+}
@@ -0,0 +1,14 @@
+package com.example.codepilot.repository;
+
+import com.example.codepilot.models.ReviewJob;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import java.time.Instant;
+
+@Repository
+public interface ReviewJobRepository extends MongoRepository<ReviewJob, String> {
+
+    // Jobs ahead of a given job in the queue
+    long countByStatusAndCreatedAtBefore(String status, Instant createdAt);
+}
@@ -2,8 +2,10 @@ package com.example.codepilot.repository;
 
 import com.example.codepilot.models.User;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Update;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.Optional;
 
 @Repository
@@ -18,4 +20,11 @@ public interface UserRepository extends MongoRepository<User, String> {
     boolean existsByEmail(String email);
     
     Optional<User> findByUsernameOrEmail(String username, String email);
+
+    // Single-field updates; saving the whole document would overwrite concurrent credit changes
+    @Update("{ '$set' : { 'lastLogin' : ?1 } }")
+    void findAndSetLastLoginById(String id, LocalDateTime lastLogin);
+
+    @Update("{ '$set' : { 'oauthProvider' : ?1 } }")
+    void findAndSetOauthProviderById(String id, String oauthProvider);
 }
@@ -1,13 +1,15 @@
 package com.example.codepilot.security;
 
 import com.example.codepilot.models.User;
-import com.example.codepilot.repository.UserRepository;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.GrantedAuthority;
 import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
@@ -16,8 +18,8 @@ import org.springframework.util.StringUtils;
 import org.springframework.web.filter.OncePerRequestFilter;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
 
 @Component
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
@@ -26,36 +28,62 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     private JwtUtils jwtUtils;
 
     @Autowired
-    private UserRepository userRepository;
+    private TokenRevocationList revocationList;
+
+    @Autowired
+    private ObservationRegistry observationRegistry;
 
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, 
                                   FilterChain filterChain) throws ServletException, IOException {
+        // Times only the token check, not the rest of the chain
+        Observation observation = Observation.createNotStarted("auth.jwt", observationRegistry).start();
+        String outcome = "anonymous";
         try {
             String jwt = parseJwt(request);
-            if (jwt != null && jwtUtils.validateJwtToken(jwt)) {
-                String username = jwtUtils.getUserNameFromJwtToken(jwt);
-
-                User user = userRepository.findByUsername(username).orElse(null);
-                if (user != null) {
-                    List<SimpleGrantedAuthority> authorities = user.getRoles().stream()
-                            .map(role -> new SimpleGrantedAuthority("ROLE_" + role))
-                            .collect(Collectors.toList());
-
-                    UsernamePasswordAuthenticationToken authentication = 
-                            new UsernamePasswordAuthenticationToken(user, null, authorities);
-                    authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+            JwtUtils.AuthToken token = jwt != null ? jwtUtils.parseJwtToken(jwt) : null;
+            UsernamePasswordAuthenticationToken authentication = token != null && !revocationList.isRevoked(token)
+                    ? authenticate(token) : null;
+            if (authentication != null) {
+                authentication.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
 
-                    SecurityContextHolder.getContext().setAuthentication(authentication);
-                }
+                SecurityContextHolder.getContext().setAuthentication(authentication);
+                outcome = "authenticated";
+            } else if (jwt != null) {
+                outcome = "rejected";
             }
         } catch (Exception e) {
+            outcome = "failed";
+            observation.error(e);
             logger.error("Cannot set user authentication: {}", e);
+        } finally {
+            observation.lowCardinalityKeyValue("outcome", outcome).stop();
         }
 
         filterChain.doFilter(request, response);
     }
 
+    /**
+     * The principal is built from the token claims alone, without a database lookup. Disabled
+     * users and role changes are handled by revoking the user's earlier tokens (see
+     * {@link UserEventListener}). Tokens issued before the uid and roles claims existed are
+     * rejected, so their holders have to log in once more.
+     */
+    static UsernamePasswordAuthenticationToken authenticate(JwtUtils.AuthToken token) {
+        if (token.userId() == null || token.roles() == null) {
+            return null;
+        }
+        User user = new User();
+        user.setId(token.userId());
+        user.setUsername(token.subject());
+        user.setRoles(new ArrayList<>(token.roles()));
+        user.setCredits(null); // not in the token; CreditService reads and changes the balance
+        List<GrantedAuthority> authorities = token.roles().stream()
+                .<GrantedAuthority>map(role -> new SimpleGrantedAuthority("ROLE_" + role))
+                .toList();
+        return new UsernamePasswordAuthenticationToken(user, null, authorities);
+    }
+
     private String parseJwt(HttpServletRequest request) {
         String headerAuth = request.getHeader("Authorization");
 
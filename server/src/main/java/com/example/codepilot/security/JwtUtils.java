@@ -1,60 +1,88 @@
 package com.example.codepilot.security;
 
+import com.example.codepilot.models.User;
 import io.jsonwebtoken.*;
 import io.jsonwebtoken.security.Keys;
+import io.jsonwebtoken.security.SignatureException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
+import jakarta.annotation.PostConstruct;
 import java.security.Key;
+import java.time.Instant;
 import java.util.Date;
+import java.util.List;
+import java.util.UUID;
 
 @Component
 public class JwtUtils {
-    
+
+    private static final Logger logger = LoggerFactory.getLogger(JwtUtils.class);
+
+    /**
+     * What a verified token says about its user. Tokens issued before the uid, roles and jti
+     * claims were added only have a subject; the other fields are then null.
+     */
+    public record AuthToken(String subject, String userId, List<String> roles, String tokenId,
+                            Instant issuedAt, Instant expiresAt) {
+    }
+
     @Value("${app.jwtSecret:codepilotSecretKey}")
     private String jwtSecret;
 
     @Value("${app.jwtExpirationMs:86400000}")
     private int jwtExpirationMs;
 
-    private Key getSigningKey() {
-        return Keys.hmacShaKeyFor(jwtSecret.getBytes());
+    // Both are immutable and thread-safe, so they are built once instead of per token
+    private Key signingKey;
+    private JwtParser parser;
+
+    @PostConstruct
+    void init() {
+        signingKey = Keys.hmacShaKeyFor(jwtSecret.getBytes());
+        parser = Jwts.parserBuilder().setSigningKey(signingKey).build();
     }
 
-    public String generateJwtToken(String username) {
-        return Jwts.builder()
-                .setSubject(username)
-                .setIssuedAt(new Date())
-                .setExpiration(new Date((new Date()).getTime() + jwtExpirationMs))
-                .signWith(getSigningKey(), SignatureAlgorithm.HS256)
-                .compact();
+    public long getJwtExpirationMs() {
+        return jwtExpirationMs;
     }
 
-    public String getUserNameFromJwtToken(String token) {
-        return Jwts.parserBuilder()
-                .setSigningKey(getSigningKey())
-                .build()
-                .parseClaimsJws(token)
-                .getBody()
-                .getSubject();
+    // Carries everything authorization needs, so a request can be authorized without a lookup
+    public String generateJwtToken(User user) {
+        Date now = new Date();
+        return Jwts.builder()
+                .setSubject(user.getUsername())
+                .setId(UUID.randomUUID().toString())
+                .claim("uid", user.getId())
+                .claim("roles", user.getRoles())
+                .setIssuedAt(now)
+                .setExpiration(new Date(now.getTime() + jwtExpirationMs))
+                .signWith(signingKey, SignatureAlgorithm.HS256)
+                .compact();
     }
 
-    public boolean validateJwtToken(String authToken) {
+    // Verifies the token in a single parse; null when it is not valid
+    public AuthToken parseJwtToken(String authToken) {
         try {
-            Jwts.parserBuilder()
-                .setSigningKey(getSigningKey())
-                .build()
-                .parseClaimsJws(authToken);
-            return true;
+            Claims claims = parser.parseClaimsJws(authToken).getBody();
+            List<?> roles = claims.get("roles", List.class);
+            return new AuthToken(claims.getSubject(), claims.get("uid", String.class),
+                    roles != null ? roles.stream().map(String::valueOf).toList() : null, claims.getId(),
+                    claims.getIssuedAt() != null ? claims.getIssuedAt().toInstant() : null,
+                    claims.getExpiration() != null ? claims.getExpiration().toInstant() : null);
         } catch (MalformedJwtException e) {
-            System.err.println("Invalid JWT token: " + e.getMessage());
+            logger.debug("Invalid JWT token: {}", e.getMessage());
+        } catch (SignatureException e) {
+            logger.debug("Invalid JWT signature: {}", e.getMessage());
         } catch (ExpiredJwtException e) {
-            System.err.println("JWT token is expired: " + e.getMessage());
+            logger.debug("JWT token is expired: {}", e.getMessage());
         } catch (UnsupportedJwtException e) {
-            System.err.println("JWT token is unsupported: " + e.getMessage());
+            logger.debug("JWT token is unsupported: {}", e.getMessage());
         } catch (IllegalArgumentException e) {
-            System.err.println("JWT claims string is empty: " + e.getMessage());
+            logger.debug("JWT claims string is empty: {}", e.getMessage());
         }
-        return false;
+        return null;
     }
 }
@@ -1,9 +1,11 @@
 package com.example.codepilot.security;
 
+import jakarta.servlet.DispatcherType;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpMethod;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.http.SessionCreationPolicy;
@@ -39,9 +41,16 @@ public class SecurityConfig {
             .csrf(csrf -> csrf.disable())
 .sessionManagement(session -> session.sessionCreationPolicy(SessionCreationPolicy.IF_REQUIRED))
             .authorizeHttpRequests(authz -> authz
+                // Streamed responses complete on an async dispatch that carries no JWT of its own
+                .dispatcherTypeMatchers(DispatcherType.ASYNC).permitAll()
+                .requestMatchers(HttpMethod.DELETE, "/api/review/cache").hasRole("ADMIN")
+                .requestMatchers("/api/review/export").hasRole("ADMIN")
+                // Stats and the Prometheus scrape expose backend URLs, model names and queue internals
+                .requestMatchers("/api/stats/**").hasRole("ADMIN")
                 .requestMatchers("/api/auth/**").permitAll()
                 .requestMatchers("/api/oauth/**").permitAll()
-                .requestMatchers("/api/review","/api/credits/**").authenticated()
+                .requestMatchers("/api/review","/api/review/stream","/api/review/jobs/**","/api/review/mine/**","/api/credits/**").authenticated()
+                .requestMatchers("/api/github/**").authenticated()
                 .requestMatchers("/oauth2/**").permitAll()
                 .requestMatchers("/login/oauth2/**").permitAll()
                 .anyRequest().permitAll()
@@ -0,0 +1,130 @@
+package com.example.codepilot.security;
+
+import com.example.codepilot.models.RevokedToken;
+import com.example.codepilot.repository.RevokedTokenRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory copy of the "revoked_tokens" collection, consulted on every authenticated request.
+ * Only revocations of tokens that have not expired yet are kept, so it stays as small as the
+ * number of logouts and disabled users within one token lifetime. Revocations made on this
+ * instance apply at once; those made elsewhere after the next refresh.
+ */
+@Component
+public class TokenRevocationList {
+
+    private static final Logger logger = LoggerFactory.getLogger(TokenRevocationList.class);
+
+    // Revocations written by other instances with a slightly behind clock are still picked up
+    private static final Duration CLOCK_SKEW = Duration.ofSeconds(30);
+
+    @Autowired
+    private RevokedTokenRepository revokedTokenRepository;
+
+    @Autowired
+    private JwtUtils jwtUtils;
+
+    // jti -> expiry of the token
+    private final Map<String, Instant> revokedTokens = new ConcurrentHashMap<>();
+    // user id -> tokens issued before this instant are revoked
+    private final Map<String, Instant> revokedUsers = new ConcurrentHashMap<>();
+    private final Map<String, Instant> revokedUsersExpiry = new ConcurrentHashMap<>();
+
+    private volatile Instant lastRefresh;
+
+    public boolean isRevoked(JwtUtils.AuthToken token) {
+        if (token.tokenId() != null && revokedTokens.containsKey(token.tokenId())) {
+            return true;
+        }
+        if (token.userId() == null) {
+            return false;
+        }
+        Instant before = revokedUsers.get(token.userId());
+        return before != null && (token.issuedAt() == null || token.issuedAt().isBefore(before));
+    }
+
+    public void revokeToken(JwtUtils.AuthToken token) {
+        if (token.tokenId() == null) {
+            return;
+        }
+        Instant expiresAt = token.expiresAt() != null ? token.expiresAt()
+                : Instant.now().plusMillis(jwtUtils.getJwtExpirationMs());
+        save(new RevokedToken(null, token.tokenId(), token.userId(), null, Instant.now(), expiresAt));
+    }
+
+    // Every token issued to the user so far, e.g. after it was disabled or its roles changed
+    public void revokeUser(String userId) {
+        Instant now = Instant.now();
+        // iat has whole seconds; a token issued later in this second stays valid
+        save(new RevokedToken(null, null, userId, now.truncatedTo(ChronoUnit.SECONDS), now,
+                now.plusMillis(jwtUtils.getJwtExpirationMs())));
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        Instant now = Instant.now();
+        try {
+            revokedTokenRepository.findByExpiresAtAfter(now).forEach(this::apply);
+            lastRefresh = now;
+        } catch (Exception e) {
+            logger.warn("Failed to load revoked tokens: {}", e.getMessage());
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${app.auth.revocation-refresh-ms:10000}")
+    public void refresh() {
+        if (lastRefresh == null) {
+            load();
+            return;
+        }
+        Instant now = Instant.now();
+        try {
+            List<RevokedToken> added = revokedTokenRepository.findByCreatedAtAfter(lastRefresh.minus(CLOCK_SKEW));
+            added.forEach(this::apply);
+            lastRefresh = now;
+        } catch (Exception e) {
+            logger.warn("Failed to refresh revoked tokens: {}", e.getMessage());
+        }
+        revokedTokens.values().removeIf(expiresAt -> expiresAt.isBefore(now));
+        revokedUsersExpiry.entrySet().removeIf(entry -> {
+            if (entry.getValue().isBefore(now)) {
+                revokedUsers.remove(entry.getKey());
+                return true;
+            }
+            return false;
+        });
+    }
+
+    private void save(RevokedToken revocation) {
+        apply(revocation);
+        try {
+            revokedTokenRepository.save(revocation);
+        } catch (Exception e) {
+            logger.warn("Failed to persist token revocation: {}", e.getMessage());
+        }
+    }
+
+    private void apply(RevokedToken revocation) {
+        if (revocation.getTokenId() != null) {
+            revokedTokens.put(revocation.getTokenId(), revocation.getExpiresAt());
+        } else if (revocation.getUserId() != null && revocation.getIssuedBefore() != null) {
+            revokedUsers.merge(revocation.getUserId(), revocation.getIssuedBefore(),
+                    (a, b) -> a.isAfter(b) ? a : b);
+            revokedUsersExpiry.merge(revocation.getUserId(), revocation.getExpiresAt(),
+                    (a, b) -> a.isAfter(b) ? a : b);
+        }
+    }
+}
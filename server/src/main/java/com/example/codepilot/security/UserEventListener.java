@@ -0,0 +1,53 @@
+package com.example.codepilot.security;
+
+import com.example.codepilot.models.User;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.data.mongodb.core.mapping.event.BeforeConvertEvent;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Objects;
+
+// Tokens carry the roles and are trusted without a lookup, so saving a user with other roles,
+// or disabled, revokes the tokens issued to it so far
+@Component
+public class UserEventListener extends AbstractMongoEventListener<User> {
+
+    @Autowired
+    private TokenRevocationList revocationList;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    // Users are saved rarely (sign-up, OAuth), so reading the stored roles first is cheap
+    @Override
+    public void onBeforeConvert(BeforeConvertEvent<User> event) {
+        User user = event.getSource();
+        if (user.getId() == null) {
+            return;
+        }
+        Query query = new Query(Criteria.where("_id").is(user.getId()));
+        query.fields().include("roles");
+        User stored = mongoTemplate.findOne(query, User.class);
+        if (stored != null && !Objects.equals(roles(stored), roles(user))) {
+            revocationList.revokeUser(user.getId());
+        }
+    }
+
+    @Override
+    public void onAfterSave(AfterSaveEvent<User> event) {
+        User user = event.getSource();
+        if (!user.isEnabled()) {
+            revocationList.revokeUser(user.getId());
+        }
+    }
+
+    private static List<String> roles(User user) {
+        return user.getRoles() != null ? user.getRoles() : List.of();
+    }
+}
@@ -0,0 +1,282 @@
+package com.example.codepilot.service;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Streams the regular files of a gzipped tarball or a zip archive to a handler one at
+ * a time, as they are decompressed. Nothing but the current tar header is buffered, so
+ * memory use does not depend on the size of the archive. When the archive starts with a
+ * single top-level directory, as GitHub archives do, that directory is stripped from paths.
+ */
+public final class ArchiveReader {
+
+    public enum Format { TAR_GZ, ZIP }
+
+    public interface EntryHandler {
+        /**
+         * Called for every regular file. {@code size} is -1 when the archive does not record it
+         * up front; {@code content} ends with the entry and whatever is left unread is skipped.
+         */
+        void file(String path, long size, InputStream content) throws IOException, InterruptedException;
+    }
+
+    private static final int BLOCK = 512;
+    private static final int MAX_HEADER_BYTES = 1 << 20;
+
+    private final Format format;
+    private final long maxBytes;
+    private long bytesRead;
+    private String root;
+    private boolean first = true;
+    private String commitSha;
+
+    /** @param maxBytes limit on the uncompressed size, so a decompression bomb fails fast */
+    public ArchiveReader(Format format, long maxBytes) {
+        this.format = format;
+        this.maxBytes = maxBytes;
+    }
+
+    // Detects the format from the magic bytes; in must support mark/reset
+    public static Format detect(InputStream in) throws IOException {
+        in.mark(2);
+        int b0 = in.read();
+        int b1 = in.read();
+        in.reset();
+        if (b0 == 'P' && b1 == 'K') {
+            return Format.ZIP;
+        }
+        if (b0 == 0x1f && b1 == 0x8b) {
+            return Format.TAR_GZ;
+        }
+        return null;
+    }
+
+    // The commit a GitHub tarball was made from, recorded in its global pax header
+    public String getCommitSha() {
+        return commitSha;
+    }
+
+    public void read(InputStream in, EntryHandler handler) throws IOException, InterruptedException {
+        if (format == Format.ZIP) {
+            readZip(in, handler);
+        } else {
+            readTar(new GZIPInputStream(in, 64 * 1024), handler);
+        }
+    }
+
+    private void readZip(InputStream in, EntryHandler handler) throws IOException, InterruptedException {
+        ZipInputStream zip = new ZipInputStream(in);
+        ZipEntry entry;
+        while ((entry = zip.getNextEntry()) != null) {
+            String path = entry.getName();
+            if (entry.isDirectory()) {
+                directory(path);
+            } else if ((path = relative(path)) != null) {
+                EntryStream content = new EntryStream(zip, Long.MAX_VALUE);
+                handler.file(path, entry.getSize(), content);
+                content.skipRest();
+            }
+        }
+    }
+
+    private void readTar(InputStream in, EntryHandler handler) throws IOException, InterruptedException {
+        byte[] header = new byte[BLOCK];
+        String longPath = null;
+        while (true) {
+            int n = in.readNBytes(header, 0, BLOCK);
+            if (n == 0) {
+                return; // some writers omit the end-of-archive blocks
+            }
+            if (n < BLOCK) {
+                throw new EOFException("Truncated tar archive");
+            }
+            count(BLOCK);
+            if (isZero(header)) {
+                return;
+            }
+            long size = parseSize(header);
+            char type = (char) header[156];
+            if ((type == 'x' || type == 'g' || type == 'L') && size > MAX_HEADER_BYTES) {
+                throw new IOException("Oversized tar extended header");
+            }
+            EntryStream content = new EntryStream(in, size);
+            switch (type) {
+                case 'x' -> longPath = paxValue(content.readAllBytes(), "path");
+                case 'g' -> {
+                    String comment = paxValue(content.readAllBytes(), "comment");
+                    commitSha = comment != null ? comment : commitSha;
+                }
+                case 'L' -> longPath = nullTerminated(content.readAllBytes(), 0, (int) size);
+                default -> {
+                    String path = longPath != null ? longPath : headerPath(header);
+                    longPath = null;
+                    if (type == '5') {
+                        directory(path);
+                    } else if ((type == '0' || type == '\0') && (path = relative(path)) != null) {
+                        handler.file(path, size, content);
+                    }
+                }
+            }
+            content.skipRest();
+            in.skipNBytes((BLOCK - size % BLOCK) % BLOCK);
+        }
+    }
+
+    private void directory(String path) {
+        if (first) {
+            String trimmed = path.endsWith("/") ? path.substring(0, path.length() - 1) : path;
+            if (!trimmed.isEmpty() && trimmed.indexOf('/') < 0) {
+                root = trimmed + "/";
+            }
+        }
+        first = false;
+    }
+
+    // Path inside the repository, or null for entries that cannot be part of it
+    private String relative(String path) {
+        first = false;
+        if (path.startsWith("./")) {
+            path = path.substring(2);
+        }
+        if (root != null && path.startsWith(root)) {
+            path = path.substring(root.length());
+        }
+        if (path.isEmpty() || path.startsWith("/") || path.contains("../")) {
+            return null;
+        }
+        return path;
+    }
+
+    private void count(long n) throws IOException {
+        bytesRead += n;
+        if (bytesRead > maxBytes) {
+            throw new IOException("Archive is larger than " + maxBytes + " bytes uncompressed");
+        }
+    }
+
+    private static boolean isZero(byte[] block) {
+        for (byte b : block) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String headerPath(byte[] header) {
+        String name = nullTerminated(header, 0, 100);
+        // ustar splits long paths into a prefix and a name
+        if ("ustar".equals(nullTerminated(header, 257, 6).trim())) {
+            String prefix = nullTerminated(header, 345, 155);
+            if (!prefix.isEmpty()) {
+                return prefix + "/" + name;
+            }
+        }
+        return name;
+    }
+
+    private static long parseSize(byte[] header) throws IOException {
+        if ((header[124] & 0x80) != 0) {
+            // GNU base-256 encoding for sizes of 8 GiB and more
+            long size = 0;
+            for (int i = 125; i < 136; i++) {
+                size = (size << 8) | (header[i] & 0xff);
+            }
+            return size;
+        }
+        String octal = nullTerminated(header, 124, 12).trim();
+        try {
+            return octal.isEmpty() ? 0 : Long.parseLong(octal, 8);
+        } catch (NumberFormatException e) {
+            throw new IOException("Corrupt tar header");
+        }
+    }
+
+    private static String nullTerminated(byte[] bytes, int offset, int length) {
+        int end = offset;
+        while (end < offset + length && bytes[end] != 0) {
+            end++;
+        }
+        return new String(bytes, offset, end - offset, StandardCharsets.UTF_8);
+    }
+
+    // Pax records are "<length> <key>=<value>\n"
+    private static String paxValue(byte[] records, String key) {
+        int position = 0;
+        while (position < records.length) {
+            int space = position;
+            while (space < records.length && records[space] != ' ') {
+                space++;
+            }
+            int length;
+            try {
+                length = Integer.parseInt(new String(records, position, space - position, StandardCharsets.UTF_8));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            if (length <= 0 || position + length > records.length) {
+                return null;
+            }
+            String record = new String(records, space + 1, position + length - space - 2, StandardCharsets.UTF_8);
+            if (record.startsWith(key + "=")) {
+                return record.substring(key.length() + 1);
+            }
+            position += length;
+        }
+        return null;
+    }
+
+    // One entry's bytes; never closes the archive stream and counts everything toward maxBytes
+    private final class EntryStream extends FilterInputStream {
+        private long remaining;
+
+        EntryStream(InputStream in, long size) {
+            super(in);
+            this.remaining = size;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = in.read();
+            if (b >= 0) {
+                remaining--;
+                count(1);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int n = in.read(buffer, offset, (int) Math.min(length, remaining));
+            if (n > 0) {
+                remaining -= n;
+                count(n);
+            }
+            return n;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        void skipRest() throws IOException {
+            byte[] buffer = new byte[8192];
+            while (read(buffer, 0, buffer.length) > 0) {
+                // drain
+            }
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.example.codepilot.service;
+
+import com.example.codepilot.models.ContentBlob;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.mongodb.client.gridfs.model.GridFSFile;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Content-addressed store for large text such as submitted code and model output. Each
+ * distinct text is deflated and written once to "content_blobs" under its SHA-256, however
+ * many documents refer to it; texts still larger than {@code app.blobs.gridfs-threshold-bytes}
+ * after compression go to GridFS instead. Blobs are immutable, so reads are cached freely.
+ */
+@Service
+public class BlobStore {
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private GridFsTemplate gridFsTemplate;
+
+    @Value("${app.blobs.gridfs-threshold-bytes:1048576}")
+    private int gridFsThresholdBytes;
+
+    // Bounded by the total length of the cached texts, so a few GridFS-sized bodies cannot fill the heap
+    @Value("${app.blobs.cache-max-chars:33554432}")
+    private long cacheMaxChars;
+
+    private Cache<String, String> cache;
+
+    @PostConstruct
+    void init() {
+        cache = Caffeine.newBuilder()
+                .maximumWeight(cacheMaxChars)
+                .weigher((String hash, String text) -> text.length())
+                .build();
+    }
+
+    /** Stores the text unless it is already there and returns its hash; null for null text. */
+    public String put(String text) {
+        if (text == null) {
+            return null;
+        }
+        byte[] raw = text.getBytes(StandardCharsets.UTF_8);
+        String hash = hash(raw);
+        if (cache.getIfPresent(hash) != null || mongoTemplate.exists(byHash(hash), ContentBlob.class)) {
+            return hash;
+        }
+
+        byte[] compressed = compress(raw);
+        Update update = new Update()
+                .setOnInsert("size", raw.length)
+                .setOnInsert("storedSize", compressed.length)
+                .setOnInsert("createdAt", Instant.now());
+        ObjectId gridFsId = null;
+        if (compressed.length > gridFsThresholdBytes) {
+            gridFsId = gridFsTemplate.store(new ByteArrayInputStream(compressed), hash);
+            update.setOnInsert("gridFsId", gridFsId.toHexString());
+        } else {
+            update.setOnInsert("data", compressed);
+        }
+        // Concurrent writers of the same text race here; only the first insert takes effect
+        boolean inserted = mongoTemplate.upsert(byHash(hash), update, ContentBlob.class).getUpsertedId() != null;
+        if (!inserted && gridFsId != null) {
+            gridFsTemplate.delete(new Query(Criteria.where("_id").is(gridFsId)));
+        }
+        cache.put(hash, text);
+        return hash;
+    }
+
+    /** The text stored under {@code hash}, or null when there is none. */
+    public String get(String hash) {
+        if (hash == null) {
+            return null;
+        }
+        return cache.get(hash, this::load);
+    }
+
+    /**
+     * The texts stored under {@code hashes}, keyed by hash, read with one query. Bulk readers
+     * such as the export use this; it does not fill the cache, so they do not flush it.
+     */
+    public Map<String, String> getAll(Collection<String> hashes) {
+        Map<String, String> texts = new HashMap<>();
+        Set<String> missing = new HashSet<>();
+        for (String hash : hashes) {
+            String cached = hash != null ? cache.getIfPresent(hash) : null;
+            if (cached != null) {
+                texts.put(hash, cached);
+            } else if (hash != null) {
+                missing.add(hash);
+            }
+        }
+        if (!missing.isEmpty()) {
+            for (ContentBlob blob : mongoTemplate.find(new Query(Criteria.where("_id").in(missing)), ContentBlob.class)) {
+                String text = text(blob);
+                if (text != null) {
+                    texts.put(blob.getHash(), text);
+                }
+            }
+        }
+        return texts;
+    }
+
+    private String load(String hash) {
+        ContentBlob blob = mongoTemplate.findOne(byHash(hash), ContentBlob.class);
+        return blob != null ? text(blob) : null;
+    }
+
+    private String text(ContentBlob blob) {
+        byte[] compressed = blob.getData();
+        if (compressed == null && blob.getGridFsId() != null) {
+            GridFSFile file = gridFsTemplate.findOne(new Query(Criteria.where("_id").is(new ObjectId(blob.getGridFsId()))));
+            if (file == null) {
+                return null;
+            }
+            try (InputStream in = gridFsTemplate.getResource(file).getInputStream()) {
+                compressed = in.readAllBytes();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        return compressed != null ? new String(decompress(compressed, blob.getSize()), StandardCharsets.UTF_8) : null;
+    }
+
+    private static Query byHash(String hash) {
+        return new Query(Criteria.where("_id").is(hash));
+    }
+
+    static String hash(byte[] raw) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(raw));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static byte[] compress(byte[] raw) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, raw.length / 3));
+            byte[] buffer = new byte[8192];
+            while (!deflater.finished()) {
+                out.write(buffer, 0, deflater.deflate(buffer));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    static byte[] decompress(byte[] compressed, int size) {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            byte[] raw = new byte[size];
+            int read = 0;
+            while (read < size && !inflater.finished()) {
+                int n = inflater.inflate(raw, read, size - read);
+                if (n == 0 && inflater.needsInput()) {
+                    break;
+                }
+                read += n;
+            }
+            if (read != size) {
+                throw new IllegalStateException("Corrupt blob: expected " + size + " bytes, got " + read);
+            }
+            return raw;
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Corrupt blob", e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
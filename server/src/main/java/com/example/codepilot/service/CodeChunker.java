@@ -0,0 +1,167 @@
+package com.example.codepilot.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Splits code that does not fit the model context into pieces along syntactic
+ * boundaries. Cut points are line ends ranked by nesting: brace depth for C-like
+ * languages, indentation of the following line for the rest, so a piece ends after
+ * a complete function or class whenever one fits the token budget. A single unit
+ * larger than the budget is cut at its shallowest line end, and a single line
+ * larger than the budget at the character limit.
+ */
+public final class CodeChunker {
+
+    // Rough chars-per-token ratio of code-oriented BPE vocabularies
+    private static final int CHARS_PER_TOKEN = 4;
+
+    // Languages whose blocks are delimited by indentation (or keywords) rather than braces
+    private static final Set<String> INDENTED_LANGUAGES = Set.of(
+            "python", "ruby", "yaml", "haskell", "elixir", "nim", "fsharp", "coffeescript");
+
+    public record Chunk(int index, int startLine, int endLine, String text) {
+    }
+
+    private CodeChunker() {
+    }
+
+    public static int estimateTokens(String text) {
+        return text == null ? 0 : (text.length() + CHARS_PER_TOKEN - 1) / CHARS_PER_TOKEN;
+    }
+
+    public static List<Chunk> split(String code, String language, int maxTokens) {
+        int maxChars = Math.max(1, maxTokens) * CHARS_PER_TOKEN;
+        List<String> lines = lines(code);
+        int[] depth = depthAfterLines(lines,
+                language == null || !INDENTED_LANGUAGES.contains(language.toLowerCase(Locale.ROOT)));
+
+        List<Chunk> chunks = new ArrayList<>();
+        int start = 0;
+        while (start < lines.size()) {
+            int chars = 0;
+            int end = start;
+            while (end < lines.size() && chars + lines.get(end).length() <= maxChars) {
+                chars += lines.get(end).length();
+                end++;
+            }
+            if (end == lines.size()) {
+                addChunk(chunks, join(lines, start, end), start + 1, end);
+                break;
+            }
+            if (end == start) {
+                // One line longer than the whole budget
+                String line = lines.get(start);
+                lines.set(start, line.substring(maxChars));
+                addChunk(chunks, line.substring(0, maxChars), start + 1, start + 1);
+                continue;
+            }
+            // Cut after the shallowest line in the second half of the budget, preferring the latest on ties
+            int cut = end;
+            for (int i = end; i > start && chars >= maxChars / 2; i--) {
+                if (depth[i - 1] < depth[cut - 1]) cut = i;
+                chars -= lines.get(i - 1).length();
+            }
+            addChunk(chunks, join(lines, start, cut), start + 1, cut);
+            start = cut;
+        }
+        return chunks;
+    }
+
+    private static void addChunk(List<Chunk> chunks, String text, int startLine, int endLine) {
+        if (!text.isBlank()) {
+            chunks.add(new Chunk(chunks.size(), startLine, endLine, text));
+        }
+    }
+
+    private static String join(List<String> lines, int from, int to) {
+        StringBuilder text = new StringBuilder();
+        for (int i = from; i < to; i++) text.append(lines.get(i));
+        return text.toString();
+    }
+
+    // Lines including their terminators, so joining them restores the input exactly
+    private static List<String> lines(String code) {
+        List<String> lines = new ArrayList<>();
+        int start = 0;
+        for (int i = 0; i < code.length(); i++) {
+            if (code.charAt(i) == '\n') {
+                lines.add(code.substring(start, i + 1));
+                start = i + 1;
+            }
+        }
+        if (start < code.length()) {
+            lines.add(code.substring(start));
+        }
+        return lines;
+    }
+
+    /**
+     * Nesting after each line: the brace depth when the code uses braces, otherwise
+     * the indentation of the next non-blank line. Blank lines inside a unit count as
+     * slightly shallower so cuts land between statements rather than mid-expression.
+     */
+    private static int[] depthAfterLines(List<String> lines, boolean braceLanguage) {
+        int[] braces = new int[lines.size()];
+        boolean usesBraces = false;
+        int depth = 0;
+        boolean blockComment = false;
+        for (int i = 0; i < lines.size(); i++) {
+            String line = lines.get(i);
+            char quote = 0;
+            for (int j = 0; j < line.length(); j++) {
+                char c = line.charAt(j);
+                char next = j + 1 < line.length() ? line.charAt(j + 1) : 0;
+                if (blockComment) {
+                    if (c == '*' && next == '/') {
+                        blockComment = false;
+                        j++;
+                    }
+                } else if (quote != 0) {
+                    if (c == '\\') j++;
+                    else if (c == quote) quote = 0;
+                } else if (c == '/' && next == '/') {
+                    break;
+                } else if (c == '/' && next == '*') {
+                    blockComment = true;
+                    j++;
+                } else if (c == '"' || c == '\'' || c == '`') {
+                    quote = c;
+                } else if (c == '{') {
+                    depth++;
+                    usesBraces = braceLanguage;
+                } else if (c == '}') {
+                    depth = Math.max(0, depth - 1);
+                }
+            }
+            braces[i] = depth * 2 + 1;
+        }
+
+        int[] result = new int[lines.size()];
+        int nextIndent = 0;
+        for (int i = lines.size() - 1; i >= 0; i--) {
+            String line = lines.get(i);
+            boolean blank = line.isBlank();
+            if (usesBraces) {
+                result[i] = blank ? braces[i] - 1 : braces[i];
+            } else {
+                result[i] = nextIndent * 2 + (blank ? 0 : 1);
+                if (!blank) nextIndent = indentation(line);
+            }
+        }
+        return result;
+    }
+
+    private static int indentation(String line) {
+        int width = 0;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (c == ' ') width++;
+            else if (c == '\t') width += 4;
+            else break;
+        }
+        return width;
+    }
+}
@@ -0,0 +1,195 @@
+package com.example.codepilot.service;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Layout-insensitive fingerprint of a code snippet. The code is tokenized with
+ * comments and whitespace dropped, literals collapsed and identifiers renamed to a
+ * placeholder, then cut into overlapping token shingles. The shingle hashes give an
+ * exact Jaccard similarity and a 64-bit SimHash for fast approximate lookup. A bottom-k
+ * {@link #sketch()} of the shingles is small enough to keep in memory for every review
+ * and estimates the same Jaccard similarity without the code.
+ */
+public final class CodeFingerprint {
+
+    private static final int SHINGLE_SIZE = 4;
+
+    static final int SKETCH_SIZE = 64;
+
+    private static final Set<String> KEYWORDS = Set.of(
+            "abstract", "and", "as", "async", "await", "break", "case", "catch", "class", "const",
+            "continue", "def", "default", "del", "do", "elif", "else", "enum", "except", "export",
+            "extends", "false", "final", "finally", "fn", "for", "from", "func", "function", "go",
+            "if", "implements", "import", "in", "instanceof", "interface", "is", "lambda", "let",
+            "match", "new", "nil", "none", "not", "null", "or", "package", "pass", "private",
+            "protected", "public", "raise", "return", "static", "struct", "super", "switch", "this",
+            "throw", "throws", "true", "try", "type", "typeof", "var", "void", "while", "with", "yield");
+
+    // Languages where '#' starts a comment rather than a preprocessor directive
+    private static final Set<String> HASH_COMMENT_LANGUAGES = Set.of(
+            "python", "ruby", "shell", "bash", "sh", "perl", "r", "yaml", "powershell");
+
+    private final long simHash;
+    private final long[] shingles; // sorted, distinct
+
+    private CodeFingerprint(long simHash, long[] shingles) {
+        this.simHash = simHash;
+        this.shingles = shingles;
+    }
+
+    public long simHash() {
+        return simHash;
+    }
+
+    public static CodeFingerprint of(String code, String language) {
+        List<String> tokens = tokenize(code == null ? "" : code,
+                language != null && HASH_COMMENT_LANGUAGES.contains(language.toLowerCase(Locale.ROOT)));
+
+        int count = Math.max(1, tokens.size() - SHINGLE_SIZE + 1);
+        long[] hashes = new long[tokens.isEmpty() ? 0 : count];
+        for (int i = 0; i < hashes.length; i++) {
+            long h = 1125899906842597L;
+            for (int j = i; j < Math.min(i + SHINGLE_SIZE, tokens.size()); j++) {
+                h = 31 * h + tokens.get(j).hashCode();
+            }
+            hashes[i] = mix(h);
+        }
+        long[] distinct = Arrays.stream(hashes).sorted().distinct().toArray();
+
+        int[] weights = new int[64];
+        for (long h : distinct) {
+            for (int bit = 0; bit < 64; bit++) {
+                weights[bit] += ((h >>> bit) & 1L) != 0 ? 1 : -1;
+            }
+        }
+        long simHash = 0;
+        for (int bit = 0; bit < 64; bit++) {
+            if (weights[bit] > 0) {
+                simHash |= 1L << bit;
+            }
+        }
+        return new CodeFingerprint(simHash, distinct);
+    }
+
+    // Upper halves of the SKETCH_SIZE smallest shingle hashes, ascending and distinct
+    public int[] sketch() {
+        int[] sketch = new int[Math.min(SKETCH_SIZE, shingles.length)];
+        int size = 0;
+        for (int i = 0; i < shingles.length && size < sketch.length; i++) {
+            int value = (int) (shingles[i] >> 32);
+            if (size == 0 || sketch[size - 1] != value) {
+                sketch[size++] = value;
+            }
+        }
+        return size == sketch.length ? sketch : Arrays.copyOf(sketch, size);
+    }
+
+    /**
+     * Jaccard similarity estimated from two sketches: the share of the SKETCH_SIZE smallest
+     * hashes of the union that both sets contain. Exact when both sets fit in a sketch.
+     */
+    public static double estimateJaccard(int[] a, int[] b) {
+        int i = 0, j = 0, union = 0, common = 0;
+        while (union < SKETCH_SIZE && (i < a.length || j < b.length)) {
+            if (j >= b.length || i < a.length && a[i] < b[j]) {
+                i++;
+            } else if (i >= a.length || b[j] < a[i]) {
+                j++;
+            } else {
+                common++;
+                i++;
+                j++;
+            }
+            union++;
+        }
+        return union == 0 ? 1.0 : (double) common / union;
+    }
+
+    // Stored form of a sketch, four big-endian bytes per hash
+    public static byte[] encodeSketch(int[] sketch) {
+        ByteBuffer buffer = ByteBuffer.allocate(sketch.length * Integer.BYTES);
+        buffer.asIntBuffer().put(sketch);
+        return buffer.array();
+    }
+
+    public static int[] decodeSketch(byte[] bytes) {
+        int[] sketch = new int[bytes.length / Integer.BYTES];
+        ByteBuffer.wrap(bytes).asIntBuffer().get(sketch);
+        return sketch;
+    }
+
+    public static int hammingDistance(long a, long b) {
+        return Long.bitCount(a ^ b);
+    }
+
+    // Exact Jaccard similarity of the two shingle sets
+    public double jaccard(CodeFingerprint other) {
+        if (shingles.length == 0 && other.shingles.length == 0) {
+            return 1.0;
+        }
+        int i = 0, j = 0, common = 0;
+        while (i < shingles.length && j < other.shingles.length) {
+            if (shingles[i] == other.shingles[j]) {
+                common++;
+                i++;
+                j++;
+            } else if (shingles[i] < other.shingles[j]) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return (double) common / (shingles.length + other.shingles.length - common);
+    }
+
+    static List<String> tokenize(String code, boolean hashComments) {
+        List<String> tokens = new ArrayList<>();
+        int n = code.length();
+        int i = 0;
+        while (i < n) {
+            char c = code.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '/' && i + 1 < n && code.charAt(i + 1) == '/' || c == '#' && hashComments) {
+                while (i < n && code.charAt(i) != '\n') i++;
+            } else if (c == '/' && i + 1 < n && code.charAt(i + 1) == '*') {
+                int end = code.indexOf("*/", i + 2);
+                i = end < 0 ? n : end + 2;
+            } else if (c == '"' || c == '\'' || c == '`') {
+                i++;
+                while (i < n && code.charAt(i) != c) {
+                    i += code.charAt(i) == '\\' ? 2 : 1;
+                }
+                i++;
+                tokens.add("S");
+            } else if (Character.isDigit(c)) {
+                while (i < n && (Character.isLetterOrDigit(code.charAt(i)) || code.charAt(i) == '.')) i++;
+                tokens.add("N");
+            } else if (Character.isJavaIdentifierStart(c)) {
+                int start = i;
+                while (i < n && Character.isJavaIdentifierPart(code.charAt(i))) i++;
+                String word = code.substring(start, i);
+                tokens.add(KEYWORDS.contains(word.toLowerCase(Locale.ROOT)) ? word : "ID");
+            } else {
+                tokens.add(String.valueOf(c));
+                i++;
+            }
+        }
+        return tokens;
+    }
+
+    // MurmurHash3 finalizer: spreads the polynomial shingle hash over all 64 bits
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.codepilot.service;
+
+import com.example.codepilot.models.Credit;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.stereotype.Component;
+
+// Counts settled credit records into the usage rollups; credit records are written once
+@Component
+public class CreditEventListener extends AbstractMongoEventListener<Credit> {
+
+    @Autowired
+    private UsageRollups usageRollups;
+
+    @Override
+    public void onAfterSave(AfterSaveEvent<Credit> event) {
+        Credit credit = event.getSource();
+        if ("SUCCESS".equals(credit.getStatus()) && credit.getAmount() != null) {
+            usageRollups.recordPurchase(credit.getUserId(), credit.getAmount(),
+                    credit.getPrice() != null ? credit.getPrice() : 0.0);
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package com.example.codepilot.service;
+
+import com.example.codepilot.models.User;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Credit balances, changed only through single atomic updates of the user document, so
+ * concurrent requests of one user can neither overdraw nor lose a charge. A charge is
+ * taken up front as a {@link Reservation}, which is either settled once the work succeeded
+ * or released to give the credit back.
+ */
+@Service
+public class CreditService {
+
+    private static final Logger logger = LoggerFactory.getLogger(CreditService.class);
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private UsageRollups usageRollups;
+
+    @Autowired
+    private ObservationRegistry observationRegistry;
+
+    /** One credit taken from a user; {@link #release} gives it back at most once. */
+    public final class Reservation {
+        private final String userId;
+        private final int remaining;
+        private final AtomicBoolean closed = new AtomicBoolean();
+
+        private Reservation(String userId, int remaining) {
+            this.userId = userId;
+            this.remaining = remaining;
+        }
+
+        // Balance right after the credit was taken
+        public int getRemaining() {
+            return remaining;
+        }
+
+        public void settle() {
+            closed.set(true);
+        }
+
+        public void release() {
+            if (closed.compareAndSet(false, true)) {
+                refund(userId);
+            }
+        }
+    }
+
+    /** Takes one credit in a single round trip; null when the user has none left. */
+    public Reservation reserve(String userId) {
+        Observation observation = Observation.createNotStarted("credits.reserve", observationRegistry).start();
+        try {
+            User user = modify(Criteria.where("_id").is(userId).and("credits").gt(0), new Update().inc("credits", -1));
+            // outcome=rejected counts the requests turned away for lack of credits
+            observation.lowCardinalityKeyValue("outcome", user != null ? "granted" : "rejected");
+            if (user != null) {
+                usageRollups.recordConsumed(userId, 1);
+            }
+            return user != null ? new Reservation(userId, user.getCredits()) : null;
+        } catch (RuntimeException e) {
+            observation.lowCardinalityKeyValue("outcome", "failed");
+            observation.error(e);
+            throw e;
+        } finally {
+            observation.stop();
+        }
+    }
+
+    public void refund(String userId) {
+        try {
+            if (modify(Criteria.where("_id").is(userId), new Update().inc("credits", 1)) != null) {
+                usageRollups.recordConsumed(userId, -1);
+            }
+        } catch (Exception e) {
+            // The charge stays on the user; log enough to correct it by hand
+            logger.error("Failed to refund a credit to user {}", userId, e);
+        }
+    }
+
+    /** Adds purchased credits and returns the new balance, or null when the user does not exist. */
+    public Integer addCredits(String userId, int amount, double price) {
+        User user = modify(Criteria.where("_id").is(userId),
+                new Update().inc("credits", amount).inc("totalSpent", price));
+        return user != null ? user.getCredits() : null;
+    }
+
+    private User modify(Criteria criteria, Update update) {
+        Query query = new Query(criteria);
+        query.fields().include("credits");
+        return mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), User.class);
+    }
+}
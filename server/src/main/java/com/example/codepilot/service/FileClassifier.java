@@ -0,0 +1,387 @@
+package com.example.codepilot.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+import static java.util.Map.entry;
+
+/**
+ * Decides which files of a repository are worth a review before any model time is spent.
+ * {@link #classifyPath} runs on the file list alone. It applies .gitignore, linguist-vendored
+ * and linguist-generated rules (falling back to linguist's usual vendored and generated paths),
+ * plus the size limit. {@link #classifyContent} then rejects binaries, minified or encoded
+ * data and files with a generated-code header. It also detects the language of scripts
+ * without an extension from their shebang.
+ */
+@Service
+public class FileClassifier {
+
+    public enum SkipReason {
+        UNSUPPORTED_LANGUAGE("unsupported-language"),
+        TOO_LARGE("too-large"),
+        IGNORED("ignored"),
+        VENDORED("vendored"),
+        GENERATED("generated"),
+        BINARY("binary"),
+        MINIFIED("minified"),
+        HIGH_ENTROPY("high-entropy"),
+        FILE_LIMIT("file-limit");
+
+        private final String label;
+
+        SkipReason(String label) {
+            this.label = label;
+        }
+
+        public String label() {
+            return label;
+        }
+    }
+
+    // Language to review the content as, or why it is skipped
+    public record Result(String language, SkipReason skipReason) {
+    }
+
+    private static final Map<String, String> EXTENSIONS = Map.ofEntries(
+            entry("java", "java"), entry("js", "javascript"), entry("jsx", "javascript"), entry("mjs", "javascript"),
+            entry("cjs", "javascript"), entry("ts", "typescript"), entry("tsx", "typescript"), entry("py", "python"),
+            entry("go", "go"), entry("rs", "rust"), entry("c", "c"), entry("h", "c"), entry("cpp", "cpp"),
+            entry("cc", "cpp"), entry("cxx", "cpp"), entry("hpp", "cpp"), entry("cs", "csharp"), entry("kt", "kotlin"),
+            entry("kts", "kotlin"), entry("rb", "ruby"), entry("php", "php"), entry("swift", "swift"),
+            entry("scala", "scala"), entry("sh", "shell"), entry("bash", "shell"), entry("pl", "perl"),
+            entry("m", "objective-c"), entry("dart", "dart"), entry("lua", "lua"), entry("ex", "elixir"),
+            entry("exs", "elixir"), entry("hs", "haskell"), entry("sql", "sql"));
+
+    private static final Map<String, String> INTERPRETERS = Map.ofEntries(
+            entry("python", "python"), entry("python3", "python"), entry("node", "javascript"), entry("deno", "typescript"),
+            entry("ruby", "ruby"), entry("sh", "shell"), entry("bash", "shell"), entry("zsh", "shell"),
+            entry("php", "php"), entry("perl", "perl"), entry("lua", "lua"), entry("elixir", "elixir"));
+
+    // linguist's common vendored locations
+    private static final Pattern VENDORED_PATH = Pattern.compile(
+            "(^|/)(node_modules|bower_components|jspm_packages|vendor|vendors|third[_-]party|Pods|Carthage|\\.yarn|dist)/");
+
+    private static final Pattern GENERATED_PATH = Pattern.compile(
+            "(^|/)(package-lock\\.json|yarn\\.lock|pnpm-lock\\.yaml|Cargo\\.lock|Gemfile\\.lock|poetry\\.lock|"
+                    + "composer\\.lock|go\\.sum)$"
+                    + "|\\.pb\\.(go|cc|h)$|_pb2(_grpc)?\\.py$|\\.g\\.dart$|\\.designer\\.cs$|[._]generated\\.\\w+$");
+
+    private static final Pattern MINIFIED_PATH = Pattern.compile("[.-]min\\.(js|mjs|css)$");
+
+    // The standard markers only, and only on a comment line: Go's "// Code generated ... DO NOT EDIT.",
+    // "@generated" (protobuf, Thrift, Relay, ...) and .NET's "<auto-generated>"
+    private static final Pattern GENERATED_HEADER = Pattern.compile(
+            "(?m)^// Code generated .+ DO NOT EDIT\\.$"
+                    + "|^[ \\t]*(?://+|#+|/?\\*+|--|<!--)(?:.*[ \\t])?(?:@generated|<auto-generated)\\b");
+
+    @Value("${app.github.max-file-bytes:200000}")
+    private long maxFileBytes;
+
+    @Value("${app.github.classifier.max-line-length:1500}")
+    private int maxLineLength;
+
+    @Value("${app.github.classifier.max-average-line-length:200}")
+    private int maxAverageLineLength;
+
+    // Bits per byte; source code sits around 4.5-5.3, base64 near 6, compressed data near 8
+    @Value("${app.github.classifier.max-entropy:5.9}")
+    private double maxEntropy;
+
+    public long getMaxFileBytes() {
+        return maxFileBytes;
+    }
+
+    /**
+     * Decision from the path and size alone; null when the file has to be fetched and its content
+     * classified. {@code mayBeScript} lets files without a known extension through so their shebang
+     * can be checked; size is -1 when unknown.
+     */
+    public SkipReason classifyPath(String path, long size, boolean mayBeScript, Rules rules) {
+        if (rules.ignored(path)) {
+            return SkipReason.IGNORED;
+        }
+        Boolean vendored = rules.attribute(path, "linguist-vendored");
+        if (vendored != null ? vendored : VENDORED_PATH.matcher(path).find()) {
+            return SkipReason.VENDORED;
+        }
+        Boolean generated = rules.attribute(path, "linguist-generated");
+        if (generated != null ? generated : GENERATED_PATH.matcher(path).find()) {
+            return SkipReason.GENERATED;
+        }
+        if (MINIFIED_PATH.matcher(path).find()) {
+            return SkipReason.MINIFIED;
+        }
+        if (languageOf(path) == null && (!mayBeScript || basename(path).contains("."))) {
+            return SkipReason.UNSUPPORTED_LANGUAGE;
+        }
+        if (size > maxFileBytes) {
+            return SkipReason.TOO_LARGE;
+        }
+        return null;
+    }
+
+    public Result classifyContent(String path, byte[] content) {
+        String language = languageOf(path);
+        if (language == null && (language = shebangLanguage(content)) == null) {
+            return skip(SkipReason.UNSUPPORTED_LANGUAGE);
+        }
+        if (content.length > maxFileBytes) {
+            return skip(SkipReason.TOO_LARGE);
+        }
+        // Same test git uses to decide a file is binary
+        for (int i = 0, end = Math.min(content.length, 8000); i < end; i++) {
+            if (content[i] == 0) {
+                return skip(SkipReason.BINARY);
+            }
+        }
+        if (content.length >= 1024 && entropy(content) > maxEntropy) {
+            return skip(SkipReason.HIGH_ENTROPY);
+        }
+
+        int lines = 1;
+        int longest = 0;
+        int lineStart = 0;
+        for (int i = 0; i < content.length; i++) {
+            if (content[i] == '\n') {
+                longest = Math.max(longest, i - lineStart);
+                lineStart = i + 1;
+                lines++;
+            }
+        }
+        longest = Math.max(longest, content.length - lineStart);
+        if (content.length >= 1024 && (longest > maxLineLength || content.length / lines > maxAverageLineLength)) {
+            return skip(SkipReason.MINIFIED);
+        }
+
+        String header = new String(content, 0, Math.min(content.length, 1024), StandardCharsets.UTF_8);
+        if (GENERATED_HEADER.matcher(header).find()) {
+            return skip(SkipReason.GENERATED);
+        }
+        return new Result(language, null);
+    }
+
+    public static String languageOf(String path) {
+        String name = basename(path);
+        int dot = name.lastIndexOf('.');
+        return dot < 0 ? null : EXTENSIONS.get(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    public static boolean isRulesFile(String path) {
+        String name = basename(path);
+        return name.equals(".gitignore") || name.equals(".gitattributes");
+    }
+
+    // "#!/usr/bin/env python3", "#!/bin/bash -e", ...
+    private static String shebangLanguage(byte[] content) {
+        if (content.length < 3 || content[0] != '#' || content[1] != '!') {
+            return null;
+        }
+        int end = 2;
+        while (end < content.length && end < 256 && content[end] != '\n') {
+            end++;
+        }
+        String[] words = new String(content, 2, end - 2, StandardCharsets.UTF_8).trim().split("\\s+");
+        String interpreter = basename(words[0]);
+        if (interpreter.equals("env") && words.length > 1) {
+            interpreter = words[words.length > 2 && words[1].startsWith("-") ? 2 : 1];
+        }
+        if (INTERPRETERS.containsKey(interpreter)) {
+            return INTERPRETERS.get(interpreter);
+        }
+        return INTERPRETERS.get(interpreter.replaceAll("[0-9.]+$", "")); // python3.11 -> python
+    }
+
+    private static double entropy(byte[] content) {
+        int[] counts = new int[256];
+        for (byte b : content) {
+            counts[b & 0xff]++;
+        }
+        double entropy = 0;
+        for (int count : counts) {
+            if (count > 0) {
+                double p = (double) count / content.length;
+                entropy -= p * Math.log(p);
+            }
+        }
+        return entropy / Math.log(2);
+    }
+
+    private static Result skip(SkipReason reason) {
+        return new Result(null, reason);
+    }
+
+    private static String basename(String path) {
+        return path.substring(path.lastIndexOf('/') + 1);
+    }
+
+    /**
+     * The .gitignore and .gitattributes rules of one repository. Rules from a deeper directory
+     * take precedence over those of its parents and, within a file, later lines over earlier ones.
+     */
+    public static final class Rules {
+
+        private record Rule(int depth, String base, Pattern pattern, boolean anchored, boolean directoryOnly,
+                            boolean negated, Map<String, Boolean> attributes) {
+        }
+
+        private final List<Rule> ignoreRules = new ArrayList<>();
+        private final List<Rule> attributeRules = new ArrayList<>();
+
+        /** Adds a .gitignore or .gitattributes file found at {@code path}. */
+        public void add(String path, String content) {
+            String base = path.substring(0, path.lastIndexOf('/') + 1);
+            boolean attributes = basename(path).equals(".gitattributes");
+            for (String line : content.split("\r?\n")) {
+                if (attributes) {
+                    addAttributes(base, line.trim());
+                } else {
+                    addIgnore(base, line);
+                }
+            }
+        }
+
+        private void addIgnore(String base, String line) {
+            String pattern = line.replaceAll("(?<!\\\\)\\s+$", "");
+            if (pattern.isEmpty() || pattern.startsWith("#")) {
+                return;
+            }
+            boolean negated = pattern.startsWith("!");
+            if (negated) {
+                pattern = pattern.substring(1);
+            } else if (pattern.startsWith("\\")) {
+                pattern = pattern.substring(1);
+            }
+            insert(ignoreRules, rule(base, pattern, negated, Map.of()));
+        }
+
+        private void addAttributes(String base, String line) {
+            if (line.isEmpty() || line.startsWith("#") || line.startsWith("[attr]")) {
+                return;
+            }
+            String[] words = line.split("\\s+");
+            Map<String, Boolean> attributes = new HashMap<>();
+            for (int i = 1; i < words.length; i++) {
+                String word = words[i];
+                if (word.startsWith("-")) {
+                    attributes.put(word.substring(1), false);
+                } else if (word.endsWith("=false")) {
+                    attributes.put(word.substring(0, word.length() - 6), false);
+                } else if (!word.startsWith("!")) {
+                    attributes.put(word.endsWith("=true") ? word.substring(0, word.length() - 5) : word, true);
+                }
+            }
+            if (!attributes.isEmpty()) {
+                insert(attributeRules, rule(base, words[0], false, attributes));
+            }
+        }
+
+        public boolean ignored(String path) {
+            boolean ignored = false;
+            for (Rule rule : ignoreRules) {
+                if (matches(rule, path)) {
+                    ignored = !rule.negated();
+                }
+            }
+            return ignored;
+        }
+
+        // Value of a boolean attribute for the path, or null when no rule sets it
+        public Boolean attribute(String path, String name) {
+            Boolean value = null;
+            for (Rule rule : attributeRules) {
+                if (rule.attributes().containsKey(name) && matches(rule, path)) {
+                    value = rule.attributes().get(name);
+                }
+            }
+            return value;
+        }
+
+        // Keeps rules ordered by depth, and by insertion within a depth
+        private static void insert(List<Rule> rules, Rule rule) {
+            int position = rules.size();
+            while (position > 0 && rules.get(position - 1).depth() > rule.depth()) {
+                position--;
+            }
+            rules.add(position, rule);
+        }
+
+        private static Rule rule(String base, String pattern, boolean negated, Map<String, Boolean> attributes) {
+            boolean directoryOnly = pattern.endsWith("/");
+            if (directoryOnly) {
+                pattern = pattern.substring(0, pattern.length() - 1);
+            }
+            // A slash anywhere but at the end anchors the pattern to the directory of the rules file
+            boolean anchored = pattern.contains("/");
+            if (pattern.startsWith("/")) {
+                pattern = pattern.substring(1);
+            }
+            int depth = base.isEmpty() ? 0 : base.split("/").length;
+            return new Rule(depth, base, Pattern.compile(globToRegex(pattern)), anchored, directoryOnly, negated,
+                    attributes);
+        }
+
+        // A rule matching a directory also matches everything inside it
+        private static boolean matches(Rule rule, String path) {
+            if (!path.startsWith(rule.base())) {
+                return false;
+            }
+            String relative = path.substring(rule.base().length());
+            int slash = -1;
+            while (true) {
+                int next = relative.indexOf('/', slash + 1);
+                boolean directory = next >= 0;
+                if (directory || !rule.directoryOnly()) {
+                    String candidate = directory ? relative.substring(0, next) : relative;
+                    String target = rule.anchored() ? candidate : candidate.substring(candidate.lastIndexOf('/') + 1);
+                    if (rule.pattern().matcher(target).matches()) {
+                        return true;
+                    }
+                }
+                if (!directory) {
+                    return false;
+                }
+                slash = next;
+            }
+        }
+
+        static String globToRegex(String glob) {
+            StringBuilder regex = new StringBuilder();
+            for (int i = 0; i < glob.length(); i++) {
+                char c = glob.charAt(i);
+                if (c == '*' && glob.startsWith("**", i)) {
+                    boolean leading = i == 0 || glob.charAt(i - 1) == '/';
+                    boolean trailing = i + 2 == glob.length() || glob.charAt(i + 2) == '/';
+                    if (leading && i + 2 < glob.length() && trailing) {
+                        regex.append("(?:.*/)?"); // "**/" matches any number of directories, including none
+                        i += 2;
+                    } else {
+                        regex.append(".*");
+                        i++;
+                    }
+                } else if (c == '*') {
+                    regex.append("[^/]*");
+                } else if (c == '?') {
+                    regex.append("[^/]");
+                } else if (c == '[' && glob.indexOf(']', i + 2) > 0) {
+                    int close = glob.indexOf(']', i + 2);
+                    String set = glob.substring(i + 1, close);
+                    regex.append('[').append(set.startsWith("!") ? "^" + set.substring(1) : set).append(']');
+                    i = close;
+                } else if (c == '\\' && i + 1 < glob.length()) {
+                    regex.append(Pattern.quote(String.valueOf(glob.charAt(++i))));
+                } else {
+                    regex.append(Pattern.quote(String.valueOf(c)));
+                }
+            }
+            return regex.toString();
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.example.codepilot.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Sizes the context window and output budget of each generation from an estimate
+ * of the prompt length. Suggestions get a fixed number of output tokens; corrected
+ * code gets its input length times a ratio, since the model echoes the whole code.
+ * Both can be overridden per language, e.g. {@code java=768,python=384}.
+ *
+ * <p>The context is rounded up to a power of two: Ollama reloads the model whenever
+ * num_ctx changes, so only a handful of distinct sizes should ever be requested.
+ */
+@Service
+public class GenerationBudgeter {
+
+    // Prose the model likes to append after the code despite being told not to
+    private static final List<String> CORRECTED_CODE_STOP = List.of("\nExplanation:", "\n**Explanation");
+
+    // The chars/4 estimate runs low on symbol-heavy code
+    private static final double ESTIMATE_SAFETY = 1.15;
+
+    private static final int MIN_OUTPUT_TOKENS = 128;
+
+    @Value("${app.ollama.min-ctx:1024}")
+    private int minCtx;
+
+    @Value("${app.ollama.max-ctx:8192}")
+    private int maxCtx;
+
+    @Value("${app.review.suggestions-tokens:512}")
+    private int suggestionsTokens;
+
+    @Value("${app.review.suggestions-tokens-by-language:}")
+    private String suggestionsTokensByLanguage;
+
+    @Value("${app.review.corrected-code-ratio:1.25}")
+    private double correctedCodeRatio;
+
+    @Value("${app.review.corrected-code-ratio-by-language:}")
+    private String correctedCodeRatioByLanguage;
+
+    private final Map<String, Integer> suggestionsOverrides = new HashMap<>();
+    private final Map<String, Double> ratioOverrides = new HashMap<>();
+
+    @PostConstruct
+    void init() {
+        parse(suggestionsTokensByLanguage).forEach((language, value) ->
+                suggestionsOverrides.put(language, Integer.parseInt(value)));
+        parse(correctedCodeRatioByLanguage).forEach((language, value) ->
+                ratioOverrides.put(language, Double.parseDouble(value)));
+    }
+
+    public GenerationOptions forSuggestions(String language, String prompt) {
+        int output = suggestionsOverrides.getOrDefault(normalize(language), suggestionsTokens);
+        return budget(ReviewService.STAGE_SUGGESTIONS, prompt, output, List.of(), false);
+    }
+
+    public GenerationOptions forCorrectedCode(String language, String prompt, String code) {
+        double ratio = ratioOverrides.getOrDefault(normalize(language), correctedCodeRatio);
+        // Room for a fence and language label on top of the code itself
+        int output = (int) Math.ceil(CodeChunker.estimateTokens(code) * ratio) + 32;
+        return budget(ReviewService.STAGE_CORRECTED_CODE, prompt, output, CORRECTED_CODE_STOP, true);
+    }
+
+    private GenerationOptions budget(String promptType, String prompt, int outputTokens, List<String> stop, boolean stopAfterCodeBlock) {
+        int promptTokens = CodeChunker.estimateTokens(prompt);
+        int reserved = (int) Math.ceil(promptTokens * ESTIMATE_SAFETY);
+        int output = Math.max(MIN_OUTPUT_TOKENS, outputTokens);
+        if (reserved + output > maxCtx) {
+            // Cap the output rather than let Ollama silently cut the front of the prompt
+            output = Math.max(MIN_OUTPUT_TOKENS, maxCtx - reserved);
+        }
+        int numCtx = Math.max(minCtx, Math.min(maxCtx, Integer.highestOneBit(Math.max(1, reserved + output - 1)) << 1));
+        return new GenerationOptions(promptType, numCtx, output, stop, stopAfterCodeBlock, promptTokens);
+    }
+
+    private static String normalize(String language) {
+        return language == null ? "" : language.trim().toLowerCase(Locale.ROOT);
+    }
+
+    private static Map<String, String> parse(String entries) {
+        Map<String, String> parsed = new HashMap<>();
+        Arrays.stream(entries.split(","))
+                .map(String::trim)
+                .filter(entry -> entry.contains("="))
+                .forEach(entry -> parsed.put(normalize(entry.substring(0, entry.indexOf('='))),
+                        entry.substring(entry.indexOf('=') + 1).trim()));
+        return parsed;
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.codepilot.service;
+
+import java.util.List;
+
+/**
+ * Per-generation model settings: context window, output cap and stop conditions.
+ * {@code stopAfterCodeBlock} ends the generation as soon as the first fenced code
+ * block is closed, which Ollama's plain stop strings cannot express. {@code promptType}
+ * is the review stage the prompt belongs to and only labels metrics.
+ */
+public record GenerationOptions(String promptType, int numCtx, int numPredict, List<String> stop, boolean stopAfterCodeBlock,
+                                int estimatedPromptTokens) {
+}
@@ -0,0 +1,29 @@
+package com.example.codepilot.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+
+/**
+ * The part of the GitHub API repository analysis needs. {@link HttpGitHubClient}
+ * talks to the real API; tests substitute an in-memory implementation.
+ */
+public interface GitHubClient {
+
+    /** Lists every file of the repository at its ref, resolving the default branch when the ref is null. */
+    Tree listTree(GitHubRepository repository) throws IOException, InterruptedException;
+
+    /** Raw content of the blob with the given SHA. */
+    byte[] fetchBlob(GitHubRepository repository, String sha) throws IOException, InterruptedException;
+
+    /** Gzipped tarball of the repository at its ref; the caller closes the stream. */
+    InputStream openTarball(GitHubRepository repository) throws IOException, InterruptedException;
+
+    // executable is set for mode 100755, which marks scripts that may have no extension
+    record TreeEntry(String path, String sha, long size, boolean executable) {
+    }
+
+    // truncated is set when GitHub cut the listing short for very large repositories
+    record Tree(String ref, String commitSha, List<TreeEntry> files, boolean truncated) {
+    }
+}
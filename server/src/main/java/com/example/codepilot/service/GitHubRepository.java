@@ -0,0 +1,31 @@
+package com.example.codepilot.service;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A repository on GitHub and, optionally, the branch, tag or commit to analyze.
+ * A null ref means the repository's default branch.
+ */
+public record GitHubRepository(String owner, String name, String ref) {
+
+    // https://github.com/owner/repo[.git][/tree/ref], git@github.com:owner/repo.git or owner/repo
+    private static final Pattern URL = Pattern.compile(
+            "^(?:(?:https?://)?(?:www\\.)?github\\.com[/:]|git@github\\.com:)?"
+                    + "([A-Za-z0-9][A-Za-z0-9-]*)/([A-Za-z0-9._-]+?)(?:\\.git)?(?:/tree/(.+?))?/?$");
+
+    public static GitHubRepository parse(String url) {
+        if (url == null) {
+            throw new IllegalArgumentException("A GitHub repository URL is required");
+        }
+        Matcher matcher = URL.matcher(url.trim());
+        if (!matcher.matches()) {
+            throw new IllegalArgumentException("Not a GitHub repository URL: " + url);
+        }
+        return new GitHubRepository(matcher.group(1), matcher.group(2), matcher.group(3));
+    }
+
+    public String fullName() {
+        return owner + "/" + name;
+    }
+}
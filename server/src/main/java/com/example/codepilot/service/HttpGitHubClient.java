@@ -0,0 +1,128 @@
+package com.example.codepilot.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * {@link GitHubClient} backed by the GitHub REST API. The whole file list comes from one
+ * recursive git/trees call and each file is then fetched as a raw blob, so no call is
+ * spent walking directories. {@link #openTarball} instead downloads the whole repository in
+ * one call. Set {@code app.github.token} to lift the anonymous rate limit.
+ */
+@Service
+public class HttpGitHubClient implements GitHubClient {
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Value("${app.github.api-url:https://api.github.com}")
+    private String apiUrl;
+
+    @Value("${app.github.token:}")
+    private String token;
+
+    @Value("${app.github.timeout-ms:30000}")
+    private long timeoutMs;
+
+    private HttpClient httpClient;
+
+    @PostConstruct
+    void init() {
+        httpClient = HttpClient.newBuilder()
+                .connectTimeout(Duration.ofMillis(timeoutMs))
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .build();
+    }
+
+    @Override
+    public Tree listTree(GitHubRepository repository) throws IOException, InterruptedException {
+        String base = "/repos/" + repository.owner() + "/" + repository.name();
+        String ref = repository.ref();
+        if (ref == null) {
+            ref = readJson(get(base, "application/vnd.github+json")).path("default_branch").asText();
+        }
+        String commitSha = new String(get(base + "/commits/" + encode(ref), "application/vnd.github.sha"),
+                StandardCharsets.UTF_8).trim();
+
+        JsonNode tree = readJson(get(base + "/git/trees/" + commitSha + "?recursive=1", "application/vnd.github+json"));
+        List<TreeEntry> files = new ArrayList<>();
+        for (JsonNode entry : tree.path("tree")) {
+            String mode = entry.path("mode").asText();
+            // Symlinks are blobs too, but their content is only the link target
+            if ("blob".equals(entry.path("type").asText()) && !"120000".equals(mode)) {
+                files.add(new TreeEntry(entry.path("path").asText(), entry.path("sha").asText(),
+                        entry.path("size").asLong(), "100755".equals(mode)));
+            }
+        }
+        return new Tree(ref, commitSha, files, tree.path("truncated").asBoolean(false));
+    }
+
+    @Override
+    public byte[] fetchBlob(GitHubRepository repository, String sha) throws IOException, InterruptedException {
+        return get("/repos/" + repository.owner() + "/" + repository.name() + "/git/blobs/" + sha,
+                "application/vnd.github.raw");
+    }
+
+    // GitHub redirects to codeload.github.com, which streams the tarball as it is generated
+    @Override
+    public InputStream openTarball(GitHubRepository repository) throws IOException, InterruptedException {
+        String path = "/repos/" + repository.owner() + "/" + repository.name() + "/tarball"
+                + (repository.ref() != null ? "/" + encode(repository.ref()) : "");
+        HttpResponse<InputStream> response = httpClient.send(request(path, "application/vnd.github+json"),
+                HttpResponse.BodyHandlers.ofInputStream());
+        if (response.statusCode() != 200) {
+            response.body().close();
+            throw failure(response, path);
+        }
+        return response.body();
+    }
+
+    private byte[] get(String path, String accept) throws IOException, InterruptedException {
+        HttpResponse<byte[]> response = httpClient.send(request(path, accept), HttpResponse.BodyHandlers.ofByteArray());
+        if (response.statusCode() != 200) {
+            throw failure(response, path);
+        }
+        return response.body();
+    }
+
+    private HttpRequest request(String path, String accept) {
+        HttpRequest.Builder request = HttpRequest.newBuilder()
+                .uri(URI.create(apiUrl + path))
+                .timeout(Duration.ofMillis(timeoutMs))
+                .header("Accept", accept)
+                .header("X-GitHub-Api-Version", "2022-11-28")
+                .GET();
+        if (!token.isBlank()) {
+            request.header("Authorization", "Bearer " + token);
+        }
+        return request.build();
+    }
+
+    private static IOException failure(HttpResponse<?> response, String path) {
+        String detail = response.headers().firstValue("x-ratelimit-remaining").filter("0"::equals)
+                .map(remaining -> " (rate limit exhausted)").orElse("");
+        return new IOException("GitHub returned HTTP " + response.statusCode() + " for " + path + detail);
+    }
+
+    private JsonNode readJson(byte[] body) throws IOException {
+        return objectMapper.readTree(body);
+    }
+
+    private static String encode(String ref) {
+        return URLEncoder.encode(ref, StandardCharsets.UTF_8);
+    }
+}
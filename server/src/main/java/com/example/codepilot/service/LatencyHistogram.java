@@ -0,0 +1,93 @@
+package com.example.codepilot.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Log-linear latency histogram in the style of HdrHistogram: every power of two is split into
+ * {@value #SUB_BUCKETS} equal buckets, so a reported percentile is within about 3% of the true
+ * value. Bucket boundaries are fixed, which makes histograms mergeable by adding counts; that
+ * is how they are stored, as one counter per bucket that Mongo can {@code $inc}.
+ */
+public final class LatencyHistogram {
+
+    static final int SUB_BUCKETS = 16;
+    private static final int SUB_BUCKET_BITS = 4;
+
+    private final TreeMap<Integer, Long> counts = new TreeMap<>();
+    private long total;
+
+    public static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) Math.max(0, value);
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        return SUB_BUCKETS + shift * SUB_BUCKETS + (int) (value >>> shift) - SUB_BUCKETS;
+    }
+
+    // Smallest value that falls into the bucket
+    static long lowerBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+        return (long) (SUB_BUCKETS + (bucket - SUB_BUCKETS) % SUB_BUCKETS) << shift;
+    }
+
+    public void add(int bucket, long count) {
+        if (count > 0) {
+            counts.merge(bucket, count, Long::sum);
+            total += count;
+        }
+    }
+
+    public void record(long value) {
+        add(bucketOf(value), 1);
+    }
+
+    /** Adds stored bucket counts, keyed by bucket index as written by UsageRollups. */
+    public void merge(Map<String, ? extends Number> buckets) {
+        if (buckets != null) {
+            buckets.forEach((bucket, count) -> add(Integer.parseInt(bucket), count.longValue()));
+        }
+    }
+
+    /** Bucket counts in the stored form read by {@link #merge}. */
+    public Map<String, Long> buckets() {
+        Map<String, Long> buckets = new LinkedHashMap<>();
+        counts.forEach((bucket, count) -> buckets.put(String.valueOf(bucket), count));
+        return buckets;
+    }
+
+    public long count() {
+        return total;
+    }
+
+    /** Value at quantile {@code q} (0..1), reported as the middle of its bucket; 0 when empty. */
+    public long percentile(double q) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(q * total));
+        long seen = 0;
+        for (Map.Entry<Integer, Long> entry : counts.entrySet()) {
+            seen += entry.getValue();
+            if (seen >= rank) {
+                long low = lowerBound(entry.getKey());
+                return low + (lowerBound(entry.getKey() + 1) - 1 - low) / 2;
+            }
+        }
+        return lowerBound(counts.lastKey());
+    }
+
+    public Map<String, Long> percentiles() {
+        Map<String, Long> percentiles = new LinkedHashMap<>();
+        percentiles.put("p50", percentile(0.50));
+        percentiles.put("p90", percentile(0.90));
+        percentiles.put("p95", percentile(0.95));
+        percentiles.put("p99", percentile(0.99));
+        return percentiles;
+    }
+}
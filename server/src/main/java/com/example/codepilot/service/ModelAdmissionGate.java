@@ -0,0 +1,132 @@
+package com.example.codepilot.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Admission control in front of the model backends. At most
+ * {@code max-in-flight-per-backend} generations per configured backend run at once;
+ * up to {@code max-queue} more may wait, each for at most {@code queue-timeout-ms}.
+ * Anything beyond that is shed with a {@link ModelOverloadedException} instead of
+ * queueing without bound.
+ */
+@Service
+public class ModelAdmissionGate {
+
+    @Autowired
+    private OllamaBackendPool backendPool;
+
+    @Autowired
+    private ServerMetrics serverMetrics;
+
+    @Value("${app.ollama.max-in-flight-per-backend:4}")
+    private int maxInFlightPerBackend;
+
+    private int maxInFlight;
+
+    @Value("${app.ollama.max-queue:32}")
+    private int maxQueue;
+
+    @Value("${app.ollama.queue-timeout-ms:10000}")
+    private long queueTimeoutMs;
+
+    private Semaphore permits;
+
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final AtomicLong admitted = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong totalWaitMs = new AtomicLong();
+    private final AtomicLong maxWaitMs = new AtomicLong();
+    private final AtomicLong avgHoldMs = new AtomicLong(); // moving average of generation time
+
+    public interface Permit extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    @PostConstruct
+    void init() {
+        // Capacity grows with the number of backends so adding a box adds throughput
+        maxInFlight = maxInFlightPerBackend * backendPool.size();
+        permits = new Semaphore(maxInFlight, true);
+        serverMetrics.gauge("model.admission.in.flight", () -> maxInFlight - permits.availablePermits());
+        serverMetrics.gauge("model.admission.waiting", waiting::get);
+        serverMetrics.gauge("model.admission.capacity", () -> maxInFlight);
+    }
+
+    // Generations that can run at once across all backends
+    public int capacity() {
+        return maxInFlight;
+    }
+
+    public Permit acquire() throws InterruptedException {
+        if (waiting.incrementAndGet() > maxQueue) {
+            waiting.decrementAndGet();
+            throw reject("Model queue is full");
+        }
+        long start = System.nanoTime();
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(queueTimeoutMs, TimeUnit.MILLISECONDS);
+        } finally {
+            waiting.decrementAndGet();
+        }
+        long waitMs = (System.nanoTime() - start) / 1_000_000;
+        totalWaitMs.addAndGet(waitMs);
+        maxWaitMs.accumulateAndGet(waitMs, Math::max);
+        if (!acquired) {
+            throw reject("Timed out after " + queueTimeoutMs + " ms waiting for the model");
+        }
+        admitted.incrementAndGet();
+
+        long heldFrom = System.nanoTime();
+        AtomicInteger released = new AtomicInteger();
+        return () -> {
+            if (released.getAndIncrement() == 0) {
+                long heldMs = (System.nanoTime() - heldFrom) / 1_000_000;
+                avgHoldMs.updateAndGet(avg -> avg == 0 ? heldMs : (avg * 7 + heldMs) / 8);
+                permits.release();
+            }
+        };
+    }
+
+    // True when a new request would be rejected immediately; lets callers shed load before charging
+    public boolean isSaturated() {
+        return waiting.get() >= maxQueue;
+    }
+
+    public long retryAfterSeconds() {
+        long avg = avgHoldMs.get() > 0 ? avgHoldMs.get() : queueTimeoutMs;
+        long estimateMs = avg * (waiting.get() + 1) / Math.max(1, maxInFlight);
+        return Math.max(1, Math.min(120, TimeUnit.MILLISECONDS.toSeconds(estimateMs)));
+    }
+
+    private ModelOverloadedException reject(String message) {
+        rejected.incrementAndGet();
+        return new ModelOverloadedException(message, retryAfterSeconds());
+    }
+
+    public Map<String, Object> getStats() {
+        long waits = admitted.get() + rejected.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("maxInFlight", maxInFlight);
+        stats.put("inFlight", maxInFlight - permits.availablePermits());
+        stats.put("queueDepth", waiting.get());
+        stats.put("maxQueue", maxQueue);
+        stats.put("admitted", admitted.get());
+        stats.put("rejected", rejected.get());
+        stats.put("avgWaitMs", waits > 0 ? totalWaitMs.get() / waits : 0);
+        stats.put("maxWaitMs", maxWaitMs.get());
+        stats.put("avgGenerationMs", avgHoldMs.get());
+        return stats;
+    }
+}
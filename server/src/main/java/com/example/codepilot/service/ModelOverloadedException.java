@@ -0,0 +1,18 @@
+package com.example.codepilot.service;
+
+// Thrown when a generation cannot be admitted to the model backend within its queue-time budget
+public class ModelOverloadedException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long retryAfterSeconds;
+
+    public ModelOverloadedException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,186 @@
+package com.example.codepilot.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The set of Ollama servers generations can be sent to. Each generation goes to the
+ * available backend with the fewest outstanding requests. A backend is ejected for
+ * {@code eject-cooldown-ms} after repeated failures or a failed/slow health probe,
+ * and is re-admitted by the first successful probe once the cooldown is over.
+ */
+@Service
+public class OllamaBackendPool {
+
+    private static final Logger logger = LoggerFactory.getLogger(OllamaBackendPool.class);
+
+    @Value("${app.ollama.base-urls:${app.ollama.base-url:http://localhost:11434}}")
+    private String baseUrls;
+
+    @Value("${app.ollama.failure-threshold:3}")
+    private int failureThreshold;
+
+    @Value("${app.ollama.eject-cooldown-ms:30000}")
+    private long ejectCooldownMs;
+
+    @Value("${app.ollama.health-timeout-ms:2000}")
+    private long healthTimeoutMs;
+
+    private final List<Backend> backends = new ArrayList<>();
+    private final AtomicInteger nextStart = new AtomicInteger();
+    private HttpClient probeClient;
+
+    public static class Backend {
+        private final String url;
+        private final AtomicInteger outstanding = new AtomicInteger();
+        private final AtomicInteger consecutiveFailures = new AtomicInteger();
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private volatile boolean healthy = true;
+        private volatile long ejectedUntil;
+
+        Backend(String url) {
+            this.url = url;
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public int getOutstanding() {
+            return outstanding.get();
+        }
+
+        boolean isAvailable(long now) {
+            return healthy && now >= ejectedUntil;
+        }
+    }
+
+    @PostConstruct
+    void init() {
+        Arrays.stream(baseUrls.split(","))
+                .map(String::trim)
+                .filter(url -> !url.isEmpty())
+                .map(url -> url.endsWith("/") ? url.substring(0, url.length() - 1) : url)
+                .distinct()
+                .forEach(url -> backends.add(new Backend(url)));
+        if (backends.isEmpty()) {
+            throw new IllegalStateException("app.ollama.base-urls must list at least one backend");
+        }
+        probeClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(healthTimeoutMs))
+                .build();
+    }
+
+    public int size() {
+        return backends.size();
+    }
+
+    /**
+     * Picks the backend for one generation and counts it as outstanding; every call
+     * must be paired with {@link #release}. When every backend is ejected the least
+     * loaded one is still returned, so a flapping health check cannot stop all traffic.
+     */
+    public Backend acquire() {
+        long now = System.currentTimeMillis();
+        int start = Math.floorMod(nextStart.getAndIncrement(), backends.size());
+        Backend best = null;
+        Backend fallback = null;
+        for (int i = 0; i < backends.size(); i++) {
+            Backend backend = backends.get((start + i) % backends.size());
+            if (fallback == null || backend.outstanding.get() < fallback.outstanding.get()) {
+                fallback = backend;
+            }
+            if (backend.isAvailable(now)
+                    && (best == null || backend.outstanding.get() < best.outstanding.get())) {
+                best = backend;
+            }
+        }
+        Backend chosen = best != null ? best : fallback;
+        chosen.outstanding.incrementAndGet();
+        chosen.requests.incrementAndGet();
+        return chosen;
+    }
+
+    public void release(Backend backend, boolean success) {
+        backend.outstanding.decrementAndGet();
+        if (success) {
+            backend.consecutiveFailures.set(0);
+            return;
+        }
+        backend.failures.incrementAndGet();
+        if (backend.consecutiveFailures.incrementAndGet() >= failureThreshold) {
+            eject(backend, backend.consecutiveFailures.get() + " consecutive failures");
+        }
+    }
+
+    private void eject(Backend backend, String reason) {
+        if (backend.isAvailable(System.currentTimeMillis())) {
+            logger.warn("Ejecting Ollama backend {}: {}", backend.url, reason);
+        }
+        backend.healthy = false;
+        backend.ejectedUntil = System.currentTimeMillis() + ejectCooldownMs;
+    }
+
+    // Probes every backend in parallel; a probe slower than health-timeout-ms counts as a failure
+    @Scheduled(fixedDelayString = "${app.ollama.health-check-interval-ms:10000}")
+    public void checkHealth() {
+        CompletableFuture.allOf(backends.stream().map(this::probe).toArray(CompletableFuture[]::new)).join();
+    }
+
+    private CompletableFuture<Void> probe(Backend backend) {
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(backend.url + "/api/tags"))
+                .timeout(Duration.ofMillis(healthTimeoutMs))
+                .GET()
+                .build();
+        return probeClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .handle((response, error) -> {
+                    if (error == null && response.statusCode() == 200) {
+                        if (!backend.healthy && System.currentTimeMillis() >= backend.ejectedUntil) {
+                            logger.info("Ollama backend {} is healthy again", backend.url);
+                            backend.consecutiveFailures.set(0);
+                            backend.healthy = true;
+                        }
+                    } else {
+                        eject(backend, error != null ? "health probe failed: " + error.getMessage()
+                                : "health probe returned HTTP " + response.statusCode());
+                    }
+                    return null;
+                });
+    }
+
+    public List<Map<String, Object>> getStats() {
+        long now = System.currentTimeMillis();
+        List<Map<String, Object>> stats = new ArrayList<>();
+        for (Backend backend : backends) {
+            Map<String, Object> entry = new LinkedHashMap<>();
+            entry.put("url", backend.url);
+            entry.put("available", backend.isAvailable(now));
+            entry.put("outstanding", backend.outstanding.get());
+            entry.put("requests", backend.requests.get());
+            entry.put("failures", backend.failures.get());
+            stats.add(entry);
+        }
+        return stats;
+    }
+}
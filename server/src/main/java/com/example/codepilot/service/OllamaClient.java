@@ -0,0 +1,356 @@
+package com.example.codepilot.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Single entry point for talking to the Ollama model servers. Owns one long-lived
+ * HttpClient so connections are kept alive and reused across generations; each
+ * generation is admitted by {@link ModelAdmissionGate} and routed by {@link OllamaBackendPool}.
+ */
+@Service
+public class OllamaClient {
+
+    private static final Logger logger = LoggerFactory.getLogger(OllamaClient.class);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Autowired
+    private ModelAdmissionGate admissionGate;
+
+    @Autowired
+    private OllamaBackendPool backendPool;
+
+    @Autowired
+    private UsageRollups usageRollups;
+
+    @Autowired
+    private ObservationRegistry observationRegistry;
+
+    @Value("${app.ollama.model:deepseek-coder:6.7b}")
+    private String model;
+
+    @Value("${app.ollama.connect-timeout-ms:5000}")
+    private long connectTimeoutMs;
+
+    @Value("${app.ollama.read-timeout-ms:180000}")
+    private long readTimeoutMs;
+
+    private HttpClient httpClient;
+
+    private final AtomicLong calls = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong totalLatencyMs = new AtomicLong();
+    private final AtomicLong maxLatencyMs = new AtomicLong();
+
+    // Estimated vs. reported prompt tokens, over the calls Ollama reported a prompt_eval_count for
+    private final AtomicLong measuredCalls = new AtomicLong();
+    private final AtomicLong estimatedPromptTokens = new AtomicLong();
+    private final AtomicLong promptTokens = new AtomicLong();
+    private final AtomicLong outputTokens = new AtomicLong();
+    private final AtomicLong earlyStops = new AtomicLong();
+    private final AtomicLong outputLimitHits = new AtomicLong();
+
+    @PostConstruct
+    void init() {
+        // Ollama speaks plain HTTP/1.1; pinning the version skips the h2c upgrade attempt
+        httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .build();
+    }
+
+    public String getModel() {
+        return model;
+    }
+
+    public String generate(String prompt, GenerationOptions options) throws IOException, InterruptedException {
+        if (options.stopAfterCodeBlock()) {
+            // Only a streamed generation can be cut off once the code block is complete
+            return generateStream(prompt, options, token -> { });
+        }
+        ModelAdmissionGate.Permit permit = admissionGate.acquire();
+        try {
+            OllamaBackendPool.Backend backend = backendPool.acquire();
+            boolean backendOk = false;
+            try {
+                String text = send(buildRequest(backend.getUrl(), prompt, false, options), options);
+                backendOk = true;
+                return text;
+            } catch (InterruptedException e) {
+                backendOk = true; // cancelled by us, not the backend's fault
+                throw e;
+            } finally {
+                backendPool.release(backend, backendOk);
+            }
+        } finally {
+            permit.close();
+        }
+    }
+
+    private String send(HttpRequest ollamaRequest, GenerationOptions options) throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        Observation observation = generation(options, false).start();
+        try {
+            HttpResponse<String> response = httpClient.send(ollamaRequest, HttpResponse.BodyHandlers.ofString());
+            String body = response.body();
+            if (response.statusCode() != 200) {
+                throw new IOException("Ollama returned HTTP " + response.statusCode() + ": " + body);
+            }
+
+            JsonNode json = objectMapper.readTree(body);
+            if (!json.has("response")) {
+                // Log entire response for debugging
+                logger.error("Unexpected response from Ollama: {}", body);
+                throw new IllegalStateException("Ollama response missing 'response' field.");
+            }
+            failed = false;
+            String text = json.get("response").asText();
+            recordUsage(options, json, text, false);
+            return text;
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            observation.error(e);
+            throw e;
+        } finally {
+            observation.stop();
+            record(start, failed);
+        }
+    }
+
+    /**
+     * Streams a generation: every NDJSON chunk Ollama emits is handed to {@code onToken}
+     * as soon as it is read. Returns the full concatenated text once the model is done.
+     * If {@code onToken} throws, the response body is closed and the generation aborted;
+     * the same happens, without an error, once a code block closes under {@code stopAfterCodeBlock}.
+     */
+    public String generateStream(String prompt, GenerationOptions options, Consumer<String> onToken)
+            throws IOException, InterruptedException {
+        ModelAdmissionGate.Permit permit = admissionGate.acquire();
+        try {
+            OllamaBackendPool.Backend backend = backendPool.acquire();
+            boolean backendOk = false;
+            try {
+                String text = sendStreaming(buildRequest(backend.getUrl(), prompt, true, options), options, onToken);
+                backendOk = true;
+                return text;
+            } catch (InterruptedException e) {
+                backendOk = true;
+                throw e;
+            } catch (TokenConsumerException e) {
+                // The caller aborted the stream; the backend itself was fine
+                backendOk = true;
+                throw (RuntimeException) e.getCause();
+            } finally {
+                backendPool.release(backend, backendOk);
+            }
+        } finally {
+            permit.close();
+        }
+    }
+
+    private static class TokenConsumerException extends RuntimeException {
+        TokenConsumerException(RuntimeException cause) {
+            super(cause);
+        }
+    }
+
+    private String sendStreaming(HttpRequest ollamaRequest, GenerationOptions options, Consumer<String> onToken)
+            throws IOException, InterruptedException {
+        long start = System.nanoTime();
+        boolean failed = true;
+        Observation observation = generation(options, true).start();
+        try {
+            HttpResponse<Stream<String>> response = httpClient.send(ollamaRequest, HttpResponse.BodyHandlers.ofLines());
+            StringBuilder text = new StringBuilder();
+            CodeBlockEnd blockEnd = options.stopAfterCodeBlock() ? new CodeBlockEnd() : null;
+            JsonNode last = null;
+            boolean stoppedEarly = false;
+            // Closing the body cancels the request, which makes Ollama stop generating
+            try (Stream<String> lines = response.body()) {
+                if (response.statusCode() != 200) {
+                    throw new IOException("Ollama returned HTTP " + response.statusCode() + ": "
+                            + lines.collect(Collectors.joining("\n")));
+                }
+                Iterator<String> it = lines.iterator();
+                while (it.hasNext()) {
+                    String line = it.next();
+                    if (line.isBlank()) {
+                        continue;
+                    }
+                    JsonNode chunk = objectMapper.readTree(line);
+                    if (chunk.has("error")) {
+                        throw new IOException("Ollama error: " + chunk.get("error").asText());
+                    }
+                    String token = chunk.path("response").asText("");
+                    if (!token.isEmpty()) {
+                        text.append(token);
+                        try {
+                            onToken.accept(token);
+                        } catch (RuntimeException e) {
+                            throw new TokenConsumerException(e);
+                        }
+                    }
+                    if (chunk.path("done").asBoolean(false)) {
+                        last = chunk;
+                        break;
+                    }
+                    if (blockEnd != null && blockEnd.reached(text)) {
+                        stoppedEarly = true;
+                        break;
+                    }
+                }
+            }
+            failed = false;
+            recordUsage(options, last, text, stoppedEarly);
+            return text.toString();
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            observation.error(e);
+            throw e;
+        } finally {
+            observation.stop();
+            record(start, failed);
+        }
+    }
+
+    /**
+     * Tracks the first fenced code block of a growing output, scanning each
+     * character only once however many tokens are appended.
+     */
+    private static final class CodeBlockEnd {
+        private int from;
+        private int bodyStart = -1;
+
+        boolean reached(StringBuilder text) {
+            if (bodyStart < 0) {
+                int fence = text.indexOf("```", from);
+                if (fence < 0) {
+                    from = Math.max(0, text.length() - 2);
+                    return false;
+                }
+                int lineEnd = text.indexOf("\n", fence + 3);
+                if (lineEnd < 0) {
+                    from = fence;
+                    return false;
+                }
+                bodyStart = lineEnd + 1;
+                from = bodyStart;
+            }
+            if (text.indexOf("\n```", from) >= 0) {
+                return true;
+            }
+            from = Math.max(bodyStart, text.length() - 3);
+            return false;
+        }
+    }
+
+    private HttpRequest buildRequest(String baseUrl, String prompt, boolean stream, GenerationOptions options)
+            throws IOException {
+        Map<String, Object> modelOptions = new LinkedHashMap<>();
+        modelOptions.put("temperature", 0.2);
+        modelOptions.put("num_ctx", options.numCtx());
+        modelOptions.put("num_predict", options.numPredict());
+        if (!options.stop().isEmpty()) {
+            modelOptions.put("stop", options.stop());
+        }
+        String requestBody = objectMapper.writeValueAsString(Map.of(
+            "model", model,
+            "prompt", prompt,
+            "stream", stream,
+            "options", modelOptions
+        ));
+
+        return HttpRequest.newBuilder()
+                .uri(URI.create(baseUrl + "/api/generate"))
+                .timeout(Duration.ofMillis(readTimeoutMs))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofString(requestBody))
+                .build();
+    }
+
+    // One model call; active ones are the generations in flight
+    private Observation generation(GenerationOptions options, boolean stream) {
+        return Observation.createNotStarted("ollama.generate", observationRegistry)
+                .lowCardinalityKeyValue("model", model)
+                .lowCardinalityKeyValue("prompt.type", options.promptType() != null ? options.promptType() : "other")
+                .lowCardinalityKeyValue("stream", String.valueOf(stream));
+    }
+
+    private void record(long startNanos, boolean failed) {
+        long latencyMs = (System.nanoTime() - startNanos) / 1_000_000;
+        calls.incrementAndGet();
+        totalLatencyMs.addAndGet(latencyMs);
+        maxLatencyMs.accumulateAndGet(latencyMs, Math::max);
+        if (failed) {
+            errors.incrementAndGet();
+        }
+        usageRollups.recordModelCall(model, latencyMs, failed);
+    }
+
+    // last is the final JSON object Ollama sent, or null when the stream was cut off before it
+    private void recordUsage(GenerationOptions options, JsonNode last, CharSequence text, boolean stoppedEarly) {
+        if (stoppedEarly) {
+            earlyStops.incrementAndGet();
+        }
+        if (last != null && last.has("prompt_eval_count")) {
+            measuredCalls.incrementAndGet();
+            estimatedPromptTokens.addAndGet(options.estimatedPromptTokens());
+            promptTokens.addAndGet(last.get("prompt_eval_count").asLong());
+        }
+        if (last != null && last.has("eval_count")) {
+            outputTokens.addAndGet(last.get("eval_count").asLong());
+        } else {
+            outputTokens.addAndGet(CodeChunker.estimateTokens(text.toString()));
+        }
+        if (last != null && "length".equals(last.path("done_reason").asText())) {
+            outputLimitHits.incrementAndGet();
+            logger.warn("Generation hit num_predict={} (num_ctx={})", options.numPredict(), options.numCtx());
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        long callCount = calls.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("model", model);
+        stats.put("backends", backendPool.getStats());
+        stats.put("calls", callCount);
+        stats.put("errors", errors.get());
+        stats.put("avgLatencyMs", callCount > 0 ? totalLatencyMs.get() / callCount : 0);
+        stats.put("maxLatencyMs", maxLatencyMs.get());
+
+        long measured = measuredCalls.get();
+        Map<String, Object> tokens = new LinkedHashMap<>();
+        tokens.put("estimatedPromptTokens", estimatedPromptTokens.get());
+        tokens.put("promptTokens", promptTokens.get());
+        tokens.put("promptEstimateRatio", estimatedPromptTokens.get() > 0
+                ? (double) promptTokens.get() / estimatedPromptTokens.get() : null);
+        tokens.put("avgPromptTokens", measured > 0 ? promptTokens.get() / measured : 0);
+        tokens.put("outputTokens", outputTokens.get());
+        tokens.put("earlyStops", earlyStops.get());
+        tokens.put("outputLimitHits", outputLimitHits.get());
+        stats.put("tokens", tokens);
+        return stats;
+    }
+}
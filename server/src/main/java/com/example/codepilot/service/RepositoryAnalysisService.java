@@ -0,0 +1,458 @@
+package com.example.codepilot.service;
+
+import com.example.codepilot.models.FileReview;
+import com.example.codepilot.models.RepositoryAnalysis;
+import com.example.codepilot.models.RepositoryFileEntry;
+import com.example.codepilot.models.ReviewResult;
+import com.example.codepilot.models.User;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reviews a whole GitHub repository as a two-stage pipeline: blobs are fetched on
+ * the {@code githubFetchExecutor} pool and handed to {@link ReviewService} on the
+ * {@code repositoryReviewExecutor} pool. At most {@code fetch-parallelism + review-parallelism}
+ * files of one analysis are in flight, so fetching pauses while the reviews fall behind
+ * instead of buffering the repository in memory. Files whose blob SHA is unchanged since
+ * the last analysis are served from {@link RepositoryIndex} without being fetched.
+ * Archives (a GitHub tarball or an upload) feed the same review stage straight from
+ * {@link ArchiveReader}, so the repository is never held in memory or written to disk.
+ * Each file sent to the model costs its user one credit, reserved right before the review
+ * and given back when the review fails; once the credits run out the remaining files are
+ * reported as not reviewed.
+ */
+@Service
+public class RepositoryAnalysisService {
+
+    private static final Logger logger = LoggerFactory.getLogger(RepositoryAnalysisService.class);
+
+    private static final int MAX_RULES_FILE_BYTES = 64 * 1024;
+
+    @Autowired
+    private GitHubClient gitHubClient;
+
+    @Autowired
+    private ReviewService reviewService;
+
+    @Autowired
+    private ModelAdmissionGate admissionGate;
+
+    @Autowired
+    private RepositoryIndex repositoryIndex;
+
+    @Autowired
+    private FileClassifier fileClassifier;
+
+    @Autowired
+    private CreditService creditService;
+
+    @Autowired
+    @Qualifier("githubFetchExecutor")
+    private ThreadPoolTaskExecutor fetchExecutor;
+
+    @Autowired
+    @Qualifier("repositoryReviewExecutor")
+    private ThreadPoolTaskExecutor repositoryReviewExecutor;
+
+    @Value("${app.github.fetch-parallelism:8}")
+    private int fetchParallelism;
+
+    // Files of one analysis under review at once; 0 uses half the model capacity (two prompts per file)
+    @Value("${app.github.review-parallelism:0}")
+    private int reviewParallelism;
+
+    @Value("${app.github.review-attempts:3}")
+    private int reviewAttempts;
+
+    @Value("${app.github.max-files:500}")
+    private int maxFiles;
+
+    @Value("${app.github.analysis-timeout-ms:1800000}")
+    private long analysisTimeoutMs;
+
+    // Uncompressed size at which an archive is cut off
+    @Value("${app.github.max-archive-bytes:268435456}")
+    private long maxArchiveBytes;
+
+    static final String INSUFFICIENT_CREDITS = "insufficient credits";
+
+    /**
+     * Reviews the repository at {@code repositoryUrl}. Reviews are charged to and saved for
+     * {@code user} when it is not null. A file that cannot be fetched or reviewed is reported with its error and
+     * does not fail the analysis.
+     */
+    public RepositoryAnalysis analyze(String repositoryUrl, User user) throws IOException, InterruptedException {
+        GitHubRepository repository = GitHubRepository.parse(repositoryUrl);
+        Run run = new Run(repository, user);
+        GitHubClient.Tree tree = gitHubClient.listTree(repository);
+        run.analysis.setRef(tree.ref());
+        run.analysis.setCommitSha(tree.commitSha());
+        run.analysis.setTruncated(tree.truncated());
+
+        for (GitHubClient.TreeEntry entry : tree.files()) {
+            if (FileClassifier.isRulesFile(entry.path()) && entry.size() <= MAX_RULES_FILE_BYTES) {
+                try {
+                    run.rules.add(entry.path(),
+                            new String(gitHubClient.fetchBlob(repository, entry.sha()), StandardCharsets.UTF_8));
+                } catch (IOException e) {
+                    logger.warn("Ignoring unreadable {} of {}: {}", entry.path(), repository.fullName(), e.getMessage());
+                }
+            }
+        }
+        for (GitHubClient.TreeEntry entry : tree.files()) {
+            if (run.wanted(entry.path(), entry.size(), entry.executable())) {
+                run.accept(entry.path(), entry.sha());
+            }
+        }
+        try {
+            for (FileReview file : run.changed) {
+                if (!run.acquire()) {
+                    break;
+                }
+                CompletableFuture<byte[]> content;
+                try {
+                    // Nothing is fetched for a user who cannot pay for the review anyway
+                    content = run.outOfCredits
+                            ? CompletableFuture.failedFuture(new IllegalStateException(INSUFFICIENT_CREDITS))
+                            : CompletableFuture.supplyAsync(() -> fetch(repository, file), fetchExecutor);
+                } catch (TaskRejectedException e) {
+                    content = CompletableFuture.failedFuture(e);
+                }
+                run.submit(file, content);
+            }
+        } finally {
+            run.await();
+        }
+        return run.finish(tree.truncated() ? null : tree.files().stream().map(GitHubClient.TreeEntry::path).toList());
+    }
+
+    /**
+     * Like {@link #analyze} but downloads the repository as one tarball instead of file by file,
+     * which costs a single GitHub API call however many files there are.
+     */
+    public RepositoryAnalysis analyzeTarball(String repositoryUrl, User user) throws IOException, InterruptedException {
+        GitHubRepository repository = GitHubRepository.parse(repositoryUrl);
+        Run run = new Run(repository, user);
+        run.analysis.setRef(repository.ref());
+        try (InputStream tarball = gitHubClient.openTarball(repository)) {
+            return ingest(run, tarball, ArchiveReader.Format.TAR_GZ);
+        }
+    }
+
+    /** Reviews an uploaded zip or gzipped tarball; nothing is indexed since it has no repository identity. */
+    public RepositoryAnalysis analyzeArchive(String name, InputStream archive, User user)
+            throws IOException, InterruptedException {
+        InputStream in = new BufferedInputStream(archive, 64 * 1024);
+        ArchiveReader.Format format = ArchiveReader.detect(in);
+        if (format == null) {
+            throw new IllegalArgumentException("Upload a .zip or .tar.gz archive");
+        }
+        Run run = new Run(null, user);
+        run.analysis.setRepository(name);
+        return ingest(run, in, format);
+    }
+
+    // Hands each archive entry to the review stage as soon as it is decompressed. The reader
+    // blocks while the window is full, which in turn stops the download. Ignore and attribute
+    // files apply to the entries after them; git archive order puts them before the files
+    // of their directory.
+    private RepositoryAnalysis ingest(Run run, InputStream in, ArchiveReader.Format format)
+            throws IOException, InterruptedException {
+        ArchiveReader reader = new ArchiveReader(format, maxArchiveBytes);
+        List<String> paths = new ArrayList<>();
+        boolean complete = false;
+        try {
+            reader.read(in, (path, size, content) -> {
+                paths.add(path);
+                if (FileClassifier.isRulesFile(path)) {
+                    run.rules.add(path, new String(content.readNBytes(MAX_RULES_FILE_BYTES), StandardCharsets.UTF_8));
+                }
+                // Modes are not available from zips, so any file may turn out to be a script
+                if (!run.wanted(path, size, true)) {
+                    return;
+                }
+                if (!run.acquire()) {
+                    throw new IOException("Analysis timed out after " + analysisTimeoutMs + " ms");
+                }
+                long maxFileBytes = fileClassifier.getMaxFileBytes();
+                byte[] bytes = content.readNBytes((int) Math.min(Integer.MAX_VALUE - 8, maxFileBytes + 1));
+                FileReview file = bytes.length > maxFileBytes ? null : run.accept(path, gitBlobSha(bytes));
+                if (file == null) {
+                    if (bytes.length > maxFileBytes) {
+                        run.skip(FileClassifier.SkipReason.TOO_LARGE);
+                    }
+                    run.window.release();
+                    return;
+                }
+                run.submit(file, CompletableFuture.completedFuture(bytes));
+            });
+            complete = true;
+        } catch (IOException e) {
+            // Whatever was read before the archive broke off is still reviewed
+            if (run.changed.isEmpty() && run.analysis.getReused() == 0) {
+                throw e;
+            }
+            logger.warn("Archive of {} ended early: {}", run.analysis.getRepository(), e.getMessage());
+            run.analysis.setTruncated(true);
+        } finally {
+            run.await();
+        }
+        run.analysis.setCommitSha(reader.getCommitSha());
+        return run.finish(complete ? paths : null);
+    }
+
+    /**
+     * State of one analysis. Files to review are appended to {@code changed} and handed to
+     * {@link #submit} in the same order, at most {@code window} at a time.
+     */
+    private final class Run {
+        final RepositoryAnalysis analysis = new RepositoryAnalysis();
+        final GitHubRepository repository; // null for uploaded archives
+        final User user;
+        final boolean indexing; // each user has their own index, so anonymous runs have none
+        final long start = System.nanoTime();
+        final long deadline = start + TimeUnit.MILLISECONDS.toNanos(analysisTimeoutMs);
+        final Map<String, RepositoryFileEntry> indexed;
+        final Semaphore window;
+        final List<FileReview> files = new ArrayList<>();
+        final List<FileReview> changed = new ArrayList<>();
+        final List<CompletableFuture<FileReview>> pending = new ArrayList<>();
+        final FileClassifier.Rules rules = new FileClassifier.Rules();
+        // Files rejected once their content was read, by path; written from fetch threads
+        final Map<String, FileClassifier.SkipReason> skippedByContent = new ConcurrentHashMap<>();
+        // Lowest balance seen after a charge; reservations of concurrent reviews finish in any order
+        final AtomicInteger creditsRemaining = new AtomicInteger(Integer.MAX_VALUE);
+        volatile boolean outOfCredits;
+
+        Run(GitHubRepository repository, User user) {
+            this.repository = repository;
+            this.user = user;
+            this.indexing = repository != null && user != null;
+            this.indexed = indexing ? repositoryIndex.load(user.getId(), repository) : Map.of();
+            int reviewers = reviewParallelism > 0 ? reviewParallelism : Math.max(1, admissionGate.capacity() / 2);
+            this.window = new Semaphore(fetchParallelism + reviewers);
+            if (repository != null) {
+                analysis.setRepository(repository.fullName());
+            }
+        }
+
+        // Cheap check before any content is read; size is -1 when unknown
+        boolean wanted(String path, long size, boolean mayBeScript) {
+            FileClassifier.SkipReason reason = fileClassifier.classifyPath(path, size, mayBeScript, rules);
+            if (reason != null) {
+                skip(reason);
+                return false;
+            }
+            return true;
+        }
+
+        void skip(FileClassifier.SkipReason reason) {
+            analysis.setSkipped(analysis.getSkipped() + 1);
+            analysis.getSkippedByReason().merge(reason.label(), 1, Integer::sum);
+        }
+
+        // Returns the file when it has to be reviewed, or null when it was reused or is over the limit
+        FileReview accept(String path, String sha) {
+            FileReview file = new FileReview();
+            file.setPath(path);
+            file.setSha(sha);
+            file.setLanguage(FileClassifier.languageOf(path)); // null until a script's shebang is read
+            RepositoryFileEntry previous = indexed.get(path);
+            if (previous != null && sha.equals(previous.getSha())
+                    && (file.getLanguage() == null || file.getLanguage().equals(previous.getLanguage()))) {
+                file.setLanguage(previous.getLanguage());
+                file.setReview(reviewService.toResponse(RepositoryIndex.toResult(previous)));
+                file.setReviewId(previous.getReviewId());
+                file.setReused(true);
+                analysis.setReused(analysis.getReused() + 1);
+                files.add(file);
+                return null;
+            }
+            if (changed.size() >= maxFiles) {
+                skip(FileClassifier.SkipReason.FILE_LIMIT);
+                analysis.setTruncated(true);
+                return null;
+            }
+            files.add(file);
+            changed.add(file);
+            return file;
+        }
+
+        // Waits for room in the window; false once the deadline has passed
+        boolean acquire() throws InterruptedException {
+            return window.tryAcquire(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+        }
+
+        // Takes over the permit from acquire(). The content is classified on the thread that
+        // produced it, so a skipped file never takes up a review thread.
+        void submit(FileReview file, CompletableFuture<byte[]> content) {
+            if (outOfCredits) {
+                content = CompletableFuture.failedFuture(new IllegalStateException(INSUFFICIENT_CREDITS));
+            }
+            CompletableFuture<FileReview> stage = content.thenCompose(bytes -> {
+                FileClassifier.Result result = fileClassifier.classifyContent(file.getPath(), bytes);
+                if (result.skipReason() != null) {
+                    skippedByContent.put(file.getPath(), result.skipReason());
+                    return CompletableFuture.completedFuture(file);
+                }
+                file.setLanguage(result.language());
+                String code = new String(bytes, StandardCharsets.UTF_8);
+                return CompletableFuture.supplyAsync(() -> review(this, file, code), repositoryReviewExecutor);
+            });
+            stage.whenComplete((done, error) -> window.release());
+            pending.add(stage);
+        }
+
+        void await() throws InterruptedException {
+            try {
+                for (int i = 0; i < changed.size(); i++) {
+                    FileReview file = changed.get(i);
+                    if (i >= pending.size()) {
+                        file.setError(outOfCredits ? INSUFFICIENT_CREDITS : "timed out");
+                        continue;
+                    }
+                    try {
+                        pending.get(i).get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    } catch (TimeoutException e) {
+                        file.setError("timed out");
+                    } catch (ExecutionException e) {
+                        file.setError(describe(e.getCause()));
+                    }
+                }
+            } finally {
+                // Leftover fetches are dropped; reviews already running finish on their own
+                pending.forEach(stage -> stage.cancel(false));
+            }
+        }
+
+        // allPaths lists every file of the repository, or is null when that list is incomplete
+        RepositoryAnalysis finish(List<String> allPaths) {
+            for (FileReview file : changed) {
+                FileClassifier.SkipReason reason = skippedByContent.get(file.getPath());
+                if (reason != null && file.getError() == null) {
+                    skip(reason);
+                    files.remove(file);
+                } else if (file.getError() != null) {
+                    analysis.setFailed(analysis.getFailed() + 1);
+                } else {
+                    analysis.setReviewed(analysis.getReviewed() + 1);
+                }
+            }
+            if (indexing && allPaths != null) {
+                repositoryIndex.retainOnly(user.getId(), repository, allPaths);
+            }
+            analysis.setFiles(files);
+            analysis.setOutOfCredits(outOfCredits);
+            if (creditsRemaining.get() != Integer.MAX_VALUE) {
+                analysis.setCreditsRemaining(creditsRemaining.get());
+            }
+            analysis.setDurationMs(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+            logger.info("Analyzed {}@{}: {} reviewed, {} reused, {} failed, {} skipped in {} ms",
+                    analysis.getRepository(), analysis.getRef(), analysis.getReviewed(), analysis.getReused(),
+                    analysis.getFailed(), analysis.getSkipped(), analysis.getDurationMs());
+            return analysis;
+        }
+    }
+
+    private byte[] fetch(GitHubRepository repository, FileReview file) {
+        try {
+            return gitHubClient.fetchBlob(repository, file.getSha());
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("fetch interrupted");
+        }
+    }
+
+    // The credit is taken before the first attempt and covers the retries of a shed file
+    private FileReview review(Run run, FileReview file, String code) {
+        CreditService.Reservation reservation = null;
+        if (run.user != null) {
+            reservation = run.outOfCredits ? null : creditService.reserve(run.user.getId());
+            if (reservation == null) {
+                run.outOfCredits = true;
+                throw new IllegalStateException(INSUFFICIENT_CREDITS);
+            }
+            run.creditsRemaining.accumulateAndGet(reservation.getRemaining(), Math::min);
+        }
+        try {
+            ReviewResult result = reviewService.review(run.user != null ? run.user.getId() : null, code, file.getLanguage());
+            // A shed file waits and retries on this thread, which in turn holds back the fetches
+            for (int attempt = 1; attempt < reviewAttempts && result.isFailed() && result.isOverloaded(); attempt++) {
+                try {
+                    Thread.sleep(TimeUnit.SECONDS.toMillis(result.getRetryAfterSeconds()));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new CancellationException("review interrupted");
+                }
+                result = reviewService.review(run.user != null ? run.user.getId() : null, code, file.getLanguage());
+            }
+            if (result.isFailed()) {
+                throw new IllegalStateException(result.getSuggestionsError());
+            }
+            file.setReview(reviewService.toResponse(result));
+            if (run.user != null) {
+                file.setReviewId(reviewService.save(run.user.getId(), code, file.getLanguage(), result).getId());
+            }
+            if (run.indexing) {
+                repositoryIndex.put(run.user.getId(), run.repository, file.getPath(), file.getSha(), file.getLanguage(), result,
+                        file.getReviewId());
+            }
+        } catch (RuntimeException e) {
+            if (reservation != null) {
+                reservation.release();
+            }
+            throw e;
+        }
+        if (reservation != null) {
+            reservation.settle();
+        }
+        return file;
+    }
+
+    // The SHA git itself would give the blob, so archive files match entries indexed from the API
+    static String gitBlobSha(byte[] content) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            digest.update(("blob " + content.length + "\0").getBytes(StandardCharsets.US_ASCII));
+            return HexFormat.of().formatHex(digest.digest(content));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String describe(Throwable e) {
+        while ((e instanceof CompletionException || e instanceof UncheckedIOException) && e.getCause() != null) {
+            e = e.getCause();
+        }
+        return e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+    }
+}
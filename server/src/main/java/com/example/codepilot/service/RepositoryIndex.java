@@ -0,0 +1,92 @@
+package com.example.codepilot.service;
+
+import com.example.codepilot.models.RepositoryFileEntry;
+import com.example.codepilot.models.ReviewResult;
+import com.example.codepilot.repository.RepositoryFileRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Per-user, per-repository index of reviewed files in the "repository_files" collection, keyed
+ * by path and git blob SHA. Each user has an index of their own, so a reused entry always
+ * points at a review of that user. A re-analysis only fetches and reviews files whose SHA changed;
+ * entries from another model or prompt version are treated as missing. Like
+ * {@link ReviewCache}, an index outage only costs re-reviews, never the analysis.
+ */
+@Service
+public class RepositoryIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(RepositoryIndex.class);
+
+    @Autowired
+    private RepositoryFileRepository repositoryFileRepository;
+
+    @Autowired
+    private OllamaClient ollamaClient;
+
+    // Current entries of the repository by path
+    public Map<String, RepositoryFileEntry> load(String userId, GitHubRepository repository) {
+        Map<String, RepositoryFileEntry> entries = new HashMap<>();
+        try {
+            for (RepositoryFileEntry entry : repositoryFileRepository.findByUserIdAndRepository(userId, key(repository))) {
+                if (ReviewService.PROMPT_VERSION.equals(entry.getPromptVersion())
+                        && ollamaClient.getModel().equals(entry.getModel())) {
+                    entries.put(entry.getPath(), entry);
+                }
+            }
+        } catch (Exception e) {
+            logger.warn("Repository index lookup failed for {}: {}", repository.fullName(), e.getMessage());
+        }
+        return entries;
+    }
+
+    // Only complete results are indexed; a partial one is reviewed again next time
+    public void put(String userId, GitHubRepository repository, String path, String sha, String language,
+                    ReviewResult result, String reviewId) {
+        if (!result.hasSuggestions() || !result.hasCorrectedCode()) {
+            return;
+        }
+        String repositoryKey = key(repository);
+        try {
+            repositoryFileRepository.save(new RepositoryFileEntry(userId + ":" + repositoryKey + ":" + path, userId,
+                    repositoryKey, path, sha, language, ollamaClient.getModel(), ReviewService.PROMPT_VERSION,
+                    result.getSuggestions(), result.getCorrectedCode(), reviewId, Instant.now()));
+        } catch (Exception e) {
+            logger.warn("Repository index write failed for {}:{}: {}", repository.fullName(), path, e.getMessage());
+        }
+    }
+
+    // Removes paths that are no longer in the repository; only call with a complete file list
+    public void retainOnly(String userId, GitHubRepository repository, Collection<String> paths) {
+        try {
+            long removed = repositoryFileRepository.deleteByUserIdAndRepositoryAndPathNotIn(userId, key(repository),
+                    paths);
+            if (removed > 0) {
+                logger.info("Removed {} deleted files from the index of {}", removed, repository.fullName());
+            }
+        } catch (Exception e) {
+            logger.warn("Repository index cleanup failed for {}: {}", repository.fullName(), e.getMessage());
+        }
+    }
+
+    public static ReviewResult toResult(RepositoryFileEntry entry) {
+        ReviewResult result = new ReviewResult();
+        result.setSuggestions(entry.getSuggestions());
+        result.setCorrectedCode(entry.getCorrectedCode());
+        result.setCached(true);
+        return result;
+    }
+
+    // GitHub owner and repository names are case-insensitive
+    private static String key(GitHubRepository repository) {
+        return repository.fullName().toLowerCase(Locale.ROOT);
+    }
+}
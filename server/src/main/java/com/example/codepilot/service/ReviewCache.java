@@ -0,0 +1,197 @@
+package com.example.codepilot.service;
+
+import com.example.codepilot.models.ReviewCacheEntry;
+import com.example.codepilot.models.ReviewResult;
+import com.example.codepilot.repository.ReviewCacheRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Two-tier cache of complete review results: a bounded in-memory Caffeine (W-TinyLFU)
+ * tier in front of the Mongo "review_cache" collection, which survives restarts.
+ * Entries are keyed by a hash of the normalized code, language, model and
+ * {@link ReviewService#PROMPT_VERSION}, so changing the prompts invalidates them.
+ */
+@Service
+public class ReviewCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReviewCache.class);
+
+    @Autowired
+    private ReviewCacheRepository reviewCacheRepository;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private OllamaClient ollamaClient;
+
+    @Value("${app.review-cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.review-cache.max-entries:10000}")
+    private long maxEntries;
+
+    @Value("${app.review-cache.memory-ttl-minutes:60}")
+    private long memoryTtlMinutes;
+
+    @Value("${app.review-cache.ttl-hours:168}")
+    private long ttlHours;
+
+    private Cache<String, ReviewCacheEntry> memory;
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong persistentHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    @PostConstruct
+    void init() {
+        memory = Caffeine.newBuilder()
+                .maximumSize(maxEntries)
+                .expireAfterWrite(Duration.ofMinutes(memoryTtlMinutes))
+                .build();
+    }
+
+    // Entries written by an older prompt template can never be hit again; clear them out
+    @EventListener(ApplicationReadyEvent.class)
+    public void dropStalePromptVersions() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            long removed = reviewCacheRepository.deleteByPromptVersionNot(ReviewService.PROMPT_VERSION);
+            if (removed > 0) {
+                logger.info("Removed {} review cache entries from older prompt versions", removed);
+            }
+        } catch (Exception e) {
+            logger.warn("Could not clean up stale review cache entries: {}", e.getMessage());
+        }
+    }
+
+    public Optional<ReviewResult> get(String code, String language) {
+        if (!enabled) {
+            return Optional.empty();
+        }
+        String key = key(code, language);
+        ReviewCacheEntry entry = memory.getIfPresent(key);
+        if (entry != null) {
+            memoryHits.incrementAndGet();
+            return Optional.of(toResult(entry));
+        }
+        try {
+            entry = reviewCacheRepository.findById(key)
+                    .filter(e -> e.getExpiresAt() == null || e.getExpiresAt().isAfter(Instant.now()))
+                    .orElse(null);
+        } catch (Exception e) {
+            // A cache outage must never fail the review itself
+            errors.incrementAndGet();
+            logger.warn("Review cache lookup failed: {}", e.getMessage());
+        }
+        if (entry == null) {
+            misses.incrementAndGet();
+            return Optional.empty();
+        }
+        persistentHits.incrementAndGet();
+        memory.put(key, entry);
+        return Optional.of(toResult(entry));
+    }
+
+    // Only complete results are cached; a partial one should be retried next time
+    public void put(String code, String language, ReviewResult result) {
+        if (!enabled || !result.hasSuggestions() || !result.hasCorrectedCode()) {
+            return;
+        }
+        Instant now = Instant.now();
+        ReviewCacheEntry entry = new ReviewCacheEntry(key(code, language), normalizeLanguage(language),
+                ollamaClient.getModel(), ReviewService.PROMPT_VERSION, result.getSuggestions(),
+                result.getCorrectedCode(), now, now.plus(Duration.ofHours(ttlHours)));
+        memory.put(entry.getKey(), entry);
+        try {
+            reviewCacheRepository.save(entry);
+        } catch (Exception e) {
+            errors.incrementAndGet();
+            logger.warn("Review cache write failed: {}", e.getMessage());
+        }
+    }
+
+    public long invalidateAll() {
+        memory.invalidateAll();
+        // One delete, so entries written concurrently are either counted and removed or kept
+        return mongoTemplate.remove(new Query(), ReviewCacheEntry.class).getDeletedCount();
+    }
+
+    public Map<String, Object> getStats() {
+        long hits = memoryHits.get() + persistentHits.get();
+        long lookups = hits + misses.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("promptVersion", ReviewService.PROMPT_VERSION);
+        stats.put("memoryEntries", memory.estimatedSize());
+        stats.put("memoryHits", memoryHits.get());
+        stats.put("persistentHits", persistentHits.get());
+        stats.put("misses", misses.get());
+        stats.put("errors", errors.get());
+        stats.put("hitRate", lookups > 0 ? (double) hits / lookups : 0.0);
+        return stats;
+    }
+
+    String key(String code, String language) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String part : new String[] { normalizeCode(code), normalizeLanguage(language),
+                    ollamaClient.getModel(), ReviewService.PROMPT_VERSION }) {
+                digest.update(part.getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Line endings, trailing whitespace and surrounding blank lines do not change the review
+    static String normalizeCode(String code) {
+        if (code == null) {
+            return "";
+        }
+        StringBuilder normalized = new StringBuilder(code.length());
+        for (String line : code.replace("\r\n", "\n").replace('\r', '\n').split("\n")) {
+            normalized.append(line.stripTrailing()).append('\n');
+        }
+        return normalized.toString().strip();
+    }
+
+    private static String normalizeLanguage(String language) {
+        return language == null ? "" : language.trim().toLowerCase();
+    }
+
+    private static ReviewResult toResult(ReviewCacheEntry entry) {
+        ReviewResult result = new ReviewResult();
+        result.setSuggestions(entry.getSuggestions());
+        result.setCorrectedCode(entry.getCorrectedCode());
+        result.setCached(true);
+        return result;
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.codepilot.service;
+
+import com.example.codepilot.models.Review;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.mapping.event.AbstractMongoEventListener;
+import org.springframework.data.mongodb.core.mapping.event.AfterConvertEvent;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.data.mongodb.core.mapping.event.BeforeConvertEvent;
+import org.springframework.data.mongodb.core.mapping.event.BeforeSaveEvent;
+import org.springframework.stereotype.Component;
+
+// Keeps the derived review indexes in step with every saved Review and moves its bodies to the BlobStore
+@Component
+public class ReviewEventListener extends AbstractMongoEventListener<Review> {
+
+    @Autowired
+    private SimilarityIndex similarityIndex;
+
+    @Autowired
+    private BlobStore blobStore;
+
+    @Override
+    public void onBeforeConvert(BeforeConvertEvent<Review> event) {
+        Review review = event.getSource();
+        if ((review.getSimHash() == null || review.getShingleSketch() == null) && review.getCode() != null) {
+            CodeFingerprint fingerprint = CodeFingerprint.of(review.getCode(), review.getLanguage());
+            review.setSimHash(fingerprint.simHash());
+            review.setShingleSketch(CodeFingerprint.encodeSketch(fingerprint.sketch()));
+        }
+        if (review.getTerms() == null && review.getCode() != null) {
+            review.setTerms(SearchTerms.of(review.getCode(), review.getSuggestions(), review.getCorrectedCode()));
+        }
+        if (review.getCodeRef() == null) review.setCodeRef(blobStore.put(review.getCode()));
+        if (review.getSuggestionsRef() == null) review.setSuggestionsRef(blobStore.put(review.getSuggestions()));
+        if (review.getCorrectedCodeRef() == null) review.setCorrectedCodeRef(blobStore.put(review.getCorrectedCode()));
+    }
+
+    @Override
+    public void onBeforeSave(BeforeSaveEvent<Review> event) {
+        // The entity keeps its bodies for the caller; only the stored document drops them
+        Document document = event.getDocument();
+        if (document != null) {
+            document.remove("review");
+            if (document.get("codeRef") != null) document.remove("code");
+            if (document.get("suggestionsRef") != null) document.remove("suggestions");
+            if (document.get("correctedCodeRef") != null) document.remove("correctedCode");
+        }
+    }
+
+    @Override
+    public void onAfterConvert(AfterConvertEvent<Review> event) {
+        Review review = event.getSource();
+        if (review.getCode() == null) review.setCode(blobStore.get(review.getCodeRef()));
+        if (review.getSuggestions() == null) review.setSuggestions(blobStore.get(review.getSuggestionsRef()));
+        if (review.getCorrectedCode() == null) review.setCorrectedCode(blobStore.get(review.getCorrectedCodeRef()));
+    }
+
+    @Override
+    public void onAfterSave(AfterSaveEvent<Review> event) {
+        Review review = event.getSource();
+        if (review.getSuggestions() != null) {
+            similarityIndex.add(review);
+        }
+    }
+}
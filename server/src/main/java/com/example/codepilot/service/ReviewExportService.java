@@ -0,0 +1,134 @@
+package com.example.codepilot.service;
+
+import com.example.codepilot.models.Review;
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes reviews as newline-delimited JSON straight from a Mongo cursor. Only the stored fields
+ * are read, not Review entities, and the bodies of each cursor batch are fetched from the
+ * BlobStore with one query, so only one batch is held at a time and memory use does not grow
+ * with the export.
+ */
+@Service
+public class ReviewExportService {
+
+    private static final JsonFactory JSON = new JsonFactory();
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private BlobStore blobStore;
+
+    @Value("${app.reviews.export-batch-size:500}")
+    private int batchSize;
+
+    // The stored review document without its derived fields; reading it fires no Review listeners
+    record Row(String id, String userId, String language, LocalDateTime timestamp,
+               String codeRef, String suggestionsRef, String correctedCodeRef,
+               String code, String suggestions, String correctedCode) {
+    }
+
+    /** Filter for the export; every argument may be null. {@code to} is exclusive. */
+    public static Criteria filter(String userId, String language, LocalDateTime from, LocalDateTime to) {
+        Criteria criteria = new Criteria();
+        if (userId != null) criteria.and("userId").is(userId);
+        if (language != null) criteria.and("language").is(language);
+        if (from != null || to != null) {
+            Criteria timestamp = criteria.and("timestamp");
+            if (from != null) timestamp.gte(from);
+            if (to != null) timestamp.lt(to);
+        }
+        return criteria;
+    }
+
+    /** Streams every review matching {@code filter}, newest first, and returns how many were written. */
+    public long export(Criteria filter, OutputStream out, boolean gzip) throws IOException {
+        Query query = new Query(filter).with(Sort.by(Sort.Direction.DESC, "timestamp", "_id"))
+                .cursorBatchSize(batchSize);
+        query.fields().include("userId", "language", "timestamp", "codeRef", "suggestionsRef", "correctedCodeRef",
+                "code", "suggestions", "correctedCode");
+        // The caller owns the response stream; closing the generator must only finish the gzip trailer
+        OutputStream target = new FilterOutputStream(out) {
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+            }
+
+            @Override
+            public void close() throws IOException {
+                flush();
+            }
+        };
+        if (gzip) {
+            target = new GZIPOutputStream(target, 64 * 1024);
+        }
+
+        long written = 0;
+        List<Row> batch = new ArrayList<>(batchSize);
+        try (Stream<Row> rows = mongoTemplate.stream(query, Row.class, mongoTemplate.getCollectionName(Review.class));
+             JsonGenerator json = JSON.createGenerator(target, JsonEncoding.UTF8)) {
+            json.setRootValueSeparator(null);
+            for (Iterator<Row> it = rows.iterator(); it.hasNext(); ) {
+                batch.add(it.next());
+                if (batch.size() == batchSize || !it.hasNext()) {
+                    written += write(json, batch);
+                    batch.clear();
+                }
+            }
+        }
+        return written;
+    }
+
+    private int write(JsonGenerator json, List<Row> batch) throws IOException {
+        Set<String> refs = new HashSet<>();
+        for (Row row : batch) {
+            if (row.code() == null) refs.add(row.codeRef());
+            if (row.suggestions() == null) refs.add(row.suggestionsRef());
+            if (row.correctedCode() == null) refs.add(row.correctedCodeRef());
+        }
+        refs.remove(null);
+        Map<String, String> bodies = refs.isEmpty() ? Map.of() : blobStore.getAll(refs);
+
+        for (Row row : batch) {
+            json.writeStartObject();
+            json.writeStringField("id", row.id());
+            json.writeStringField("userId", row.userId());
+            json.writeStringField("language", row.language());
+            json.writeStringField("timestamp", row.timestamp() != null ? row.timestamp().toString() : null);
+            json.writeStringField("code", body(row.code(), row.codeRef(), bodies));
+            json.writeStringField("suggestions", body(row.suggestions(), row.suggestionsRef(), bodies));
+            json.writeStringField("correctedCode", body(row.correctedCode(), row.correctedCodeRef(), bodies));
+            json.writeEndObject();
+            json.writeRaw('\n');
+        }
+        return batch.size();
+    }
+
+    // Reviews saved before the BlobStore keep their bodies inline
+    private static String body(String inline, String ref, Map<String, String> bodies) {
+        return inline != null || ref == null ? inline : bodies.get(ref);
+    }
+}
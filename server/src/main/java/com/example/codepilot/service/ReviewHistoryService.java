@@ -0,0 +1,87 @@
+package com.example.codepilot.service;
+
+import com.example.codepilot.models.Review;
+import com.example.codepilot.models.ReviewSummary;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.List;
+
+/**
+ * Pages through reviews newest first by keyset on (timestamp, id). A page costs one indexed
+ * range scan of {@code size + 1} documents however deep the client has paged, and only the
+ * summary fields are read.
+ */
+@Service
+public class ReviewHistoryService {
+
+    // nextCursor is null on the last page
+    public record Page(List<ReviewSummary> reviews, String nextCursor) {
+    }
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${app.reviews.page-size:20}")
+    private int defaultPageSize;
+
+    @Value("${app.reviews.max-page-size:100}")
+    private int maxPageSize;
+
+    /**
+     * Reviews matching {@code filter}, starting after {@code cursor} (null for the first page).
+     * Throws IllegalArgumentException for a cursor that was not returned by this method.
+     */
+    public Page page(Criteria filter, String cursor, Integer size) {
+        int limit = size == null ? defaultPageSize : Math.max(1, Math.min(size, maxPageSize));
+        Criteria criteria = filter;
+        if (cursor != null && !cursor.isBlank()) {
+            Position after = decode(cursor);
+            criteria = new Criteria().andOperator(filter, new Criteria().orOperator(
+                    Criteria.where("timestamp").lt(after.timestamp()),
+                    Criteria.where("timestamp").is(after.timestamp()).and("_id").lt(after.id())));
+        }
+        Query query = new Query(criteria);
+        query.with(Sort.by(Sort.Direction.DESC, "timestamp", "_id")).limit(limit + 1);
+        query.fields().include("language", "timestamp");
+
+        List<ReviewSummary> reviews = mongoTemplate.find(query, ReviewSummary.class,
+                mongoTemplate.getCollectionName(Review.class));
+        if (reviews.size() <= limit) {
+            return new Page(reviews, null);
+        }
+        ReviewSummary last = reviews.get(limit - 1);
+        return new Page(reviews.subList(0, limit), encode(last));
+    }
+
+    private record Position(LocalDateTime timestamp, Object id) {
+    }
+
+    private static String encode(ReviewSummary review) {
+        String position = review.getTimestamp() + "|" + review.getId();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static Position decode(String cursor) {
+        try {
+            String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int separator = position.indexOf('|');
+            String id = position.substring(separator + 1);
+            // Ids are stored as ObjectIds, which compare differently from their hex strings
+            Object key = ObjectId.isValid(id) ? new ObjectId(id) : id;
+            return new Position(LocalDateTime.parse(position.substring(0, separator)), key);
+        } catch (IllegalArgumentException | StringIndexOutOfBoundsException | DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+    }
+}
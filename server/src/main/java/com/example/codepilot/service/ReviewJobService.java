@@ -0,0 +1,259 @@
+package com.example.codepilot.service;
+
+import com.example.codepilot.models.Review;
+import com.example.codepilot.models.ReviewJob;
+import com.example.codepilot.models.ReviewResult;
+import com.example.codepilot.models.User;
+import com.example.codepilot.repository.ReviewJobRepository;
+import com.mongodb.client.model.IndexOptions;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+import java.time.Instant;
+import java.util.Map;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Queue of asynchronous review jobs persisted in the "review_jobs" collection.
+ * Workers claim jobs atomically with findAndModify, so several server instances can
+ * share the queue; a job whose worker died is reclaimed once its lease expires.
+ * The credit is reserved at submission and settled when the job finishes or fails.
+ * Finished jobs are deleted {@code app.review-jobs.retention-hours} after they end.
+ */
+@Service
+public class ReviewJobService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReviewJobService.class);
+
+    static final String FINISHED_TTL_INDEX = "finished_ttl";
+
+    @Autowired
+    private ReviewJobRepository reviewJobRepository;
+
+    @Autowired
+    private UsageRollups usageRollups;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private ReviewService reviewService;
+
+    @Autowired
+    private CreditService creditService;
+
+    @Value("${app.review-jobs.workers:2}")
+    private int workerCount;
+
+    @Value("${app.review-jobs.poll-interval-ms:1000}")
+    private long pollIntervalMs;
+
+    @Value("${app.review-jobs.lease-ms:600000}")
+    private long leaseMs;
+
+    @Value("${app.review-jobs.max-attempts:3}")
+    private int maxAttempts;
+
+    @Value("${app.review-jobs.retention-hours:168}")
+    private long retentionHours;
+
+    private final String instanceId = UUID.randomUUID().toString().substring(0, 8);
+    private final Object wakeUp = new Object();
+    private volatile boolean running;
+    private ExecutorService workers;
+
+    // Finished jobs are only polled for a while; queued and running ones have no finishedAt,
+    // so the TTL index never removes them
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureIndex() {
+        try {
+            mongoTemplate.getCollection(mongoTemplate.getCollectionName(ReviewJob.class)).createIndex(
+                    new Document("finishedAt", 1),
+                    new IndexOptions().name(FINISHED_TTL_INDEX).expireAfter(retentionHours, TimeUnit.HOURS));
+        } catch (Exception e) {
+            logger.warn("Could not create the review job TTL index: {}", e.getMessage());
+        }
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void startWorkers() {
+        running = true;
+        AtomicInteger index = new AtomicInteger();
+        workers = Executors.newFixedThreadPool(workerCount, runnable -> {
+            Thread thread = new Thread(runnable, "review-job-" + index.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < workerCount; i++) {
+            String workerId = instanceId + "-" + i;
+            workers.submit(() -> workLoop(workerId));
+        }
+    }
+
+    @PreDestroy
+    public void stopWorkers() {
+        running = false;
+        if (workers != null) {
+            workers.shutdownNow();
+        }
+    }
+
+    // Null when the user has no credit left
+    public ReviewJob submit(User user, String code, String language) {
+        // Reserve the credit up front; it is refunded if the job ends up failing
+        CreditService.Reservation reservation = creditService.reserve(user.getId());
+        if (reservation == null) {
+            return null;
+        }
+
+        ReviewJob job = new ReviewJob(user.getId(), language, code);
+        job.setCreditReserved(true);
+        try {
+            job = reviewJobRepository.save(job);
+        } catch (RuntimeException e) {
+            reservation.release();
+            throw e;
+        }
+        // From here on the job document tracks the reservation
+        reservation.settle();
+        synchronized (wakeUp) {
+            wakeUp.notifyAll();
+        }
+        return job;
+    }
+
+    public Optional<ReviewJob> find(String jobId) {
+        return reviewJobRepository.findById(jobId);
+    }
+
+    // 1-based position among queued jobs, or 0 once the job has been picked up
+    public long queuePosition(ReviewJob job) {
+        if (!ReviewJob.QUEUED.equals(job.getStatus())) {
+            return 0;
+        }
+        return reviewJobRepository.countByStatusAndCreatedAtBefore(ReviewJob.QUEUED, job.getCreatedAt()) + 1;
+    }
+
+    private void workLoop(String workerId) {
+        while (running) {
+            try {
+                ReviewJob job = claim(workerId);
+                if (job == null) {
+                    synchronized (wakeUp) {
+                        wakeUp.wait(pollIntervalMs);
+                    }
+                    continue;
+                }
+                process(job, workerId);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                logger.error("Review job worker {} failed", workerId, e);
+                sleepQuietly(pollIntervalMs);
+            }
+        }
+    }
+
+    private ReviewJob claim(String workerId) {
+        Instant now = Instant.now();
+        Query query = new Query(new Criteria().orOperator(
+                Criteria.where("status").is(ReviewJob.QUEUED),
+                Criteria.where("status").is(ReviewJob.RUNNING).and("leaseExpiresAt").lt(now)))
+                .with(Sort.by(Sort.Direction.ASC, "createdAt"));
+        Update update = new Update()
+                .set("status", ReviewJob.RUNNING)
+                .set("workerId", workerId)
+                .set("startedAt", now)
+                .set("leaseExpiresAt", now.plusMillis(leaseMs))
+                .inc("attempts", 1);
+        return mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), ReviewJob.class);
+    }
+
+    private void process(ReviewJob job, String workerId) {
+        if (job.getAttempts() > maxAttempts) {
+            fail(job, workerId, "Gave up after " + maxAttempts + " attempts");
+            return;
+        }
+
+        ReviewResult reviewResult = reviewService.review(job.getUserId(), job.getCode(), job.getLanguage());
+        if (reviewResult.isFailed()) {
+            if (reviewResult.isOverloaded()) {
+                // Shed by the admission gate: put the job back instead of burning an attempt
+                update(job, workerId, new Update().set("status", ReviewJob.QUEUED).inc("attempts", -1));
+                sleepQuietly(reviewResult.getRetryAfterSeconds() * 1000);
+                return;
+            }
+            fail(job, workerId, "Failed to process review: " + reviewResult.getSuggestionsError());
+            return;
+        }
+
+        Review savedReview = reviewService.save(job.getUserId(), job.getCode(), job.getLanguage(), reviewResult);
+        usageRollups.recordReview(job.getLanguage(), reviewResult.isCached() || reviewResult.getSimilarReviewId() != null,
+                reviewResult.isPartial());
+        Map<String, Object> response = reviewService.toResponse(reviewResult);
+        response.put("reviewId", savedReview.getId());
+        update(job, workerId, new Update()
+                .set("status", ReviewJob.DONE)
+                .set("reviewId", savedReview.getId())
+                .set("result", response)
+                .set("finishedAt", Instant.now())
+                .set("creditSettled", true));
+    }
+
+    private void fail(ReviewJob job, String workerId, String error) {
+        if (!update(job, workerId, new Update()
+                .set("status", ReviewJob.FAILED)
+                .set("error", error)
+                .set("finishedAt", Instant.now()))) {
+            return;
+        }
+        // Settle the reservation exactly once, even if two workers race on a reclaimed job
+        ReviewJob settled = mongoTemplate.findAndModify(
+                new Query(Criteria.where("_id").is(job.getId())
+                        .and("creditReserved").is(true).and("creditSettled").is(false)),
+                new Update().set("creditSettled", true),
+                ReviewJob.class);
+        if (settled != null) {
+            creditService.refund(job.getUserId());
+        }
+    }
+
+    // Applies the update only while this worker still owns the job
+    private boolean update(ReviewJob job, String workerId, Update update) {
+        Query owned = new Query(Criteria.where("_id").is(job.getId())
+                .and("status").is(ReviewJob.RUNNING)
+                .and("workerId").is(workerId));
+        boolean applied = mongoTemplate.updateFirst(owned, update, ReviewJob.class).getModifiedCount() > 0;
+        if (!applied) {
+            logger.warn("Review job {} was reclaimed before worker {} finished it", job.getId(), workerId);
+        }
+        return applied;
+    }
+
+    private static void sleepQuietly(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
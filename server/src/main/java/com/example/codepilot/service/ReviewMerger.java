@@ -0,0 +1,69 @@
+package com.example.codepilot.service;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Combines the raw model output of the chunks of one file back into a single review.
+ * Suggestions are grouped under the line range they refer to, with points already
+ * made for an earlier chunk dropped; corrected code is concatenated in order, with
+ * import-style lines the model repeated for every chunk kept only once.
+ */
+public final class ReviewMerger {
+
+    private static final Pattern LIST_MARKER = Pattern.compile("^\\s*(?:\\d+[.)]|[-*+])\\s*");
+    private static final Pattern NON_WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+    private static final Pattern PREAMBLE = Pattern.compile(
+            "^\\s*(?:import\\s|package\\s|#include\\s|using\\s+[\\w.]+\\s*;|from\\s+\\S+\\s+import\\s|require\\(|use\\s)");
+
+    private ReviewMerger() {
+    }
+
+    // suggestions.get(i) is the raw output for chunks.get(i), or null if that chunk failed
+    public static String mergeSuggestions(List<CodeChunker.Chunk> chunks, List<String> suggestions) {
+        StringBuilder merged = new StringBuilder();
+        Set<String> seen = new HashSet<>();
+        for (int i = 0; i < chunks.size(); i++) {
+            String text = suggestions.get(i);
+            if (text == null || text.isBlank()) {
+                continue;
+            }
+            CodeChunker.Chunk chunk = chunks.get(i);
+            StringBuilder section = new StringBuilder();
+            for (String line : text.split("\n")) {
+                String key = NON_WORD.matcher(LIST_MARKER.matcher(line).replaceFirst("").toLowerCase(Locale.ROOT))
+                        .replaceAll(" ").trim();
+                boolean header = line.trim().endsWith(":") || line.trim().endsWith(":-");
+                // Short lines (braces, single words) and section headers are never treated as repeats
+                if (!header && key.length() >= 12 && !seen.add(key)) {
+                    continue;
+                }
+                section.append(line).append('\n');
+            }
+            if (!section.toString().isBlank()) {
+                merged.append("Lines ").append(chunk.startLine()).append('-').append(chunk.endLine()).append(":\n")
+                        .append(section).append('\n');
+            }
+        }
+        return merged.toString().trim();
+    }
+
+    // Raw corrected-code outputs in chunk order; none may be null
+    public static String mergeCorrectedCode(List<String> correctedCode) {
+        StringBuilder merged = new StringBuilder();
+        Set<String> preamble = new HashSet<>();
+        for (String text : correctedCode) {
+            String code = ReviewPostProcessor.extractCleanCode(text.trim());
+            for (String line : code.split("\n", -1)) {
+                if (PREAMBLE.matcher(line).find() && !preamble.add(line.trim())) {
+                    continue;
+                }
+                merged.append(line).append('\n');
+            }
+        }
+        return merged.toString().trim();
+    }
+}
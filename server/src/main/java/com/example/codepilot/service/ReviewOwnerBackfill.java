@@ -0,0 +1,99 @@
+package com.example.codepilot.service;
+
+import com.example.codepilot.models.Review;
+import com.example.codepilot.models.ReviewJob;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One-off migration that gives reviews saved before they carried an owner a userId. The owner
+ * is only known for reviews produced by a review job; every other old review gets an explicit
+ * null, which marks it as migrated. Runs in batches in the background after startup and does
+ * nothing once no review is left without the field.
+ */
+@Component
+public class ReviewOwnerBackfill {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReviewOwnerBackfill.class);
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${app.migrations.review-owner-backfill.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.migrations.batch-size:500}")
+    private int batchSize;
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        Thread thread = new Thread(this::run, "review-owner-backfill");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    // Number of reviews migrated
+    long run() {
+        long migrated = 0;
+        try {
+            List<Document> batch;
+            int updated;
+            do {
+                Query pending = new Query(Criteria.where("userId").exists(false))
+                        .with(Sort.by("_id")).limit(batchSize);
+                pending.fields().include("_id");
+                batch = mongoTemplate.find(pending, Document.class, mongoTemplate.getCollectionName(Review.class));
+                if (batch.isEmpty()) {
+                    break;
+                }
+                updated = migrate(batch.stream().map(document -> document.get("_id").toString()).toList());
+                migrated += updated;
+                // A batch nothing could be written to would otherwise be read again forever
+            } while (batch.size() == batchSize && updated > 0);
+        } catch (Exception e) {
+            // Picks up where it stopped on the next start
+            logger.warn("Review owner backfill stopped after {} reviews: {}", migrated, e.getMessage());
+            return migrated;
+        }
+        if (migrated > 0) {
+            logger.info("Review owner backfill set the owner field of {} reviews", migrated);
+        }
+        return migrated;
+    }
+
+    private int migrate(List<String> reviewIds) {
+        Query jobs = new Query(Criteria.where("reviewId").in(reviewIds));
+        jobs.fields().include("reviewId", "userId");
+        Map<String, String> owners = new HashMap<>();
+        for (ReviewJob job : mongoTemplate.find(jobs, ReviewJob.class)) {
+            owners.put(job.getReviewId(), job.getUserId());
+        }
+
+        BulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, Review.class);
+        for (String reviewId : reviewIds) {
+            // Guarded so an owner written meanwhile by a newer instance is never overwritten
+            bulk.updateOne(new Query(Criteria.where("_id").is(reviewId).and("userId").exists(false)),
+                    new Update().set("userId", owners.get(reviewId)));
+        }
+        return bulk.execute().getModifiedCount();
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.codepilot.service;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+// Turns raw model output into what the review endpoints return
+public final class ReviewPostProcessor {
+
+    // Compiled once; String.replaceAll compiled each of these on every call
+    private static final Pattern FENCE_OPEN = Pattern.compile("```[a-zA-Z]*\\n");
+    private static final Pattern FENCE = Pattern.compile("```");
+    private static final Pattern PAREN_NUMBER = Pattern.compile("(?m)^(\\d+)\\)");
+    private static final Pattern DOT_NUMBER = Pattern.compile("(?m)^(\\d+)\\.\\s*");
+    private static final Pattern BULLET = Pattern.compile("(?m)^[\\s*\\-+]\\s*");
+    private static final Pattern EMPTY_LINES = Pattern.compile("(?m)^\\s*$[\r\n]+");
+    private static final Pattern CODE_KEYWORD = Pattern.compile("\\b(?:public|class|void|static)\\b");
+    private static final Pattern BRACED = Pattern.compile("\\{[^}]*\\}");
+    private static final Pattern CODE_BLOCK = Pattern.compile("(?s)```(?:\\w+)?\\s*\\n(.*?)\\n```");
+
+    private ReviewPostProcessor() {
+    }
+
+    public static String cleanSuggestions(String suggestions) {
+        if (suggestions == null || suggestions.isBlank())
+            return "";
+
+        // First remove all code blocks from suggestions
+        suggestions = FENCE.matcher(FENCE_OPEN.matcher(suggestions).replaceAll("")).replaceAll("");
+
+        // Normalize line endings
+        suggestions = suggestions.replace("\r\n", "\n").trim();
+
+        // Fix numbering format
+        suggestions = DOT_NUMBER.matcher(PAREN_NUMBER.matcher(suggestions).replaceAll("$1.")).replaceAll("$1. ");
+
+        // Remove bullet points and other special chars at line start
+        suggestions = BULLET.matcher(suggestions).replaceAll("");
+
+        // Remove extra empty lines
+        suggestions = EMPTY_LINES.matcher(suggestions).replaceAll("");
+
+        // Remove any remaining code fragments
+        suggestions = BRACED.matcher(CODE_KEYWORD.matcher(suggestions).replaceAll("")).replaceAll("");
+
+        return suggestions.trim();
+    }
+
+    public static String extractCleanCode(String response) {
+        // Code between triple backticks, with optional language label
+        Matcher matcher = CODE_BLOCK.matcher(response);
+
+        if (matcher.find()) {
+            return matcher.group(1).trim(); // return only the inner code
+        }
+
+        // If no code block, return as-is (maybe fallback)
+        return response.trim();
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.codepilot.service;
+
+import com.example.codepilot.models.Review;
+import com.mongodb.client.model.IndexOptions;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.TextCriteria;
+import org.springframework.data.mongodb.core.query.TextQuery;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Ranked full-text search over a user's reviews. The text index is prefixed with userId, so a
+ * search only scans the index entries of one user however large the collection grows. New
+ * reviews are matched on their {@link SearchTerms}; reviews that still store their bodies
+ * inline are matched on those.
+ */
+@Service
+public class ReviewSearchService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReviewSearchService.class);
+
+    static final String INDEX_NAME = "user_text";
+
+    public record Hit(String id, String language, LocalDateTime timestamp, double score) {
+    }
+
+    // hasMore is false on the last page
+    public record Page(List<Hit> reviews, int page, boolean hasMore) {
+    }
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${app.search.page-size:20}")
+    private int defaultPageSize;
+
+    @Value("${app.search.max-page-size:100}")
+    private int maxPageSize;
+
+    // Deepest result served; ranking has to score every match up to here
+    @Value("${app.search.max-results:1000}")
+    private int maxResults;
+
+    // The index options (no stemming, language override) cannot be expressed with mapping annotations
+    @EventListener(ApplicationReadyEvent.class)
+    public void ensureIndex() {
+        try {
+            mongoTemplate.getCollection(mongoTemplate.getCollectionName(Review.class)).createIndex(
+                    new Document("userId", 1).append("terms", "text").append("code", "text").append("review", "text"),
+                    new IndexOptions().name(INDEX_NAME)
+                            .defaultLanguage("none")
+                            // Review.language holds the programming language, not a text search language
+                            .languageOverride("textLanguage"));
+        } catch (Exception e) {
+            logger.warn("Could not create the review text index: {}", e.getMessage());
+        }
+    }
+
+    /** Reviews of {@code userId} matching any word of {@code text}, best match first. */
+    public Page search(String userId, String text, String language, Integer page, Integer size) {
+        int limit = size == null ? defaultPageSize : Math.max(1, Math.min(size, maxPageSize));
+        int number = page == null ? 0 : Math.max(0, page);
+        long skip = (long) number * limit;
+        if (skip + limit > maxResults) {
+            throw new IllegalArgumentException("Only the first " + maxResults + " results can be paged through");
+        }
+
+        TextQuery query = TextQuery.queryText(TextCriteria.forDefaultLanguage().matching(text))
+                .sortByScore()
+                .includeScore("score");
+        query.addCriteria(Criteria.where("userId").is(userId));
+        if (language != null) {
+            query.addCriteria(Criteria.where("language").is(language));
+        }
+        query.fields().include("language", "timestamp");
+        query.skip(skip).limit(limit + 1);
+
+        List<Hit> hits = mongoTemplate.find(query, Hit.class, mongoTemplate.getCollectionName(Review.class));
+        if (hits.size() <= limit) {
+            return new Page(hits, number, false);
+        }
+        return new Page(hits.subList(0, limit), number, true);
+    }
+}
@@ -0,0 +1,438 @@
+package com.example.codepilot.service;
+
+import com.example.codepilot.models.Review;
+import com.example.codepilot.models.ReviewResult;
+import com.example.codepilot.repository.ReviewRepository;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiConsumer;
+
+/**
+ * Runs the suggestions and corrected-code prompts of a review concurrently.
+ * Each stage has its own timeout; a stage that fails or times out does not
+ * discard the output of the other one. Code larger than {@code chunk-tokens}
+ * is split by {@link CodeChunker}, its chunks are reviewed in parallel and
+ * the outputs merged by {@link ReviewMerger}.
+ */
+@Service
+public class ReviewService {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReviewService.class);
+
+    public static final String STAGE_SUGGESTIONS = "suggestions";
+    public static final String STAGE_CORRECTED_CODE = "correctedCode";
+
+    // Bump whenever suggestionsPrompt or correctedCodePrompt change so cached reviews are invalidated
+    public static final String PROMPT_VERSION = "2";
+
+    @Autowired
+    private OllamaClient ollamaClient;
+
+    @Autowired
+    private ReviewRepository reviewRepository;
+
+    @Autowired
+    private ReviewCache reviewCache;
+
+    @Autowired
+    private SimilarityIndex similarityIndex;
+
+    @Autowired
+    private ModelAdmissionGate admissionGate;
+
+    @Autowired
+    private GenerationBudgeter budgeter;
+
+    @Autowired
+    private ObservationRegistry observationRegistry;
+
+    @Autowired
+    @Qualifier("reviewExecutor")
+    private ThreadPoolTaskExecutor reviewExecutor;
+
+    @Autowired
+    @Qualifier("reviewCoordinatorExecutor")
+    private ThreadPoolTaskExecutor reviewCoordinatorExecutor;
+
+    @Value("${app.review.suggestions-timeout-ms:120000}")
+    private long suggestionsTimeoutMs;
+
+    @Value("${app.review.corrected-code-timeout-ms:120000}")
+    private long correctedCodeTimeoutMs;
+
+    // Largest piece of code sent in one prompt; the output of the corrected-code
+    // stage is about as long as its input, so both must fit app.ollama.max-ctx
+    @Value("${app.review.chunk-tokens:800}")
+    private int chunkTokens;
+
+    // Chunks of one review in flight at once; 0 uses half the model capacity (two prompts per chunk)
+    @Value("${app.review.chunk-parallelism:0}")
+    private int chunkParallelism;
+
+    /** Reviews {@code code}; an earlier near-duplicate review of {@code userId} may be reused. */
+    public ReviewResult review(String userId, String code, String language) {
+        Optional<ReviewResult> cached = reviewCache.get(code, language);
+        if (cached.isPresent()) {
+            return cached.get();
+        }
+        Optional<SimilarityIndex.Match> similar = findSimilar(userId, code, language);
+        if (similar.isPresent()) {
+            return reuse(similar.get(), code, language);
+        }
+
+        ReviewResult result;
+        if (CodeChunker.estimateTokens(code) > chunkTokens && !code.isBlank()) {
+            result = reviewChunked(code, language);
+        } else {
+            long start = System.nanoTime();
+            Future<String> suggestions = submitSuggestions(language, suggestionsPrompt(language, code));
+            Future<String> correctedCode = submitCorrectedCode(language, correctedCodePrompt(language, code), code);
+
+            result = new ReviewResult();
+            try {
+                result.setSuggestions(await(suggestions, start, suggestionsTimeoutMs));
+            } catch (Exception e) {
+                failStage(result, STAGE_SUGGESTIONS, e);
+            }
+            try {
+                result.setCorrectedCode(await(correctedCode, start, correctedCodeTimeoutMs));
+            } catch (Exception e) {
+                failStage(result, STAGE_CORRECTED_CODE, e);
+            }
+        }
+        reviewCache.put(code, language, result);
+        return result;
+    }
+
+    // Reviews the chunks through a sliding window so one large file cannot take over the model.
+    // Suggestions survive failed chunks; corrected code is only returned when every chunk produced it.
+    private ReviewResult reviewChunked(String code, String language) {
+        List<CodeChunker.Chunk> chunks = CodeChunker.split(code, language, chunkTokens);
+        int window = chunkParallelism > 0 ? chunkParallelism : Math.max(1, admissionGate.capacity() / 2);
+        String[] suggestions = new String[chunks.size()];
+        String[] correctedCode = new String[chunks.size()];
+        Exception suggestionsError = null;
+        Exception correctedCodeError = null;
+
+        Deque<PendingChunk> inFlight = new ArrayDeque<>();
+        int next = 0;
+        while (next < chunks.size() || !inFlight.isEmpty()) {
+            if (next < chunks.size() && inFlight.size() < window) {
+                CodeChunker.Chunk chunk = chunks.get(next++);
+                String preamble = chunkPreamble(language, chunk, chunks.size());
+                inFlight.add(new PendingChunk(chunk.index(), System.nanoTime(),
+                        submitSuggestions(language, preamble + suggestionsPrompt(language, chunk.text())),
+                        submitCorrectedCode(language, preamble + correctedCodePrompt(language, chunk.text()), chunk.text())));
+                continue;
+            }
+            PendingChunk pending = inFlight.poll();
+            try {
+                suggestions[pending.index()] = await(pending.suggestions(), pending.startNanos(), suggestionsTimeoutMs);
+            } catch (Exception e) {
+                suggestionsError = e;
+            }
+            try {
+                correctedCode[pending.index()] = await(pending.correctedCode(), pending.startNanos(), correctedCodeTimeoutMs);
+            } catch (Exception e) {
+                correctedCodeError = e;
+            }
+        }
+
+        ReviewResult result = new ReviewResult();
+        result.setChunks(chunks.size());
+        if (Arrays.stream(suggestions).anyMatch(text -> text != null)) {
+            result.setSuggestions(ReviewMerger.mergeSuggestions(chunks, Arrays.asList(suggestions)));
+        } else {
+            failStage(result, STAGE_SUGGESTIONS, suggestionsError);
+        }
+        if (correctedCodeError == null) {
+            result.setCorrectedCode(ReviewMerger.mergeCorrectedCode(Arrays.asList(correctedCode)));
+        } else {
+            failStage(result, STAGE_CORRECTED_CODE, correctedCodeError);
+        }
+        if (suggestionsError != null && result.hasSuggestions()) {
+            logger.warn("{} of {} chunks produced no suggestions",
+                    Arrays.stream(suggestions).filter(text -> text == null).count(), chunks.size());
+        }
+        return result;
+    }
+
+    private record PendingChunk(int index, long startNanos, Future<String> suggestions, Future<String> correctedCode) {
+    }
+
+    private static String chunkPreamble(String language, CodeChunker.Chunk chunk, int total) {
+        return "The code below is part " + (chunk.index() + 1) + " of " + total + " (lines " + chunk.startLine()
+                + "-" + chunk.endLine() + ") of a larger " + language + " file. Only consider this part.\n\n";
+    }
+
+    // Cleaned, client-facing view of a review result
+    public Map<String, Object> toResponse(ReviewResult reviewResult) {
+        return Observation.createNotStarted("review.postprocess", observationRegistry)
+                .observe(() -> buildResponse(reviewResult));
+    }
+
+    private Map<String, Object> buildResponse(ReviewResult reviewResult) {
+        String suggestionsText = reviewResult.hasSuggestions() ? reviewResult.getSuggestions() : "";
+        String correctedCodeText = reviewResult.hasCorrectedCode() ? reviewResult.getCorrectedCode() : "";
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("review", ReviewPostProcessor.cleanSuggestions(suggestionsText));
+        result.put("correctedCode", ReviewPostProcessor.extractCleanCode(correctedCodeText.trim()));
+        result.put("cached", reviewResult.isCached());
+        if (reviewResult.getChunks() > 1) {
+            result.put("chunks", reviewResult.getChunks());
+        }
+        if (reviewResult.getSimilarReviewId() != null) {
+            result.put("similarReviewId", reviewResult.getSimilarReviewId());
+            result.put("similarity", reviewResult.getSimilarity());
+        }
+        if (reviewResult.isPartial()) {
+            Map<String, String> errors = new HashMap<>();
+            if (!reviewResult.hasSuggestions()) errors.put("review", reviewResult.getSuggestionsError());
+            if (!reviewResult.hasCorrectedCode()) errors.put("correctedCode", reviewResult.getCorrectedCodeError());
+            result.put("partial", true);
+            result.put("errors", errors);
+        }
+        return result;
+    }
+
+    public Review save(String userId, String code, String language, ReviewResult reviewResult) {
+        // ReviewEventListener stores the bodies in the BlobStore and keeps only their hashes
+        Review review = new Review();
+        review.setUserId(userId);
+        review.setLanguage(language);
+        review.setCode(code);
+        review.setSuggestions(reviewResult.getSuggestions());
+        review.setCorrectedCode(reviewResult.getCorrectedCode());
+        review.setTimestamp(LocalDateTime.now());
+        return Observation.createNotStarted("mongo.save", observationRegistry)
+                .lowCardinalityKeyValue("collection", "reviews")
+                .observe(() -> reviewRepository.save(review));
+    }
+
+    private Optional<SimilarityIndex.Match> findSimilar(String userId, String code, String language) {
+        try {
+            return similarityIndex.findSimilar(userId, code, language);
+        } catch (Exception e) {
+            logger.warn("Similarity lookup failed: {}", e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    // Serves the suggestions of a near-duplicate review of the same user. Its corrected code is
+    // only reused when the snippets are identical up to layout; otherwise just that stage is
+    // regenerated. The result is not cached: the suggestions were written for the other snippet.
+    private ReviewResult reuse(SimilarityIndex.Match match, String code, String language) {
+        Review prior = match.review();
+        ReviewResult result = new ReviewResult();
+        result.setSuggestions(prior.getSuggestions());
+        result.setSimilarReviewId(prior.getId());
+        result.setSimilarity(match.similarity());
+
+        if (prior.getCorrectedCode() != null
+                && ReviewCache.normalizeCode(code).equals(ReviewCache.normalizeCode(prior.getCode()))) {
+            result.setCorrectedCode(prior.getCorrectedCode());
+        } else {
+            long start = System.nanoTime();
+            try {
+                Future<String> correctedCode = submitCorrectedCode(language, correctedCodePrompt(language, code), code);
+                result.setCorrectedCode(await(correctedCode, start, correctedCodeTimeoutMs));
+            } catch (Exception e) {
+                failStage(result, STAGE_CORRECTED_CODE, e);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Streaming variant of {@link #review}: tokens of both stages are relayed to
+     * {@code onToken} as (stage, token) while they are generated. The returned future
+     * completes with the full raw output once both stages have finished or failed.
+     * A listener that throws aborts the stage it was called from.
+     */
+    public CompletableFuture<ReviewResult> reviewStream(String userId, String code, String language,
+                                                        BiConsumer<String, String> onToken) {
+        Optional<ReviewResult> cached = reviewCache.get(code, language);
+        if (cached.isPresent()) {
+            // Replay the cached output as one chunk per stage
+            try {
+                onToken.accept(STAGE_SUGGESTIONS, cached.get().getSuggestions());
+                onToken.accept(STAGE_CORRECTED_CODE, cached.get().getCorrectedCode());
+            } catch (RuntimeException e) {
+                return CompletableFuture.failedFuture(e);
+            }
+            return CompletableFuture.completedFuture(cached.get());
+        }
+        if (CodeChunker.estimateTokens(code) > chunkTokens) {
+            // Chunk outputs cannot be interleaved into one stream; review in the background
+            // and relay the merged result as one chunk per stage
+            try {
+                return CompletableFuture.supplyAsync(() -> {
+                    ReviewResult result = review(userId, code, language);
+                    if (result.hasSuggestions()) onToken.accept(STAGE_SUGGESTIONS, result.getSuggestions());
+                    if (result.hasCorrectedCode()) onToken.accept(STAGE_CORRECTED_CODE, result.getCorrectedCode());
+                    return result;
+                }, reviewCoordinatorExecutor);
+            } catch (TaskRejectedException e) {
+                return CompletableFuture.failedFuture(
+                        new ModelOverloadedException("Review executor is saturated", admissionGate.retryAfterSeconds()));
+            }
+        }
+
+        String suggestionsPrompt = suggestionsPrompt(language, code);
+        String correctedCodePrompt = correctedCodePrompt(language, code);
+        CompletableFuture<String> suggestions = streamStage(STAGE_SUGGESTIONS, suggestionsPrompt,
+                budgeter.forSuggestions(language, suggestionsPrompt), suggestionsTimeoutMs, onToken);
+        CompletableFuture<String> correctedCode = streamStage(STAGE_CORRECTED_CODE, correctedCodePrompt,
+                budgeter.forCorrectedCode(language, correctedCodePrompt, code), correctedCodeTimeoutMs, onToken);
+
+        return CompletableFuture.allOf(suggestions, correctedCode).handle((ignored, ex) -> {
+            ReviewResult result = new ReviewResult();
+            suggestions.handle((text, error) -> {
+                if (error != null) failStage(result, STAGE_SUGGESTIONS, unwrap(error));
+                else result.setSuggestions(text);
+                return null;
+            });
+            correctedCode.handle((text, error) -> {
+                if (error != null) failStage(result, STAGE_CORRECTED_CODE, unwrap(error));
+                else result.setCorrectedCode(text);
+                return null;
+            });
+            reviewCache.put(code, language, result);
+            return result;
+        });
+    }
+
+    private CompletableFuture<String> streamStage(String stage, String prompt, GenerationOptions options,
+                                                  long timeoutMs, BiConsumer<String, String> onToken) {
+        CompletableFuture<String> stageResult = new CompletableFuture<>();
+        try {
+            Future<?> task = reviewExecutor.submit(() -> {
+                try {
+                    stageResult.complete(ollamaClient.generateStream(prompt, options, token -> {
+                        // Stop reading from the model once the stage timed out or was abandoned
+                        if (stageResult.isDone()) {
+                            throw new CancellationException(stage + " stage abandoned");
+                        }
+                        onToken.accept(stage, token);
+                    }));
+                } catch (Throwable t) {
+                    stageResult.completeExceptionally(t);
+                }
+            });
+            stageResult.orTimeout(timeoutMs, TimeUnit.MILLISECONDS)
+                    .whenComplete((text, error) -> {
+                        if (error != null) task.cancel(true);
+                    });
+        } catch (TaskRejectedException e) {
+            stageResult.completeExceptionally(
+                    new ModelOverloadedException("Review executor is saturated", admissionGate.retryAfterSeconds()));
+        }
+        return stageResult;
+    }
+
+    private Throwable unwrap(Throwable error) {
+        if (error instanceof CompletionException && error.getCause() != null) {
+            return error.getCause();
+        }
+        if (error instanceof TimeoutException) {
+            return new TimeoutException("timed out");
+        }
+        return error;
+    }
+
+    public static String suggestionsPrompt(String language, String code) {
+        return "You're a senior software engineer. Review the following " + language +
+                " code and tell the bugs, give improvement suggestions and keep it short and simple to understand. List them as:\n" +
+                "1. Bug in the code :-\n2. Suggestion and improvements in code can be :-\n...\n\nCode:\n\n" + code;
+    }
+
+    public static String correctedCodePrompt(String language, String code) {
+        return "Return ONLY the corrected " + language + " code with:\n" +
+                "- NO explanations\n" +
+                "- NO comments\n" +
+                "- NO markdown formatting\n" +
+                "- NO code blocks (```)\n" +
+                "- NO section headers\n" +
+                "- NO line numbers\n" +
+                "- NO additional text of any kind\n\n" +
+                "Just return the pure executable code with proper syntax. If you include anything other than code, the response will be rejected.\n\n" +
+                "Code to correct:\n\n" + code;
+    }
+
+    private Future<String> submitSuggestions(String language, String prompt) {
+        return submit(prompt, budgeter.forSuggestions(language, prompt));
+    }
+
+    private Future<String> submitCorrectedCode(String language, String prompt, String code) {
+        return submit(prompt, budgeter.forCorrectedCode(language, prompt, code));
+    }
+
+    private Future<String> submit(String prompt, GenerationOptions options) {
+        try {
+            return reviewExecutor.submit(() -> ollamaClient.generate(prompt, options));
+        } catch (TaskRejectedException e) {
+            // Executor saturated: shed this stage without blocking the caller
+            return CompletableFuture.failedFuture(
+                    new ModelOverloadedException("Review executor is saturated", admissionGate.retryAfterSeconds()));
+        }
+    }
+
+    // Waits for a stage until its deadline; a stage that misses it is cancelled
+    // so the in-flight HTTP call to the model is interrupted.
+    private String await(Future<String> stage, long startNanos, long timeoutMs) throws Exception {
+        long remainingNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMs) - (System.nanoTime() - startNanos);
+        try {
+            return stage.get(Math.max(0, remainingNanos), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            stage.cancel(true);
+            throw new TimeoutException("timed out after " + timeoutMs + " ms");
+        } catch (InterruptedException e) {
+            stage.cancel(true);
+            Thread.currentThread().interrupt();
+            throw e;
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+        }
+    }
+
+    private void failStage(ReviewResult result, String stage, Throwable e) {
+        if (STAGE_SUGGESTIONS.equals(stage)) {
+            result.setSuggestionsError(describe(e));
+        } else {
+            result.setCorrectedCodeError(describe(e));
+        }
+        if (e instanceof ModelOverloadedException overloaded) {
+            result.setRetryAfterSeconds(overloaded.getRetryAfterSeconds());
+        }
+        logger.warn("Review stage {} failed: {}", stage, describe(e));
+    }
+
+    private String describe(Throwable e) {
+        return e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.codepilot.service;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Distinct words of a review, lowercased, in order of first appearance. Identifiers are kept
+ * whole and also split at camelCase and underscores, so "getUserName" is found both by its
+ * full name and by "user". The list is what the review text index sees of bodies that live
+ * in the BlobStore, so every distinct word is kept; only common language keywords and English
+ * stopwords, which appear in nearly every review and would match all of them, are left out.
+ */
+public final class SearchTerms {
+
+    private static final int MIN_LENGTH = 2;
+    private static final int MAX_LENGTH = 64;
+
+    // Keywords shared by the reviewed languages, and the commonest words of model output
+    private static final Set<String> STOPWORDS = Set.of(
+            "abstract", "and", "as", "async", "await", "bool", "boolean", "break", "byte", "case", "catch", "char",
+            "class", "const", "continue", "def", "default", "do", "double", "elif", "else", "enum", "export",
+            "extends", "false", "final", "finally", "float", "fn", "for", "from", "func", "function", "if",
+            "implements", "import", "in", "instanceof", "int", "interface", "is", "let", "long", "new", "nil",
+            "none", "not", "null", "or", "package", "pass", "private", "protected", "pub", "public", "return",
+            "self", "short", "static", "struct", "super", "switch", "this", "throw", "throws", "true", "try",
+            "type", "typeof", "undefined", "use", "var", "void", "while", "with", "yield",
+            "a", "an", "are", "at", "be", "by", "can", "could", "it", "its", "of", "on", "should", "that", "the",
+            "these", "they", "to", "was", "which", "will", "you", "your");
+
+    private SearchTerms() {
+    }
+
+    public static List<String> of(String... texts) {
+        Set<String> terms = new LinkedHashSet<>();
+        for (String text : texts) {
+            if (text == null) {
+                continue;
+            }
+            int start = -1;
+            for (int i = 0; i <= text.length(); i++) {
+                boolean word = i < text.length() && (Character.isLetterOrDigit(text.charAt(i)) || text.charAt(i) == '_');
+                if (word && start < 0) {
+                    start = i;
+                } else if (!word && start >= 0) {
+                    addWord(terms, text.substring(start, i));
+                    start = -1;
+                }
+            }
+        }
+        return new ArrayList<>(terms);
+    }
+
+    private static void addWord(Set<String> terms, String word) {
+        add(terms, word);
+        int partStart = 0;
+        for (int i = 1; i <= word.length(); i++) {
+            boolean boundary = i == word.length() || word.charAt(i) == '_'
+                    || (Character.isUpperCase(word.charAt(i)) && Character.isLowerCase(word.charAt(i - 1)));
+            if (boundary) {
+                if (partStart > 0 || i < word.length()) {
+                    add(terms, word.substring(partStart, i));
+                }
+                partStart = i < word.length() && word.charAt(i) == '_' ? i + 1 : i;
+            }
+        }
+    }
+
+    private static void add(Set<String> terms, String word) {
+        if (word.length() < MIN_LENGTH || word.length() > MAX_LENGTH || word.chars().allMatch(Character::isDigit)) {
+            return;
+        }
+        String term = word.toLowerCase(Locale.ROOT);
+        if (!STOPWORDS.contains(term)) {
+            terms.add(term);
+        }
+    }
+}
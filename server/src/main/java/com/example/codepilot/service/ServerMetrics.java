@@ -0,0 +1,157 @@
+package com.example.codepilot.service;
+
+import io.micrometer.common.KeyValue;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationHandler;
+import org.springframework.stereotype.Component;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Turns Micrometer observations into timers and serves them, with registered gauges, in the
+ * Prometheus text format. Every observation records a timer tagged with its low-cardinality
+ * key values and the error it ended with, and counts as active while it runs, like a
+ * LongTaskTimer. The same observations feed Micrometer meters once an actuator registry is
+ * on the classpath; this handler keeps them visible without one.
+ */
+@Component
+public class ServerMetrics implements ObservationHandler<Observation.Context> {
+
+    private static final String START = ServerMetrics.class.getName() + ".start";
+
+    // Timer values are kept in microseconds so LatencyHistogram buckets stay fine-grained
+    private static final class Timer {
+        final LongAdder count = new LongAdder();
+        final LongAdder totalNanos = new LongAdder();
+        final LongAccumulator maxNanos = new LongAccumulator(Math::max, 0);
+        final LatencyHistogram micros = new LatencyHistogram();
+
+        void record(long nanos) {
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+            synchronized (micros) {
+                micros.record(nanos / 1000);
+            }
+        }
+    }
+
+    private record TimerKey(String name, Map<String, String> tags) {
+    }
+
+    private final Map<TimerKey, Timer> timers = new ConcurrentHashMap<>();
+    private final Map<String, AtomicInteger> active = new ConcurrentHashMap<>();
+    private final Map<String, Supplier<Number>> gauges = new ConcurrentHashMap<>();
+
+    @Override
+    public boolean supportsContext(Observation.Context context) {
+        return true;
+    }
+
+    @Override
+    public void onStart(Observation.Context context) {
+        context.put(START, System.nanoTime());
+        active.computeIfAbsent(context.getName(), name -> new AtomicInteger()).incrementAndGet();
+    }
+
+    @Override
+    public void onStop(Observation.Context context) {
+        Long start = context.get(START);
+        if (start == null) {
+            return;
+        }
+        active.get(context.getName()).decrementAndGet();
+        Map<String, String> tags = new TreeMap<>();
+        for (KeyValue keyValue : context.getLowCardinalityKeyValues()) {
+            tags.put(keyValue.getKey(), keyValue.getValue());
+        }
+        tags.put("error", context.getError() != null ? context.getError().getClass().getSimpleName() : "none");
+        timers.computeIfAbsent(new TimerKey(context.getName(), tags), key -> new Timer())
+                .record(System.nanoTime() - start);
+    }
+
+    /** Exposes the current value of {@code value} under {@code name}. */
+    public void gauge(String name, Supplier<Number> value) {
+        gauges.put(name, value);
+    }
+
+    public String scrape() {
+        StringBuilder out = new StringBuilder();
+        Map<String, Map<TimerKey, Timer>> byName = new TreeMap<>();
+        timers.forEach((key, timer) -> byName.computeIfAbsent(key.name(), n -> new TreeMap<>(
+                (a, b) -> a.tags().toString().compareTo(b.tags().toString()))).put(key, timer));
+
+        byName.forEach((name, series) -> {
+            String metric = metricName(name) + "_seconds";
+            out.append("# TYPE ").append(metric).append(" summary\n");
+            series.forEach((key, timer) -> {
+                long[] quantiles = new long[3];
+                synchronized (timer.micros) {
+                    quantiles[0] = timer.micros.percentile(0.5);
+                    quantiles[1] = timer.micros.percentile(0.9);
+                    quantiles[2] = timer.micros.percentile(0.99);
+                }
+                String[] labels = {"0.5", "0.9", "0.99"};
+                for (int i = 0; i < labels.length; i++) {
+                    line(out, metric, labels(key.tags(), "quantile", labels[i]), quantiles[i] / 1e6);
+                }
+                line(out, metric + "_count", labels(key.tags(), null, null), timer.count.sum());
+                line(out, metric + "_sum", labels(key.tags(), null, null), timer.totalNanos.sum() / 1e9);
+            });
+            // A summary has no _max series, so the maximum is a gauge family of its own
+            out.append("# TYPE ").append(metric).append("_max gauge\n");
+            series.forEach((key, timer) ->
+                    line(out, metric + "_max", labels(key.tags(), null, null), timer.maxNanos.get() / 1e9));
+        });
+        new TreeMap<>(active).forEach((name, count) -> {
+            String metric = metricName(name) + "_active_count";
+            out.append("# TYPE ").append(metric).append(" gauge\n");
+            line(out, metric, "", count.get());
+        });
+        new TreeMap<>(gauges).forEach((name, value) -> {
+            String metric = metricName(name);
+            out.append("# TYPE ").append(metric).append(" gauge\n");
+            line(out, metric, "", value.get().doubleValue());
+        });
+        return out.toString();
+    }
+
+    private static void line(StringBuilder out, String metric, String labels, double value) {
+        out.append(metric).append(labels).append(' ');
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            out.append((long) value);
+        } else {
+            out.append(value);
+        }
+        out.append('\n');
+    }
+
+    private static String labels(Map<String, String> tags, String extraKey, String extraValue) {
+        StringBuilder labels = new StringBuilder();
+        tags.forEach((key, value) -> label(labels, key, value));
+        if (extraKey != null) {
+            label(labels, extraKey, extraValue);
+        }
+        return labels.isEmpty() ? "" : "{" + labels + "}";
+    }
+
+    private static void label(StringBuilder labels, String key, String value) {
+        if (!labels.isEmpty()) {
+            labels.append(',');
+        }
+        labels.append(metricName(key)).append("=\"")
+                .append(value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n")).append('"');
+    }
+
+    // Prometheus names allow [a-zA-Z0-9_:]; Micrometer's dotted names map to underscores
+    static String metricName(String name) {
+        return name.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9_:]", "_");
+    }
+}
@@ -0,0 +1,209 @@
+package com.example.codepilot.service;
+
+import com.example.codepilot.models.Review;
+import com.example.codepilot.repository.ReviewRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+/**
+ * In-memory near-duplicate index over previously reviewed code, kept per owner so a user
+ * is only ever served their own earlier reviews. Each review's SimHash is split into four
+ * 16-bit bands; two hashes within Hamming distance 3 always share at least one band, so a
+ * lookup only scans the few entries in its own four buckets. Candidates are confirmed
+ * against the Jaccard threshold from the shingle sketch held with each entry, so only a
+ * confirmed match reads the review from Mongo. Past {@code max-entries} the oldest
+ * entries are evicted first.
+ */
+@Service
+public class SimilarityIndex {
+
+    private static final Logger logger = LoggerFactory.getLogger(SimilarityIndex.class);
+
+    private static final int BANDS = 4;
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Autowired
+    private ReviewRepository reviewRepository;
+
+    @Value("${app.similarity.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.similarity.max-distance:3}")
+    private int maxDistance;
+
+    @Value("${app.similarity.min-jaccard:0.85}")
+    private double minJaccard;
+
+    @Value("${app.similarity.max-entries:200000}")
+    private int maxEntries;
+
+    private final Map<Long, Queue<Entry>> buckets = new ConcurrentHashMap<>();
+    // Insertion order for eviction; adds and evictions are serialized, lookups are not
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final Queue<Entry> oldestFirst = new ConcurrentLinkedQueue<>();
+
+    private final AtomicLong lookups = new AtomicLong();
+    private final AtomicLong candidates = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong falsePositives = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+    private final AtomicLong lookupNanos = new AtomicLong();
+
+    private record Entry(String reviewId, String userId, String language, long simHash, int[] sketch) {}
+
+    public record Match(Review review, double similarity) {}
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        if (!enabled) {
+            return;
+        }
+        Query query = new Query(Criteria.where("simHash").ne(null).and("shingleSketch").ne(null).and("userId").ne(null)
+                        .orOperator(Criteria.where("suggestionsRef").ne(null), Criteria.where("suggestions").ne(null)))
+                .with(Sort.by(Sort.Direction.DESC, "timestamp"))
+                .limit(maxEntries);
+        query.fields().include("userId", "language", "simHash", "shingleSketch");
+        try (Stream<Review> reviews = mongoTemplate.stream(query, Review.class)) {
+            // Newest are read first but added last, so they are the last to be evicted
+            List<Review> newestFirst = reviews.toList();
+            for (int i = newestFirst.size() - 1; i >= 0; i--) {
+                add(newestFirst.get(i));
+            }
+            logger.info("Similarity index loaded with {} reviews", entries.size());
+        } catch (Exception e) {
+            logger.warn("Could not load similarity index: {}", e.getMessage());
+        }
+    }
+
+    public synchronized void add(Review review) {
+        if (!enabled || review.getId() == null || review.getUserId() == null || review.getSimHash() == null
+                || review.getShingleSketch() == null || entries.containsKey(review.getId())) {
+            return;
+        }
+        Entry entry = new Entry(review.getId(), review.getUserId(), normalizeLanguage(review.getLanguage()),
+                review.getSimHash(), CodeFingerprint.decodeSketch(review.getShingleSketch()));
+        for (int band = 0; band < BANDS; band++) {
+            buckets.computeIfAbsent(bucketKey(band, entry.simHash()), k -> new ConcurrentLinkedQueue<>()).add(entry);
+        }
+        entries.put(entry.reviewId(), entry);
+        oldestFirst.add(entry);
+        while (entries.size() > maxEntries) {
+            evict(oldestFirst.poll());
+        }
+    }
+
+    private void evict(Entry entry) {
+        entries.remove(entry.reviewId());
+        for (int band = 0; band < BANDS; band++) {
+            long key = bucketKey(band, entry.simHash());
+            Queue<Entry> bucket = buckets.get(key);
+            if (bucket != null) {
+                bucket.remove(entry);
+                if (bucket.isEmpty()) {
+                    buckets.remove(key, bucket);
+                }
+            }
+        }
+        evictions.incrementAndGet();
+    }
+
+    /**
+     * Finds an earlier review of {@code userId} in the same language whose similarity to
+     * {@code code} reaches the configured Jaccard threshold. Anonymous callers get none.
+     */
+    public Optional<Match> findSimilar(String userId, String code, String language) {
+        if (!enabled || userId == null || entries.isEmpty()) {
+            return Optional.empty();
+        }
+        lookups.incrementAndGet();
+        long start = System.nanoTime();
+        CodeFingerprint fingerprint = CodeFingerprint.of(code, language);
+        int[] sketch = fingerprint.sketch();
+        String normalizedLanguage = normalizeLanguage(language);
+
+        Entry best = null;
+        double bestSimilarity = -1;
+        boolean candidate = false;
+        for (int band = 0; band < BANDS; band++) {
+            Queue<Entry> bucket = buckets.get(bucketKey(band, fingerprint.simHash()));
+            if (bucket == null) {
+                continue;
+            }
+            for (Entry entry : bucket) {
+                if (!entry.userId().equals(userId) || !entry.language().equals(normalizedLanguage)
+                        || CodeFingerprint.hammingDistance(fingerprint.simHash(), entry.simHash()) > maxDistance) {
+                    continue;
+                }
+                candidate = true;
+                double similarity = CodeFingerprint.estimateJaccard(sketch, entry.sketch());
+                if (similarity > bestSimilarity) {
+                    best = entry;
+                    bestSimilarity = similarity;
+                }
+            }
+        }
+        lookupNanos.addAndGet(System.nanoTime() - start);
+        if (!candidate) {
+            return Optional.empty();
+        }
+        candidates.incrementAndGet();
+        if (bestSimilarity < minJaccard) {
+            // SimHash said "close" but the shingles disagree
+            falsePositives.incrementAndGet();
+            return Optional.empty();
+        }
+
+        Review review = reviewRepository.findById(best.reviewId()).orElse(null);
+        if (review == null || review.getSuggestions() == null) {
+            return Optional.empty();
+        }
+        hits.incrementAndGet();
+        return Optional.of(new Match(review, bestSimilarity));
+    }
+
+    private static long bucketKey(int band, long simHash) {
+        return ((long) band << 16) | ((simHash >>> (band * 16)) & 0xFFFFL);
+    }
+
+    private static String normalizeLanguage(String language) {
+        return language == null ? "" : language.trim().toLowerCase();
+    }
+
+    public Map<String, Object> getStats() {
+        long lookupCount = lookups.get();
+        long candidateCount = candidates.get();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("entries", entries.size());
+        stats.put("lookups", lookupCount);
+        stats.put("candidates", candidateCount);
+        stats.put("hits", hits.get());
+        stats.put("falsePositives", falsePositives.get());
+        stats.put("evictions", evictions.get());
+        stats.put("hitRate", lookupCount > 0 ? (double) hits.get() / lookupCount : 0.0);
+        stats.put("falsePositiveRate", candidateCount > 0 ? (double) falsePositives.get() / candidateCount : 0.0);
+        stats.put("avgLookupMicros", lookupCount > 0 ? lookupNanos.get() / lookupCount / 1000.0 : 0.0);
+        return stats;
+    }
+}
@@ -0,0 +1,245 @@
+package com.example.codepilot.service;
+
+import com.example.codepilot.models.DailyCreditUsage;
+import com.example.codepilot.models.DailyLatency;
+import com.example.codepilot.models.DailyReviewUsage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PreDestroy;
+import java.time.Clock;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+
+/**
+ * Usage counters kept as per-day rollup documents, so reports read one document per day and
+ * language, user or model instead of scanning reviews and credits. Events are summed in memory
+ * and written every {@code app.usage.flush-ms} as one bulk of {@code $inc} upserts; a failed
+ * write is kept and retried with the next flush.
+ */
+@Service
+public class UsageRollups {
+
+    private static final Logger logger = LoggerFactory.getLogger(UsageRollups.class);
+
+    @Autowired
+    private MongoTemplate mongoTemplate;
+
+    @Value("${app.usage.enabled:true}")
+    private boolean enabled;
+
+    Clock clock = Clock.systemUTC();
+
+    private record Key(Class<?> type, String id) {
+    }
+
+    // Pending increments of one rollup document
+    private static final class Delta {
+        final Map<String, Object> identity;
+        final Map<String, LongAdder> counts = new ConcurrentHashMap<>();
+        final Map<String, DoubleAdder> amounts = new ConcurrentHashMap<>();
+        final Map<String, LongAccumulator> maxima = new ConcurrentHashMap<>();
+
+        Delta(Map<String, Object> identity) {
+            this.identity = identity;
+        }
+
+        void inc(String field, long value) {
+            counts.computeIfAbsent(field, f -> new LongAdder()).add(value);
+        }
+
+        void add(String field, double value) {
+            amounts.computeIfAbsent(field, f -> new DoubleAdder()).add(value);
+        }
+
+        void max(String field, long value) {
+            maxima.computeIfAbsent(field, f -> new LongAccumulator(Math::max, Long.MIN_VALUE)).accumulate(value);
+        }
+
+        void addTo(Delta other) {
+            counts.forEach((field, value) -> other.inc(field, value.sum()));
+            amounts.forEach((field, value) -> other.add(field, value.sum()));
+            maxima.forEach((field, value) -> other.max(field, value.get()));
+        }
+    }
+
+    // Recorders take the read lock, the flush swaps the map under the write lock
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private Map<Key, Delta> pending = new ConcurrentHashMap<>();
+
+    public void recordReview(String language, boolean cached, boolean partial) {
+        String day = today();
+        String normalized = language == null ? "unknown" : language.toLowerCase();
+        record(DailyReviewUsage.class, day + "|" + normalized, Map.of("day", day, "language", normalized), delta -> {
+            delta.inc("reviews", 1);
+            if (cached) delta.inc("cached", 1);
+            if (partial) delta.inc("partial", 1);
+        });
+    }
+
+    /** Credits taken from ({@code credits > 0}) or given back to ({@code credits < 0}) a user. */
+    public void recordConsumed(String userId, long credits) {
+        if (userId == null) {
+            return;
+        }
+        String day = today();
+        record(DailyCreditUsage.class, day + "|" + userId, Map.of("day", day, "userId", userId),
+                delta -> delta.inc("consumed", credits));
+    }
+
+    public void recordPurchase(String userId, long credits, double price) {
+        if (userId == null) {
+            return;
+        }
+        String day = today();
+        record(DailyCreditUsage.class, day + "|" + userId, Map.of("day", day, "userId", userId), delta -> {
+            delta.inc("purchased", credits);
+            delta.add("spent", price);
+        });
+    }
+
+    public void recordModelCall(String model, long latencyMs, boolean failed) {
+        String day = today();
+        String name = model == null ? "unknown" : model;
+        record(DailyLatency.class, day + "|" + name, Map.of("day", day, "model", name), delta -> {
+            delta.inc("calls", 1);
+            if (failed) delta.inc("failures", 1);
+            delta.inc("totalMs", latencyMs);
+            delta.max("maxMs", latencyMs);
+            delta.inc("buckets." + LatencyHistogram.bucketOf(latencyMs), 1);
+        });
+    }
+
+    private void record(Class<?> type, String id, Map<String, Object> identity, Consumer<Delta> change) {
+        if (!enabled) {
+            return;
+        }
+        lock.readLock().lock();
+        try {
+            change.accept(pending.computeIfAbsent(new Key(type, id), key -> new Delta(identity)));
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private String today() {
+        return LocalDate.now(clock.withZone(ZoneOffset.UTC)).toString();
+    }
+
+    @Scheduled(fixedDelayString = "${app.usage.flush-ms:5000}")
+    @PreDestroy
+    public synchronized void flush() {
+        Map<Key, Delta> batch;
+        lock.writeLock().lock();
+        try {
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = pending;
+            pending = new ConcurrentHashMap<>();
+        } finally {
+            lock.writeLock().unlock();
+        }
+
+        Map<Class<?>, BulkOperations> bulks = new LinkedHashMap<>();
+        batch.forEach((key, delta) -> {
+            Update update = new Update();
+            delta.identity.forEach(update::setOnInsert);
+            delta.counts.forEach((field, value) -> update.inc(field, value.sum()));
+            delta.amounts.forEach((field, value) -> update.inc(field, value.sum()));
+            delta.maxima.forEach((field, value) -> update.max(field, value.get()));
+            bulks.computeIfAbsent(key.type(), type -> mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, type))
+                    .upsert(new Query(Criteria.where("_id").is(key.id())), update);
+        });
+        try {
+            bulks.values().forEach(BulkOperations::execute);
+        } catch (Exception e) {
+            // Upserts with $inc are not idempotent, so only an outright failure is retried;
+            // a partly applied batch may then be counted twice, which beats losing it
+            logger.warn("Could not write {} usage rollups, retrying with the next flush: {}", batch.size(), e.getMessage());
+            lock.readLock().lock();
+            try {
+                batch.forEach((key, delta) -> delta.addTo(pending.computeIfAbsent(key, k -> new Delta(delta.identity))));
+            } finally {
+                lock.readLock().unlock();
+            }
+        }
+    }
+
+    /** Reviews per day and language in [from, to], optionally for one language. */
+    public List<DailyReviewUsage> reviews(LocalDate from, LocalDate to, String language) {
+        Criteria criteria = days(from, to);
+        if (language != null) {
+            criteria.and("language").is(language.toLowerCase());
+        }
+        return mongoTemplate.find(new Query(criteria).with(Sort.by("day", "language")), DailyReviewUsage.class);
+    }
+
+    /** Credit movements per day and user in [from, to], optionally for one user. */
+    public List<DailyCreditUsage> credits(LocalDate from, LocalDate to, String userId) {
+        Criteria criteria = days(from, to);
+        if (userId != null) {
+            criteria.and("userId").is(userId);
+        }
+        return mongoTemplate.find(new Query(criteria).with(Sort.by("day", "userId")), DailyCreditUsage.class);
+    }
+
+    /** Model latency percentiles over [from, to], merged from the daily histograms of each model. */
+    public Map<String, Object> latency(LocalDate from, LocalDate to, String model) {
+        Criteria criteria = days(from, to);
+        if (model != null) {
+            criteria.and("model").is(model);
+        }
+        Map<String, LatencyHistogram> histograms = new LinkedHashMap<>();
+        Map<String, long[]> totals = new LinkedHashMap<>(); // calls, failures, totalMs, maxMs
+        for (DailyLatency day : mongoTemplate.find(new Query(criteria).with(Sort.by("model", "day")), DailyLatency.class)) {
+            histograms.computeIfAbsent(day.getModel(), m -> new LatencyHistogram()).merge(day.getBuckets());
+            long[] sums = totals.computeIfAbsent(day.getModel(), m -> new long[4]);
+            sums[0] += day.getCalls();
+            sums[1] += day.getFailures();
+            sums[2] += day.getTotalMs();
+            sums[3] = Math.max(sums[3], day.getMaxMs());
+        }
+
+        Map<String, Object> models = new LinkedHashMap<>();
+        histograms.forEach((name, histogram) -> {
+            long[] sums = totals.get(name);
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("calls", sums[0]);
+            stats.put("failures", sums[1]);
+            stats.put("avgMs", sums[0] > 0 ? sums[2] / sums[0] : 0);
+            stats.put("maxMs", sums[3]);
+            stats.putAll(histogram.percentiles());
+            models.put(name, stats);
+        });
+        return models;
+    }
+
+    private static Criteria days(LocalDate from, LocalDate to) {
+        List<Criteria> bounds = new ArrayList<>();
+        if (from != null) bounds.add(Criteria.where("day").gte(from.toString()));
+        if (to != null) bounds.add(Criteria.where("day").lte(to.toString()));
+        return bounds.isEmpty() ? new Criteria() : new Criteria().andOperator(bounds);
+    }
+}
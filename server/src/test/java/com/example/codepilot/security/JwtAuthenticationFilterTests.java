@@ -0,0 +1,137 @@
+package com.example.codepilot.security;
+
+import com.example.codepilot.models.RevokedToken;
+import com.example.codepilot.models.User;
+import com.example.codepilot.repository.RevokedTokenRepository;
+import io.jsonwebtoken.Jwts;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.mapping.event.AfterSaveEvent;
+import org.springframework.data.mongodb.core.mapping.event.BeforeConvertEvent;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.security.Key;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class JwtAuthenticationFilterTests {
+
+    private final RevokedTokenRepository repository = mock(RevokedTokenRepository.class);
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final List<RevokedToken> stored = new ArrayList<>();
+    private final JwtUtils jwtUtils = new JwtUtils();
+    private final TokenRevocationList revocationList = new TokenRevocationList();
+    private final JwtAuthenticationFilter filter = new JwtAuthenticationFilter();
+    private final UserEventListener listener = new UserEventListener();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(jwtUtils, "jwtSecret", "test-secret-that-is-long-enough-for-hs256");
+        ReflectionTestUtils.setField(jwtUtils, "jwtExpirationMs", 60_000);
+        jwtUtils.init();
+        when(repository.save(any())).thenAnswer(invocation -> {
+            stored.add(invocation.getArgument(0));
+            return invocation.getArgument(0);
+        });
+        ReflectionTestUtils.setField(revocationList, "revokedTokenRepository", repository);
+        ReflectionTestUtils.setField(revocationList, "jwtUtils", jwtUtils);
+        ReflectionTestUtils.setField(filter, "jwtUtils", jwtUtils);
+        ReflectionTestUtils.setField(filter, "revocationList", revocationList);
+        ReflectionTestUtils.setField(filter, "observationRegistry", ObservationRegistry.NOOP);
+        ReflectionTestUtils.setField(listener, "revocationList", revocationList);
+        ReflectionTestUtils.setField(listener, "mongoTemplate", mongoTemplate);
+    }
+
+    @AfterEach
+    void tearDown() {
+        SecurityContextHolder.clearContext();
+    }
+
+    private static User user(String id, String... roles) {
+        User user = new User("dave", "dave@example.com", "secret", "Dave");
+        user.setId(id);
+        user.setRoles(new ArrayList<>(List.of(roles)));
+        return user;
+    }
+
+    private Authentication authenticate(String jwt) throws Exception {
+        SecurityContextHolder.clearContext();
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        request.addHeader("Authorization", "Bearer " + jwt);
+        filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain());
+        return SecurityContextHolder.getContext().getAuthentication();
+    }
+
+    // Signed like a token issued before the uid, roles and jti claims
+    private String legacyToken(String subject) {
+        return Jwts.builder().setSubject(subject).setIssuedAt(new Date())
+                .signWith((Key) ReflectionTestUtils.getField(jwtUtils, "signingKey"))
+                .compact();
+    }
+
+    @Test
+    void buildsThePrincipalFromTheClaimsAlone() throws Exception {
+        Authentication authentication = authenticate(jwtUtils.generateJwtToken(user("u1", "USER", "ADMIN")));
+
+        User principal = (User) authentication.getPrincipal();
+        assertEquals("u1", principal.getId());
+        assertEquals("dave", principal.getUsername());
+        assertNull(principal.getCredits());
+        assertEquals(List.of("ROLE_USER", "ROLE_ADMIN"),
+                authentication.getAuthorities().stream().map(GrantedAuthority::getAuthority).toList());
+    }
+
+    @Test
+    void rejectsTokensWithoutTheUidClaim() throws Exception {
+        assertNull(authenticate(legacyToken("dave")));
+        assertNull(authenticate(legacyToken("dave@example.com")));
+        assertNull(authenticate(jwtUtils.generateJwtToken(user("u1")) + "x"));
+    }
+
+    @Test
+    void disablingAUserRevokesItsTokens() throws Exception {
+        User user = user("u2", "USER");
+        String jwt = jwtUtils.generateJwtToken(user);
+        Thread.sleep(1100 - Instant.now().toEpochMilli() % 1000); // iat has whole seconds
+        assertNotNull(authenticate(jwt));
+
+        user.setEnabled(false);
+        listener.onAfterSave(new AfterSaveEvent<>(user, null, "users"));
+
+        assertNull(authenticate(jwt));
+    }
+
+    @Test
+    void changingTheRolesRevokesTheTokensCarryingTheOldOnes() throws Exception {
+        User stored = user("u3", "USER", "ADMIN");
+        String jwt = jwtUtils.generateJwtToken(stored);
+        when(mongoTemplate.findOne(any(Query.class), eq(User.class))).thenReturn(stored);
+        Thread.sleep(1100 - Instant.now().toEpochMilli() % 1000);
+
+        // Saving with the same roles keeps the token valid
+        listener.onBeforeConvert(new BeforeConvertEvent<>(user("u3", "USER", "ADMIN"), "users"));
+        assertNotNull(authenticate(jwt));
+
+        listener.onBeforeConvert(new BeforeConvertEvent<>(user("u3", "USER"), "users"));
+        assertNull(authenticate(jwt));
+        assertNotNull(authenticate(jwtUtils.generateJwtToken(user("u3", "USER"))));
+    }
+}
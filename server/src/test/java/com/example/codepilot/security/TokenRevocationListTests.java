@@ -0,0 +1,81 @@
+package com.example.codepilot.security;
+
+import com.example.codepilot.models.RevokedToken;
+import com.example.codepilot.models.User;
+import com.example.codepilot.repository.RevokedTokenRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class TokenRevocationListTests {
+
+    private final RevokedTokenRepository repository = mock(RevokedTokenRepository.class);
+    private final List<RevokedToken> stored = new ArrayList<>();
+    private final JwtUtils jwtUtils = new JwtUtils();
+    private final TokenRevocationList revocationList = new TokenRevocationList();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(jwtUtils, "jwtSecret", "test-secret-that-is-long-enough-for-hs256");
+        ReflectionTestUtils.setField(jwtUtils, "jwtExpirationMs", 60_000);
+        jwtUtils.init();
+        when(repository.save(any())).thenAnswer(invocation -> {
+            stored.add(invocation.getArgument(0));
+            return invocation.getArgument(0);
+        });
+        when(repository.findByExpiresAtAfter(any())).thenAnswer(invocation -> List.copyOf(stored));
+        when(repository.findByCreatedAtAfter(any())).thenAnswer(invocation -> List.copyOf(stored));
+        ReflectionTestUtils.setField(revocationList, "revokedTokenRepository", repository);
+        ReflectionTestUtils.setField(revocationList, "jwtUtils", jwtUtils);
+    }
+
+    private JwtUtils.AuthToken issue(String id) {
+        User user = new User("carol", "carol@example.com", "secret", "Carol");
+        user.setId(id);
+        return jwtUtils.parseJwtToken(jwtUtils.generateJwtToken(user));
+    }
+
+    @Test
+    void tokensCarryTheUserIdAndRoles() {
+        JwtUtils.AuthToken token = issue("u1");
+        assertEquals("carol", token.subject());
+        assertEquals("u1", token.userId());
+        assertEquals(List.of("USER"), token.roles());
+        assertNotNull(token.tokenId());
+        assertNull(jwtUtils.parseJwtToken(jwtUtils.generateJwtToken(new User()) + "x"));
+    }
+
+    @Test
+    void logoutRevokesOnlyThatToken() {
+        JwtUtils.AuthToken first = issue("u1");
+        JwtUtils.AuthToken second = issue("u1");
+        revocationList.revokeToken(first);
+
+        assertTrue(revocationList.isRevoked(first));
+        assertFalse(revocationList.isRevoked(second));
+    }
+
+    @Test
+    void revokingAUserCoversItsEarlierTokensOnEveryInstance() {
+        JwtUtils.AuthToken old = new JwtUtils.AuthToken("carol", "u2", List.of("USER"), "t1",
+                Instant.now().minusSeconds(120), Instant.now().plusSeconds(60));
+        revocationList.revokeUser("u2");
+        assertTrue(revocationList.isRevoked(old));
+        assertFalse(revocationList.isRevoked(issue("u3")));
+
+        TokenRevocationList otherInstance = new TokenRevocationList();
+        ReflectionTestUtils.setField(otherInstance, "revokedTokenRepository", repository);
+        ReflectionTestUtils.setField(otherInstance, "jwtUtils", jwtUtils);
+        otherInstance.refresh();
+        assertTrue(otherInstance.isRevoked(old));
+    }
+}
@@ -0,0 +1,119 @@
+package com.example.codepilot.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ArchiveReaderTests {
+
+    // Gzipped tarball laid out like GitHub's: global pax header with the commit, then a root directory
+    static byte[] tarGz(String root, String commit, Map<String, String> files) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            if (commit != null) {
+                tarEntry(out, "pax_global_header", 'g', pax("comment", commit));
+            }
+            tarEntry(out, root + "/", '5', new byte[0]);
+            for (Map.Entry<String, String> file : files.entrySet()) {
+                String name = root + "/" + file.getKey();
+                if (name.length() > 99) {
+                    tarEntry(out, "././@PaxHeader", 'x', pax("path", name));
+                    name = name.substring(0, 99);
+                }
+                tarEntry(out, name, '0', file.getValue().getBytes(StandardCharsets.UTF_8));
+            }
+            out.write(new byte[1024]);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void tarEntry(OutputStream out, String name, char type, byte[] content) throws IOException {
+        byte[] header = new byte[512];
+        byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+        System.arraycopy(nameBytes, 0, header, 0, Math.min(100, nameBytes.length));
+        byte[] size = String.format("%011o", content.length).getBytes(StandardCharsets.US_ASCII);
+        System.arraycopy(size, 0, header, 124, size.length);
+        header[156] = (byte) type;
+        System.arraycopy("ustar\u000000".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 8);
+        out.write(header);
+        out.write(content);
+        out.write(new byte[(512 - content.length % 512) % 512]);
+    }
+
+    private static byte[] pax(String key, String value) {
+        String record = " " + key + "=" + value + "\n";
+        int length = record.length() + 1;
+        while (length != record.length() + String.valueOf(length).length()) {
+            length = record.length() + String.valueOf(length).length();
+        }
+        return (length + record).getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static Map<String, String> readAll(ArchiveReader reader, byte[] archive) throws Exception {
+        Map<String, String> files = new LinkedHashMap<>();
+        reader.read(new ByteArrayInputStream(archive), (path, size, content) -> {
+            // Leave part of every other entry unread; the reader must skip the rest
+            byte[] data = files.size() % 2 == 0 ? content.readAllBytes() : content.readNBytes(1);
+            files.put(path, new String(data, StandardCharsets.UTF_8));
+        });
+        return files;
+    }
+
+    @Test
+    void readsGitHubStyleTarballs() throws Exception {
+        Map<String, String> files = new LinkedHashMap<>();
+        files.put("src/Main.java", "class Main {}\n".repeat(100));
+        files.put("README.md", "hello");
+        String longPath = "deeply/" + "nested/".repeat(20) + "File.java";
+        files.put(longPath, "class File {}");
+
+        ArchiveReader reader = new ArchiveReader(ArchiveReader.Format.TAR_GZ, Long.MAX_VALUE);
+        Map<String, String> read = readAll(reader, tarGz("acme-widgets-c0ffee1", "c0ffee1234", files));
+
+        assertEquals("c0ffee1234", reader.getCommitSha());
+        assertEquals(3, read.size());
+        assertEquals(files.get("src/Main.java"), read.get("src/Main.java"));
+        assertEquals("h", read.get("README.md"));
+        assertEquals("class File {}", read.get(longPath));
+    }
+
+    @Test
+    void readsZipsAndStripsTheirRootDirectory() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ZipOutputStream zip = new ZipOutputStream(bytes)) {
+            zip.putNextEntry(new ZipEntry("widgets-main/"));
+            zip.putNextEntry(new ZipEntry("widgets-main/a.py"));
+            zip.write("print('a')".getBytes(StandardCharsets.UTF_8));
+            zip.putNextEntry(new ZipEntry("widgets-main/lib/b.py"));
+            zip.write("print('b')".getBytes(StandardCharsets.UTF_8));
+        }
+        InputStream in = new BufferedInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        assertEquals(ArchiveReader.Format.ZIP, ArchiveReader.detect(in));
+
+        Map<String, String> read = readAll(new ArchiveReader(ArchiveReader.Format.ZIP, Long.MAX_VALUE),
+                bytes.toByteArray());
+        assertEquals(Map.of("a.py", "print('a')", "lib/b.py", "p"), read);
+    }
+
+    @Test
+    void stopsAtTheUncompressedLimit() throws Exception {
+        byte[] bomb = tarGz("root", null, Map.of("zeros.txt", "0".repeat(1 << 20)));
+        assertTrue(bomb.length < 10_000);
+        ArchiveReader reader = new ArchiveReader(ArchiveReader.Format.TAR_GZ, 100_000);
+        IOException error = assertThrows(IOException.class, () -> readAll(reader, bomb));
+        assertTrue(error.getMessage().contains("larger than"));
+    }
+}
@@ -0,0 +1,184 @@
+package com.example.codepilot.service;
+
+import com.example.codepilot.models.Review;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoClients;
+import org.bson.Document;
+import org.springframework.context.support.StaticApplicationContext;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Rough comparison of review storage with inline bodies against deflated, content-addressed
+ * blobs: bytes stored for a corpus in which the same snippets are submitted repeatedly, and
+ * the cost of reading a body back. Given a Mongo URI as its argument, it also stores the corpus
+ * both ways in a scratch database and times a history page read through the real mapping and
+ * ReviewEventListener path. See {@link Microbenchmark} for how to run it.
+ */
+public final class BlobStoreBenchmark {
+
+    private static final String INLINE = "reviews_inline";
+
+    private static volatile int sink;
+
+    public static void main(String[] args) {
+        // 2000 reviews of 250 distinct snippets, each with suggestions and corrected code
+        List<String> bodies = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            int snippet = (i * 7919) % 250;
+            String code = snippet(snippet, 120);
+            bodies.add(code);
+            bodies.add(suggestions(snippet));
+            bodies.add(code.replace("count++", "count += 1"));
+        }
+
+        long inline = 0;
+        Map<String, Integer> blobs = new HashMap<>();
+        for (String body : bodies) {
+            byte[] raw = body.getBytes(StandardCharsets.UTF_8);
+            inline += raw.length;
+            blobs.computeIfAbsent(BlobStore.hash(raw), hash -> BlobStore.compress(raw).length);
+        }
+        long stored = blobs.values().stream().mapToLong(Integer::longValue).sum();
+        // Each review still keeps three 64-character hashes
+        long refs = bodies.size() * 64L;
+        System.out.printf("inline bodies:        %,12d bytes%n", inline);
+        System.out.printf("blobs + refs:         %,12d bytes  (%d blobs, %.1fx smaller)%n",
+                stored + refs, blobs.size(), inline / (double) (stored + refs));
+
+        String code = snippet(1, 2000);
+        byte[] raw = code.getBytes(StandardCharsets.UTF_8);
+        byte[] compressed = BlobStore.compress(raw);
+        System.out.printf("large body: %d bytes, %d deflated%n", raw.length, compressed.length);
+        for (int round = 0; round < 3; round++) {
+            Microbenchmark.measure("inline  decode", 2000, () ->
+                    sink += new String(raw, StandardCharsets.UTF_8).length());
+            Microbenchmark.measure("blob    inflate+decode", 2000, () ->
+                    sink += new String(BlobStore.decompress(compressed, raw.length), StandardCharsets.UTF_8).length());
+            Microbenchmark.measure("blob    hash+deflate", 2000, () ->
+                    sink += BlobStore.hash(raw).length() + BlobStore.compress(raw).length);
+        }
+
+        if (args.length > 0) {
+            mongoReads(args[0], bodies);
+        }
+    }
+
+    // Same corpus as reviews of 20 users, inline in one collection and as blob refs in another
+    private static void mongoReads(String uri, List<String> bodies) {
+        try (MongoClient client = MongoClients.create(uri)) {
+            MongoTemplate mongoTemplate = new MongoTemplate(client, "codepilot_benchmark");
+            mongoTemplate.getDb().drop();
+            BlobStore blobStore = new BlobStore();
+            ReflectionTestUtils.setField(blobStore, "mongoTemplate", mongoTemplate);
+            ReflectionTestUtils.setField(blobStore, "gridFsTemplate",
+                    new GridFsTemplate(mongoTemplate.getMongoDatabaseFactory(), mongoTemplate.getConverter()));
+            ReflectionTestUtils.setField(blobStore, "gridFsThresholdBytes", 1 << 20);
+            ReflectionTestUtils.setField(blobStore, "cacheMaxChars", 32L << 20);
+            blobStore.init();
+            ReviewEventListener listener = new ReviewEventListener();
+            ReflectionTestUtils.setField(listener, "blobStore", blobStore);
+            ReflectionTestUtils.setField(listener, "similarityIndex", new SimilarityIndex()); // disabled
+            StaticApplicationContext context = new StaticApplicationContext();
+            context.addApplicationListener(listener);
+            context.refresh();
+            mongoTemplate.setApplicationContext(context);
+
+            List<Document> inline = new ArrayList<>();
+            LocalDateTime now = LocalDateTime.now();
+            for (int i = 0; i < bodies.size() / 3; i++) {
+                String userId = "u" + i % 20;
+                LocalDateTime timestamp = now.minusMinutes(i);
+                inline.add(new Document("userId", userId).append("language", "java").append("code", bodies.get(3 * i))
+                        .append("suggestions", bodies.get(3 * i + 1)).append("correctedCode", bodies.get(3 * i + 2))
+                        .append("timestamp", timestamp));
+                Review review = new Review();
+                review.setUserId(userId);
+                review.setLanguage("java");
+                review.setCode(bodies.get(3 * i));
+                review.setSuggestions(bodies.get(3 * i + 1));
+                review.setCorrectedCode(bodies.get(3 * i + 2));
+                review.setTimestamp(timestamp);
+                mongoTemplate.save(review);
+            }
+            mongoTemplate.getCollection(INLINE).insertMany(inline);
+            for (String collection : List.of(INLINE, "reviews")) {
+                mongoTemplate.getCollection(collection).createIndex(new Document("userId", 1).append("timestamp", -1));
+            }
+
+            Document inlineStats = stats(mongoTemplate, INLINE);
+            Document reviewStats = stats(mongoTemplate, "reviews");
+            Document blobStats = stats(mongoTemplate, "content_blobs");
+            System.out.printf("mongo inline:         %,12d bytes data  %,12d bytes on disk%n",
+                    size(inlineStats, "size"), size(inlineStats, "storageSize"));
+            System.out.printf("mongo refs + blobs:   %,12d bytes data  %,12d bytes on disk%n",
+                    size(reviewStats, "size") + size(blobStats, "size"),
+                    size(reviewStats, "storageSize") + size(blobStats, "storageSize"));
+
+            AtomicInteger page = new AtomicInteger();
+            for (int round = 0; round < 3; round++) {
+                Microbenchmark.measure("inline  history page", 200, () ->
+                        sink += bodyLength(mongoTemplate.find(historyPage(page), Review.class, INLINE)));
+                Microbenchmark.measure("blobs   history page, cold", 200, () -> {
+                    blobStore.init();
+                    sink += bodyLength(mongoTemplate.find(historyPage(page), Review.class));
+                });
+                Microbenchmark.measure("blobs   history page, warm", 200, () ->
+                        sink += bodyLength(mongoTemplate.find(historyPage(page), Review.class)));
+            }
+            mongoTemplate.getDb().drop();
+        }
+    }
+
+    // The 20 newest reviews of the next user, as GET /api/review lists them
+    private static Query historyPage(AtomicInteger page) {
+        return new Query(Criteria.where("userId").is("u" + page.getAndIncrement() % 20))
+                .with(Sort.by(Sort.Direction.DESC, "timestamp")).limit(20);
+    }
+
+    private static int bodyLength(List<Review> reviews) {
+        int length = 0;
+        for (Review review : reviews) {
+            length += review.getCode().length() + review.getSuggestions().length() + review.getCorrectedCode().length();
+        }
+        return length;
+    }
+
+    private static Document stats(MongoTemplate mongoTemplate, String collection) {
+        return mongoTemplate.getDb().runCommand(new Document("collStats", collection));
+    }
+
+    private static long size(Document stats, String field) {
+        return ((Number) stats.get(field)).longValue();
+    }
+
+    private static String snippet(int seed, int lines) {
+        StringBuilder code = new StringBuilder("public class Handler").append(seed).append(" {\n");
+        for (int i = 0; i < lines; i++) {
+            code.append("    public int handle").append(i).append("(List<String> items) {\n")
+                    .append("        int count = 0;\n")
+                    .append("        for (String item : items) if (item.startsWith(\"").append(seed % 10)
+                    .append("\")) count++;\n")
+                    .append("        return count;\n    }\n");
+        }
+        return code.append("}\n").toString();
+    }
+
+    private static String suggestions(int seed) {
+        return "1. Bug in the code :-\n   handle" + seed + " ignores null items and throws.\n"
+                + "2. Suggestion and improvements in code can be :-\n"
+                + "   - Use streams with filter and count.\n   - Make the prefix a constant.\n".repeat(5);
+    }
+}
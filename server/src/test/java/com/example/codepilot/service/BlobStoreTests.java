@@ -0,0 +1,109 @@
+package com.example.codepilot.service;
+
+import com.example.codepilot.models.ContentBlob;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.BsonString;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.gridfs.GridFsTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class BlobStoreTests {
+
+    private final Map<String, ContentBlob> blobs = new ConcurrentHashMap<>();
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private BlobStore blobStore;
+
+    // Applies $setOnInsert only when no blob with the hash exists, as an upsert does
+    private UpdateResult upsert(Query query, Update update) {
+        String hash = query.getQueryObject().getString("_id");
+        org.bson.Document fields = (org.bson.Document) update.getUpdateObject().get("$setOnInsert");
+        ContentBlob blob = new ContentBlob(hash, (byte[]) fields.get("data"), fields.getString("gridFsId"),
+                fields.getInteger("size"), fields.getInteger("storedSize"), null);
+        boolean inserted = blobs.putIfAbsent(hash, blob) == null;
+        return UpdateResult.acknowledged(inserted ? 0 : 1, 0L, inserted ? new BsonString(hash) : null);
+    }
+
+    private BlobStore newStore() {
+        BlobStore store = new BlobStore();
+        ReflectionTestUtils.setField(store, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(store, "gridFsTemplate", mock(GridFsTemplate.class));
+        ReflectionTestUtils.setField(store, "gridFsThresholdBytes", 1 << 20);
+        ReflectionTestUtils.setField(store, "cacheMaxChars", 100_000L);
+        store.init();
+        return store;
+    }
+
+    @BeforeEach
+    void setUp() {
+        when(mongoTemplate.exists(any(Query.class), eq(ContentBlob.class))).thenAnswer(invocation ->
+                blobs.containsKey(((Query) invocation.getArgument(0)).getQueryObject().getString("_id")));
+        when(mongoTemplate.upsert(any(Query.class), any(Update.class), eq(ContentBlob.class))).thenAnswer(invocation ->
+                upsert(invocation.getArgument(0), invocation.getArgument(1)));
+        when(mongoTemplate.findOne(any(Query.class), eq(ContentBlob.class))).thenAnswer(invocation ->
+                blobs.get(((Query) invocation.getArgument(0)).getQueryObject().getString("_id")));
+        blobStore = newStore();
+    }
+
+    @Test
+    void storesEachDistinctTextOnceAndCompressed() {
+        String code = "int total = 0;\nfor (int i = 0; i < n; i++) total += i;\n".repeat(200);
+        String first = blobStore.put(code);
+        String second = newStore().put(code);
+
+        assertEquals(first, second);
+        assertEquals(64, first.length());
+        assertEquals(1, blobs.size());
+        assertTrue(blobs.get(first).getStoredSize() < code.length() / 10);
+        verify(mongoTemplate, times(1)).upsert(any(Query.class), any(Update.class), eq(ContentBlob.class));
+        assertNull(blobStore.put(null));
+    }
+
+    @Test
+    void readsBackWhatWasStored() {
+        String text = "Suggestions: use a ß-free ✓ name\n".repeat(50);
+        String hash = blobStore.put(text);
+
+        // A fresh store has nothing cached and inflates the stored bytes
+        assertEquals(text, newStore().get(hash));
+        assertEquals(text, blobStore.get(hash));
+        assertNull(blobStore.get(null));
+        assertNull(newStore().get(BlobStore.hash(new byte[0])));
+    }
+
+    @Test
+    void readsManyBlobsWithOneQueryWithoutCachingThem() {
+        String a = blobStore.put("first body");
+        String b = blobStore.put("second body");
+        when(mongoTemplate.find(any(Query.class), eq(ContentBlob.class))).thenAnswer(invocation -> {
+            Collection<?> ids = (Collection<?>) ((org.bson.Document) ((Query) invocation.getArgument(0)).getQueryObject().get("_id")).get("$in");
+            return ids.stream().map(blobs::get).filter(Objects::nonNull).toList();
+        });
+
+        BlobStore fresh = newStore();
+        Map<String, String> texts = fresh.getAll(List.of(a, b, a, BlobStore.hash(new byte[0])));
+
+        assertEquals(Map.of(a, "first body", b, "second body"), texts);
+        verify(mongoTemplate, times(1)).find(any(Query.class), eq(ContentBlob.class));
+        // Nothing was cached, so a single read still goes to the database
+        fresh.get(a);
+        verify(mongoTemplate, times(1)).findOne(any(Query.class), eq(ContentBlob.class));
+    }
+}
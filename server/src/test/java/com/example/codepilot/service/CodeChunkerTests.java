@@ -0,0 +1,72 @@
+package com.example.codepilot.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CodeChunkerTests {
+
+    private static String javaMethods(int count) {
+        StringBuilder code = new StringBuilder("import java.util.List;\n\npublic class Big {\n");
+        for (int i = 0; i < count; i++) {
+            code.append("    // method ").append(i).append('\n')
+                    .append("    int method").append(i).append("(int x) {\n")
+                    .append("        if (x > ").append(i).append(") {\n")
+                    .append("            return x * ").append(i).append(";\n")
+                    .append("        }\n")
+                    .append("        return \"}\".length() + x;\n")
+                    .append("    }\n\n");
+        }
+        return code.append("}\n").toString();
+    }
+
+    @Test
+    void chunksCoverTheInputWithinBudget() {
+        String code = javaMethods(60);
+        List<CodeChunker.Chunk> chunks = CodeChunker.split(code, "java", 200);
+
+        assertTrue(chunks.size() > 1);
+        assertEquals(code, chunks.stream().map(CodeChunker.Chunk::text).collect(Collectors.joining()));
+        for (CodeChunker.Chunk chunk : chunks) {
+            assertTrue(CodeChunker.estimateTokens(chunk.text()) <= 200, "chunk " + chunk.index() + " over budget");
+        }
+        for (int i = 1; i < chunks.size(); i++) {
+            assertEquals(chunks.get(i - 1).endLine() + 1, chunks.get(i).startLine());
+        }
+    }
+
+    @Test
+    void cutsBetweenMethodsNotInsideThem() {
+        List<CodeChunker.Chunk> chunks = CodeChunker.split(javaMethods(60), "java", 200);
+        for (CodeChunker.Chunk chunk : chunks.subList(0, chunks.size() - 1)) {
+            // Every piece ends after a method's closing brace and the blank line that follows it
+            assertTrue(chunk.text().endsWith("    }\n\n"), () -> "bad cut:\n" + chunk.text());
+        }
+    }
+
+    @Test
+    void indentedLanguagesCutAtTopLevelDefinitions() {
+        StringBuilder code = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            code.append("def f").append(i).append("(x):\n")
+                    .append("    y = {'a': x}\n")
+                    .append("    return y['a'] + ").append(i).append("\n\n");
+        }
+        List<CodeChunker.Chunk> chunks = CodeChunker.split(code.toString(), "Python", 100);
+        assertTrue(chunks.size() > 1);
+        for (CodeChunker.Chunk chunk : chunks) {
+            assertTrue(chunk.text().startsWith("def "), () -> "bad cut:\n" + chunk.text());
+        }
+    }
+
+    @Test
+    void overlongLinesAreSplit() {
+        String code = "x".repeat(1000);
+        List<CodeChunker.Chunk> chunks = CodeChunker.split(code, "java", 100);
+        assertEquals(3, chunks.size());
+        assertEquals(code, chunks.stream().map(CodeChunker.Chunk::text).collect(Collectors.joining()));
+    }
+}
@@ -0,0 +1,94 @@
+package com.example.codepilot.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class CodeFingerprintTests {
+
+    private static final String SUM = """
+            int sum(int[] values) {
+                int total = 0;
+                for (int i = 0; i < values.length; i++) {
+                    total += values[i];
+                }
+                return total;
+            }
+            """;
+
+    private static double jaccard(String a, String b, String language) {
+        return CodeFingerprint.of(a, language).jaccard(CodeFingerprint.of(b, language));
+    }
+
+    @Test
+    void ignoresWhitespaceAndLayout() {
+        String reformatted = "int sum(int[] values){int total=0;\n\n  for(int i=0;i<values.length;i++)"
+                + "{ total+=values[i]; }\treturn total;}";
+        assertEquals(1.0, jaccard(SUM, reformatted, "java"));
+        assertEquals(CodeFingerprint.of(SUM, "java").simHash(), CodeFingerprint.of(reformatted, "java").simHash());
+    }
+
+    @Test
+    void ignoresComments() {
+        String commented = "/* Adds up\n   the values */\n" + SUM.replace("int total = 0;", "int total = 0; // running sum");
+        assertEquals(1.0, jaccard(SUM, commented, "java"));
+
+        String python = "def f(x):\n    return x + 1\n";
+        assertEquals(1.0, jaccard(python, "# increments\ndef f(x):  # the value\n    return x + 1\n", "python"));
+    }
+
+    @Test
+    void ignoresRenamedIdentifiersAndLiterals() {
+        String renamed = SUM.replace("sum", "addAll").replace("values", "xs").replace("total", "acc")
+                .replace("i", "k").replace("0", "42");
+        assertEquals(1.0, jaccard(SUM, renamed, "java"));
+    }
+
+    @Test
+    void tellsDifferentCodeApart() {
+        String other = """
+                String join(List<String> parts) {
+                    StringBuilder out = new StringBuilder();
+                    while (!parts.isEmpty()) {
+                        out.append(parts.remove(0)).append(',');
+                    }
+                    return out.toString();
+                }
+                """;
+        assertTrue(jaccard(SUM, other, "java") < 0.3);
+        assertTrue(CodeFingerprint.hammingDistance(CodeFingerprint.of(SUM, "java").simHash(),
+                CodeFingerprint.of(other, "java").simHash()) > 3);
+    }
+
+    @Test
+    void sketchIsExactForSmallSnippets() {
+        String edited = SUM.replace("return total;", "if (total < 0) throw new IllegalStateException();\n    return total;");
+        CodeFingerprint a = CodeFingerprint.of(SUM, "java");
+        CodeFingerprint b = CodeFingerprint.of(edited, "java");
+        assertTrue(a.sketch().length < CodeFingerprint.SKETCH_SIZE);
+        assertEquals(a.jaccard(b), CodeFingerprint.estimateJaccard(a.sketch(), b.sketch()), 1e-9);
+        assertArrayEquals(a.sketch(), CodeFingerprint.decodeSketch(CodeFingerprint.encodeSketch(a.sketch())));
+    }
+
+    @Test
+    void sketchEstimatesJaccardOfLargeSnippets() {
+        // Two long random token streams sharing a known part; the estimate stays close to the exact value
+        Random random = new Random(7);
+        StringBuilder shared = new StringBuilder();
+        for (int i = 0; i < 3000; i++) {
+            shared.append(random.nextInt(8) < 6 ? "x" : "if").append(" +-*/<>=!&|%^~?:".charAt(random.nextInt(16))).append(' ');
+        }
+        StringBuilder extra = new StringBuilder();
+        for (int i = 0; i < 300; i++) {
+            extra.append("while ").append("{}[]();,.".charAt(random.nextInt(9))).append(' ');
+        }
+        CodeFingerprint a = CodeFingerprint.of(shared.toString(), "java");
+        CodeFingerprint b = CodeFingerprint.of(shared + extra.toString(), "java");
+
+        assertEquals(CodeFingerprint.SKETCH_SIZE, a.sketch().length);
+        assertEquals(a.jaccard(b), CodeFingerprint.estimateJaccard(a.sketch(), b.sketch()), 0.15);
+        assertEquals(1.0, CodeFingerprint.estimateJaccard(a.sketch(), a.sketch()));
+    }
+}
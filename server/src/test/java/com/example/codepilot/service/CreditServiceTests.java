@@ -0,0 +1,119 @@
+package com.example.codepilot.service;
+
+import com.example.codepilot.models.User;
+import io.micrometer.observation.ObservationRegistry;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class CreditServiceTests {
+
+    private final Map<String, Document> users = new ConcurrentHashMap<>();
+    private final CreditService creditService = new CreditService();
+
+    // Applies the conditional $inc atomically per document, as Mongo's findAndModify does
+    private User findAndModify(Query query, Update update) {
+        Document filter = query.getQueryObject();
+        Document inc = (Document) update.getUpdateObject().get("$inc");
+        User[] result = new User[1];
+        users.computeIfPresent(filter.getString("_id"), (id, document) -> {
+            Document credits = filter.get("credits", Document.class);
+            if (credits != null && document.getInteger("credits") <= credits.getInteger("$gt")) {
+                return document;
+            }
+            Document updated = new Document(document);
+            inc.forEach((field, amount) -> updated.put(field, ((Number) updated.get(field)).doubleValue()
+                    + ((Number) amount).doubleValue()));
+            updated.put("credits", updated.getDouble("credits").intValue());
+            User user = new User();
+            user.setId(id);
+            user.setCredits(updated.getInteger("credits"));
+            result[0] = user;
+            return updated;
+        });
+        return result[0];
+    }
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+
+    @BeforeEach
+    void setUp() {
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+                eq(User.class))).thenAnswer(invocation -> findAndModify(invocation.getArgument(0),
+                invocation.getArgument(1)));
+        ReflectionTestUtils.setField(creditService, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(creditService, "usageRollups", mock(UsageRollups.class));
+        ReflectionTestUtils.setField(creditService, "observationRegistry", ObservationRegistry.NOOP);
+    }
+
+    private int credits(String userId) {
+        return users.get(userId).getInteger("credits");
+    }
+
+    // Everything rests on Mongo applying the guarded $inc atomically, so check exactly what is sent
+    @Test
+    void reserveTakesOneCreditWithAGuardedAtomicUpdate() {
+        users.put("u1", new Document("_id", "u1").append("credits", 5).append("totalSpent", 0.0));
+        assertEquals(4, creditService.reserve("u1").getRemaining());
+
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        ArgumentCaptor<FindAndModifyOptions> options = ArgumentCaptor.forClass(FindAndModifyOptions.class);
+        verify(mongoTemplate).findAndModify(query.capture(), update.capture(), options.capture(), eq(User.class));
+        assertEquals(new Document("_id", "u1").append("credits", new Document("$gt", 0)),
+                query.getValue().getQueryObject());
+        assertEquals(new Document("credits", 1), query.getValue().getFieldsObject());
+        assertEquals(new Document("$inc", new Document("credits", -1)), update.getValue().getUpdateObject());
+        assertTrue(options.getValue().isReturnNew());
+        assertFalse(options.getValue().isUpsert());
+    }
+
+    @Test
+    void releaseRefundsOnceAndSettleNever() {
+        users.put("u1", new Document("_id", "u1").append("credits", 5).append("totalSpent", 0.0));
+        CreditService.Reservation failed = creditService.reserve("u1");
+        failed.release();
+        failed.release();
+        CreditService.Reservation done = creditService.reserve("u1");
+        done.settle();
+        done.release();
+
+        assertEquals(4, credits("u1"));
+        ArgumentCaptor<Query> query = ArgumentCaptor.forClass(Query.class);
+        ArgumentCaptor<Update> update = ArgumentCaptor.forClass(Update.class);
+        verify(mongoTemplate, times(3)).findAndModify(query.capture(), update.capture(),
+                any(FindAndModifyOptions.class), eq(User.class));
+        // The refund is unguarded: it must land even if the balance moved in between
+        assertEquals(new Document("_id", "u1"), query.getAllValues().get(1).getQueryObject());
+        assertEquals(new Document("$inc", new Document("credits", 1)), update.getAllValues().get(1).getUpdateObject());
+    }
+
+    @Test
+    void reservesOnlyWhileCreditsAreLeft() {
+        users.put("u2", new Document("_id", "u2").append("credits", 1).append("totalSpent", 0.0));
+        CreditService.Reservation reservation = creditService.reserve("u2");
+        assertEquals(0, reservation.getRemaining());
+        assertNull(creditService.reserve("u2"));
+        assertNull(creditService.reserve("missing"));
+
+        assertEquals(100, creditService.addCredits("u2", 100, 50.0));
+        assertEquals(50.0, users.get("u2").getDouble("totalSpent"));
+    }
+}
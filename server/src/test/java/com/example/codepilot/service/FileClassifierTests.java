@@ -0,0 +1,108 @@
+package com.example.codepilot.service;
+
+import com.example.codepilot.service.FileClassifier.SkipReason;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class FileClassifierTests {
+
+    // Classifier with the defaults from application.properties
+    static FileClassifier classifier() {
+        FileClassifier classifier = new FileClassifier();
+        ReflectionTestUtils.setField(classifier, "maxFileBytes", 200_000L);
+        ReflectionTestUtils.setField(classifier, "maxLineLength", 1500);
+        ReflectionTestUtils.setField(classifier, "maxAverageLineLength", 200);
+        ReflectionTestUtils.setField(classifier, "maxEntropy", 5.9);
+        return classifier;
+    }
+
+    private final FileClassifier classifier = classifier();
+
+    private FileClassifier.Result classify(String path, String content) {
+        return classifier.classifyContent(path, content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void appliesGitignoreRulesPerDirectory() {
+        FileClassifier.Rules rules = new FileClassifier.Rules();
+        rules.add(".gitignore", "# build output\nbuild/\n*.gen.java\n/scratch.py\n");
+        rules.add("tools/.gitignore", "!keep.gen.java\n");
+
+        assertEquals(SkipReason.IGNORED, classifier.classifyPath("build/Main.java", 10, false, rules));
+        assertEquals(SkipReason.IGNORED, classifier.classifyPath("app/build/x/Main.java", 10, false, rules));
+        assertEquals(SkipReason.IGNORED, classifier.classifyPath("src/Foo.gen.java", 10, false, rules));
+        assertEquals(SkipReason.IGNORED, classifier.classifyPath("scratch.py", 10, false, rules));
+        assertNull(classifier.classifyPath("src/scratch.py", 10, false, rules));
+        assertNull(classifier.classifyPath("tools/keep.gen.java", 10, false, rules));
+        assertNull(classifier.classifyPath("src/buildinfo/Main.java", 10, false, rules));
+    }
+
+    @Test
+    void gitattributesOverrideTheDefaultPaths() {
+        FileClassifier.Rules rules = new FileClassifier.Rules();
+        assertEquals(SkipReason.VENDORED, classifier.classifyPath("vendor/lib/util.go", 10, false, rules));
+        assertEquals(SkipReason.GENERATED, classifier.classifyPath("api/service.pb.go", 10, false, rules));
+        assertEquals(SkipReason.MINIFIED, classifier.classifyPath("static/app.min.js", 10, false, rules));
+
+        rules.add(".gitattributes", "vendor/** -linguist-vendored\nsrc/gen/** linguist-generated=true\n");
+        assertNull(classifier.classifyPath("vendor/lib/util.go", 10, false, rules));
+        assertEquals(SkipReason.GENERATED, classifier.classifyPath("src/gen/Model.java", 10, false, rules));
+    }
+
+    @Test
+    void checksLanguageAndSizeFromThePath() {
+        FileClassifier.Rules rules = new FileClassifier.Rules();
+        assertEquals(SkipReason.UNSUPPORTED_LANGUAGE, classifier.classifyPath("README.md", 10, true, rules));
+        assertEquals(SkipReason.UNSUPPORTED_LANGUAGE, classifier.classifyPath("bin/deploy", 10, false, rules));
+        assertNull(classifier.classifyPath("bin/deploy", 10, true, rules));
+        assertEquals(SkipReason.TOO_LARGE, classifier.classifyPath("Big.java", 300_000, false, rules));
+        assertNull(classifier.classifyPath("Unknown.java", -1, false, rules));
+    }
+
+    @Test
+    void detectsScriptsFromTheirShebang() {
+        assertEquals("python", classify("bin/deploy", "#!/usr/bin/env python3.11\nprint('hi')\n").language());
+        assertEquals("shell", classify("bin/run", "#!/bin/bash -e\necho hi\n").language());
+        assertEquals("javascript", classify("cli", "#!/usr/bin/env -S node --no-warnings\n").language());
+        assertEquals(SkipReason.UNSUPPORTED_LANGUAGE, classify("LICENSE", "MIT License\n").skipReason());
+    }
+
+    @Test
+    void rejectsContentThatIsNotWorthReviewing() {
+        assertEquals(SkipReason.BINARY, classify("blob.c", "int x;\0\0\0").skipReason());
+
+        String minified = "var a=1;".repeat(400);
+        assertEquals(SkipReason.MINIFIED, classify("bundle.js", minified).skipReason());
+
+        byte[] random = new byte[16 * 1024];
+        new Random(42).nextBytes(random);
+        String encoded = "const data = \"" + Base64.getEncoder().encodeToString(random) + "\";\n";
+        assertEquals(SkipReason.HIGH_ENTROPY, classify("data.js", encoded).skipReason());
+
+        assertEquals(SkipReason.GENERATED,
+                classify("model.go", "// Code generated by protoc-gen-go. DO NOT EDIT.\npackage model\n").skipReason());
+
+        assertEquals(SkipReason.GENERATED,
+                classify("Schema.java", "/**\n * Autogenerated schema.\n *\n * @generated\n */\nclass Schema {}\n").skipReason());
+        assertEquals(SkipReason.GENERATED, classify("schema.py", "# @generated by thrift\nX = 1\n").skipReason());
+        assertEquals(SkipReason.GENERATED,
+                classify("Form.cs", "// <auto-generated>\n//   Tool output\n// </auto-generated>\nclass Form {}\n").skipReason());
+
+        // Phrases that merely mention generation are ordinary code
+        assertNull(classify("config.go", "// Do not edit this by hand, ask the platform team.\npackage config\n").skipReason());
+        assertNull(classify("ids.py", "# IDs are auto-generated by the database\nNEXT_ID = None\n").skipReason());
+        assertNull(classify("Tag.java", "class Tag {\n    String marker = \"@generated\";\n}\n").skipReason());
+        assertNull(classify("gen.go", "package gen\n\nconst header = \"// Code generated by gen. DO NOT EDIT.\"\n").skipReason());
+
+        String source = "public class Main {\n    void run() {\n        System.out.println(\"hi\");\n    }\n}\n";
+        FileClassifier.Result result = classify("Main.java", source.repeat(30));
+        assertNull(result.skipReason());
+        assertEquals("java", result.language());
+    }
+}
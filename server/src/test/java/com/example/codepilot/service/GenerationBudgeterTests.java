@@ -0,0 +1,57 @@
+package com.example.codepilot.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GenerationBudgeterTests {
+
+    private final GenerationBudgeter budgeter = new GenerationBudgeter();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(budgeter, "minCtx", 1024);
+        ReflectionTestUtils.setField(budgeter, "maxCtx", 8192);
+        ReflectionTestUtils.setField(budgeter, "suggestionsTokens", 512);
+        ReflectionTestUtils.setField(budgeter, "suggestionsTokensByLanguage", "Java=768");
+        ReflectionTestUtils.setField(budgeter, "correctedCodeRatio", 1.25);
+        ReflectionTestUtils.setField(budgeter, "correctedCodeRatioByLanguage", "python=1.0, go = 2");
+        budgeter.init();
+    }
+
+    @Test
+    void smallPromptsGetTheMinimumContext() {
+        GenerationOptions options = budgeter.forSuggestions("python", "x".repeat(400));
+        assertEquals(1024, options.numCtx());
+        assertEquals(512, options.numPredict());
+        assertEquals(100, options.estimatedPromptTokens());
+        assertFalse(options.stopAfterCodeBlock());
+    }
+
+    @Test
+    void contextIsRoundedUpToAPowerOfTwo() {
+        String code = "y".repeat(8000);
+        GenerationOptions options = budgeter.forCorrectedCode("go", "prompt " + code, code);
+        // 2002 prompt tokens + 15% margin + 4032 output tokens
+        assertEquals(4032, options.numPredict());
+        assertEquals(8192, options.numCtx());
+        assertTrue(options.stopAfterCodeBlock());
+    }
+
+    @Test
+    void languageOverridesApply() {
+        assertEquals(768, budgeter.forSuggestions("java", "code").numPredict());
+        String code = "z".repeat(2000);
+        assertEquals(532, budgeter.forCorrectedCode("Python", code, code).numPredict());
+    }
+
+    @Test
+    void outputIsCappedToFitTheLargestContext() {
+        String code = "w".repeat(24000);
+        GenerationOptions options = budgeter.forCorrectedCode("java", code, code);
+        assertEquals(8192, options.numCtx());
+        assertEquals(8192 - (int) Math.ceil(6000 * 1.15), options.numPredict());
+    }
+}
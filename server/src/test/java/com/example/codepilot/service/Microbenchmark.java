@@ -0,0 +1,27 @@
+package com.example.codepilot.service;
+
+/**
+ * Timing helper for the main-method benchmarks in this package (ReviewPostProcessorBenchmark,
+ * BlobStoreBenchmark). They are not tests; run one with
+ * {@code mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/classpath.txt}, then
+ * {@code java -cp target/classes:target/test-classes:$(cat target/classpath.txt) com.example.codepilot.service.<Benchmark>},
+ * or straight from the IDE.
+ */
+final class Microbenchmark {
+
+    private Microbenchmark() {
+    }
+
+    // Warms up with a quarter of the iterations, then prints the mean time per run
+    static void measure(String name, int iterations, Runnable task) {
+        for (int i = 0; i < iterations / 4; i++) task.run();
+
+        Runtime runtime = Runtime.getRuntime();
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) task.run();
+        long elapsed = System.nanoTime() - start;
+
+        System.out.printf("%-26s %8.1f us/op  (heap in use %d MB)%n", name,
+                elapsed / 1000.0 / iterations, (runtime.totalMemory() - runtime.freeMemory()) >> 20);
+    }
+}
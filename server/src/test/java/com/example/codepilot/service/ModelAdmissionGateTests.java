@@ -0,0 +1,97 @@
+package com.example.codepilot.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ModelAdmissionGateTests {
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private ModelAdmissionGate gate;
+
+    // One backend running one generation at a time, with room for one waiter
+    @BeforeEach
+    void setUp() {
+        OllamaBackendPool backendPool = mock(OllamaBackendPool.class);
+        when(backendPool.size()).thenReturn(1);
+        gate = new ModelAdmissionGate();
+        ReflectionTestUtils.setField(gate, "backendPool", backendPool);
+        ReflectionTestUtils.setField(gate, "serverMetrics", mock(ServerMetrics.class));
+        ReflectionTestUtils.setField(gate, "maxInFlightPerBackend", 1);
+        ReflectionTestUtils.setField(gate, "maxQueue", 1);
+        ReflectionTestUtils.setField(gate, "queueTimeoutMs", 10_000L);
+        gate.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    private long stat(String name) {
+        return ((Number) gate.getStats().get(name)).longValue();
+    }
+
+    private void awaitQueueDepth(int depth) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (stat("queueDepth") != depth) {
+            assertTrue(System.nanoTime() < deadline, "queue never reached " + depth);
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    void rejectsAtOnceWhenTheQueueIsFull() throws Exception {
+        ModelAdmissionGate.Permit running = gate.acquire();
+        assertFalse(gate.isSaturated());
+        Future<?> waiter = executor.submit(() -> {
+            gate.acquire().close();
+            return null;
+        });
+        awaitQueueDepth(1);
+        assertTrue(gate.isSaturated());
+
+        long start = System.nanoTime();
+        ModelOverloadedException e = assertThrows(ModelOverloadedException.class, gate::acquire);
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+        assertEquals("Model queue is full", e.getMessage());
+        assertTrue(e.getRetryAfterSeconds() >= 1);
+
+        running.close();
+        waiter.get(5, TimeUnit.SECONDS);
+        assertFalse(gate.isSaturated());
+        assertEquals(2, stat("admitted"));
+        assertEquals(1, stat("rejected"));
+        assertEquals(0, stat("inFlight"));
+    }
+
+    @Test
+    void rejectsAWaiterAfterTheQueueTimeout() throws Exception {
+        ReflectionTestUtils.setField(gate, "queueTimeoutMs", 50L);
+        ModelAdmissionGate.Permit running = gate.acquire();
+        ModelOverloadedException e = assertThrows(ModelOverloadedException.class, gate::acquire);
+        assertTrue(e.getMessage().startsWith("Timed out after 50 ms"));
+        assertEquals(1, stat("inFlight"));
+        running.close();
+        assertEquals(0, stat("queueDepth"));
+        assertTrue(stat("maxWaitMs") >= 50);
+
+        // Closing a permit twice must not hand out a second slot
+        ModelAdmissionGate.Permit permit = gate.acquire();
+        permit.close();
+        permit.close();
+        assertEquals(1, gate.getStats().get("maxInFlight"));
+        gate.acquire();
+        assertThrows(ModelOverloadedException.class, gate::acquire);
+    }
+}
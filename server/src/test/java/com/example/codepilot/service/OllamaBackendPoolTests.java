@@ -0,0 +1,104 @@
+package com.example.codepilot.service;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OllamaBackendPoolTests {
+
+    private HttpServer first;
+    private HttpServer second;
+    private final AtomicInteger secondStatus = new AtomicInteger(200);
+    private OllamaBackendPool pool;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        // Two stub Ollama nodes answering the health probe
+        first = stub(new AtomicInteger(200));
+        second = stub(secondStatus);
+        pool = new OllamaBackendPool();
+        ReflectionTestUtils.setField(pool, "baseUrls", url(first) + "," + url(second));
+        ReflectionTestUtils.setField(pool, "failureThreshold", 2);
+        ReflectionTestUtils.setField(pool, "ejectCooldownMs", 0L);
+        ReflectionTestUtils.setField(pool, "healthTimeoutMs", 1000L);
+        pool.init();
+    }
+
+    @AfterEach
+    void tearDown() {
+        first.stop(0);
+        second.stop(0);
+    }
+
+    @Test
+    void routesToBackendWithFewestOutstandingRequests() {
+        OllamaBackendPool.Backend a = pool.acquire();
+        OllamaBackendPool.Backend b = pool.acquire();
+        assertNotEquals(a.getUrl(), b.getUrl());
+
+        pool.release(a, true);
+        OllamaBackendPool.Backend c = pool.acquire();
+        assertEquals(a.getUrl(), c.getUrl());
+        assertEquals(1, a.getOutstanding());
+        assertEquals(1, b.getOutstanding());
+    }
+
+    @Test
+    void ejectsFailingBackendAndReadmitsItAfterHealthyProbe() {
+        OllamaBackendPool.Backend secondBackend = null;
+        for (int i = 0; i < 4; i++) {
+            OllamaBackendPool.Backend backend = pool.acquire();
+            boolean isSecond = backend.getUrl().equals(url(second));
+            if (isSecond) secondBackend = backend;
+            pool.release(backend, !isSecond);
+        }
+        assertNotNull(secondBackend);
+
+        Set<String> routed = new HashSet<>();
+        for (int i = 0; i < 4; i++) {
+            OllamaBackendPool.Backend backend = pool.acquire();
+            routed.add(backend.getUrl());
+            pool.release(backend, true);
+        }
+        assertEquals(Set.of(url(first)), routed);
+
+        pool.checkHealth();
+        OllamaBackendPool.Backend a = pool.acquire();
+        OllamaBackendPool.Backend b = pool.acquire();
+        assertEquals(Set.of(url(first), url(second)), Set.of(a.getUrl(), b.getUrl()));
+    }
+
+    @Test
+    void healthProbeFailureEjectsBackend() {
+        secondStatus.set(500);
+        pool.checkHealth();
+        for (int i = 0; i < 3; i++) {
+            OllamaBackendPool.Backend backend = pool.acquire();
+            assertEquals(url(first), backend.getUrl());
+        }
+    }
+
+    private static HttpServer stub(AtomicInteger status) throws IOException {
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/api/tags", exchange -> {
+            exchange.sendResponseHeaders(status.get(), -1);
+            exchange.close();
+        });
+        server.start();
+        return server;
+    }
+
+    private static String url(HttpServer server) {
+        return "http://127.0.0.1:" + server.getAddress().getPort();
+    }
+}
@@ -0,0 +1,405 @@
+package com.example.codepilot.service;
+
+import com.example.codepilot.models.FileReview;
+import com.example.codepilot.models.RepositoryAnalysis;
+import com.example.codepilot.models.RepositoryFileEntry;
+import com.example.codepilot.models.Review;
+import com.example.codepilot.models.ReviewResult;
+import com.example.codepilot.models.User;
+import com.example.codepilot.repository.RepositoryFileRepository;
+import io.micrometer.observation.ObservationRegistry;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class RepositoryAnalysisServiceTests {
+
+    // In-memory repository standing in for the GitHub API
+    static class StubGitHubClient implements GitHubClient {
+        final Map<String, byte[]> blobs = new ConcurrentHashMap<>();
+        final List<TreeEntry> entries = new ArrayList<>();
+        final AtomicInteger fetching = new AtomicInteger();
+        final AtomicInteger maxFetching = new AtomicInteger();
+        final AtomicInteger fetches = new AtomicInteger();
+
+        void add(String path, String content) {
+            String sha = RepositoryAnalysisService.gitBlobSha(content.getBytes(StandardCharsets.UTF_8));
+            blobs.put(sha, content.getBytes(StandardCharsets.UTF_8));
+            entries.removeIf(entry -> entry.path().equals(path));
+            entries.add(new TreeEntry(path, sha, content.length(), false));
+        }
+
+        @Override
+        public Tree listTree(GitHubRepository repository) {
+            return new Tree(repository.ref() != null ? repository.ref() : "main", "c0ffee", entries, false);
+        }
+
+        @Override
+        public byte[] fetchBlob(GitHubRepository repository, String sha) throws IOException, InterruptedException {
+            fetches.incrementAndGet();
+            maxFetching.accumulateAndGet(fetching.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(2);
+                if (!blobs.containsKey(sha)) {
+                    throw new IOException("GitHub returned HTTP 404");
+                }
+                return blobs.get(sha);
+            } finally {
+                fetching.decrementAndGet();
+            }
+        }
+
+        @Override
+        public InputStream openTarball(GitHubRepository repository) throws IOException {
+            Map<String, String> files = new LinkedHashMap<>();
+            for (TreeEntry entry : entries) {
+                files.put(entry.path(), new String(blobs.get(entry.sha()), StandardCharsets.UTF_8));
+            }
+            return new ByteArrayInputStream(ArchiveReaderTests.tarGz("acme-widgets-c0ffee", "c0ffee", files));
+        }
+    }
+
+    private final StubGitHubClient gitHub = new StubGitHubClient();
+    private final ReviewService reviewService = mock(ReviewService.class);
+    private final Map<String, RepositoryFileEntry> indexed = new ConcurrentHashMap<>();
+    private final AtomicInteger balance = new AtomicInteger();
+    private final AtomicInteger reviewing = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+    private ThreadPoolTaskExecutor fetchExecutor;
+    private ThreadPoolTaskExecutor reviewExecutor;
+    private RepositoryAnalysisService service;
+
+    private static ThreadPoolTaskExecutor executor(int threads) {
+        ThreadPoolTaskExecutor executor = new ThreadPoolTaskExecutor();
+        executor.setCorePoolSize(threads);
+        executor.setMaxPoolSize(threads);
+        executor.setQueueCapacity(1000);
+        executor.initialize();
+        return executor;
+    }
+
+    @BeforeEach
+    void setUp() {
+        fetchExecutor = executor(4);
+        reviewExecutor = executor(8);
+        service = new RepositoryAnalysisService();
+        ReflectionTestUtils.setField(service, "gitHubClient", gitHub);
+        ReflectionTestUtils.setField(service, "reviewService", reviewService);
+        ReflectionTestUtils.setField(service, "fetchExecutor", fetchExecutor);
+        ReflectionTestUtils.setField(service, "repositoryReviewExecutor", reviewExecutor);
+        ReflectionTestUtils.setField(service, "fetchParallelism", 4);
+        ReflectionTestUtils.setField(service, "reviewParallelism", 2);
+        ReflectionTestUtils.setField(service, "reviewAttempts", 1);
+        ReflectionTestUtils.setField(service, "maxFiles", 500);
+        ReflectionTestUtils.setField(service, "fileClassifier", FileClassifierTests.classifier());
+        ReflectionTestUtils.setField(service, "analysisTimeoutMs", 60_000L);
+        ReflectionTestUtils.setField(service, "maxArchiveBytes", 1L << 30);
+
+        // Real index over an in-memory collection
+        RepositoryFileRepository repositoryFiles = mock(RepositoryFileRepository.class);
+        when(repositoryFiles.findByUserIdAndRepository(anyString(), anyString())).thenAnswer(invocation ->
+                indexed.values().stream().filter(entry -> entry.getUserId().equals(invocation.getArgument(0))
+                        && entry.getRepository().equals(invocation.getArgument(1))).toList());
+        when(repositoryFiles.save(any())).thenAnswer(invocation -> {
+            RepositoryFileEntry entry = invocation.getArgument(0);
+            indexed.put(entry.getId(), entry);
+            return entry;
+        });
+        when(repositoryFiles.deleteByUserIdAndRepositoryAndPathNotIn(anyString(), anyString(), any())).thenAnswer(invocation -> {
+            Collection<String> paths = invocation.getArgument(2);
+            return (long) (indexed.values().removeIf(entry -> entry.getUserId().equals(invocation.getArgument(0))
+                    && !paths.contains(entry.getPath())) ? 1 : 0);
+        });
+        OllamaClient ollamaClient = mock(OllamaClient.class);
+        when(ollamaClient.getModel()).thenReturn("test-model");
+        RepositoryIndex repositoryIndex = new RepositoryIndex();
+        ReflectionTestUtils.setField(repositoryIndex, "repositoryFileRepository", repositoryFiles);
+        ReflectionTestUtils.setField(repositoryIndex, "ollamaClient", ollamaClient);
+        ReflectionTestUtils.setField(service, "repositoryIndex", repositoryIndex);
+
+        // Credits of the one test user, charged and refunded like the atomic $inc in Mongo
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+                eq(User.class))).thenAnswer(invocation -> {
+            Update update = invocation.getArgument(1);
+            int change = ((Number) ((Document) update.getUpdateObject().get("$inc")).get("credits")).intValue();
+            synchronized (balance) {
+                if (balance.get() + change < 0) {
+                    return null;
+                }
+                User user = new User();
+                user.setCredits(balance.addAndGet(change));
+                return user;
+            }
+        });
+        CreditService creditService = new CreditService();
+        ReflectionTestUtils.setField(creditService, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(creditService, "usageRollups", mock(UsageRollups.class));
+        ReflectionTestUtils.setField(creditService, "observationRegistry", ObservationRegistry.NOOP);
+        ReflectionTestUtils.setField(service, "creditService", creditService);
+        when(reviewService.save(anyString(), anyString(), anyString(), any())).thenAnswer(invocation -> {
+            Review review = new Review();
+            review.setId("r-" + invocation.getArgument(0) + "-" + invocation.getArgument(2));
+            return review;
+        });
+
+        when(reviewService.review(any(), anyString(), anyString())).thenAnswer(invocation -> {
+            int inFlight = reviewing.incrementAndGet() + gitHub.fetching.get();
+            maxInFlight.accumulateAndGet(inFlight, Math::max);
+            try {
+                Thread.sleep(5);
+            } finally {
+                reviewing.decrementAndGet();
+            }
+            ReviewResult result = new ReviewResult();
+            String code = invocation.getArgument(1);
+            if (code.contains("explode")) {
+                result.setSuggestionsError("model error");
+                result.setCorrectedCodeError("model error");
+            } else {
+                result.setSuggestions("ok");
+                result.setCorrectedCode(code);
+            }
+            return result;
+        });
+        when(reviewService.toResponse(any())).thenAnswer(invocation ->
+                Map.of("review", ((ReviewResult) invocation.getArgument(0)).getSuggestions()));
+    }
+
+    private User user(String id) {
+        User user = new User();
+        user.setId(id);
+        balance.addAndGet(1000);
+        return user;
+    }
+
+    @AfterEach
+    void tearDown() {
+        fetchExecutor.shutdown();
+        reviewExecutor.shutdown();
+    }
+
+    @Test
+    void reviewsEveryReviewableFileWithinTheWindow() throws Exception {
+        for (int i = 0; i < 60; i++) {
+            gitHub.add("src/File" + i + ".java", "class File" + i + " {}");
+        }
+        gitHub.add("README.md", "# readme");
+        gitHub.add("logo.png", "\u0089PNG");
+
+        RepositoryAnalysis analysis = service.analyze("https://github.com/acme/widgets", null);
+
+        assertEquals("acme/widgets", analysis.getRepository());
+        assertEquals("main", analysis.getRef());
+        assertEquals(60, analysis.getReviewed());
+        assertEquals(2, analysis.getSkipped());
+        assertEquals(0, analysis.getFailed());
+        assertTrue(analysis.getFiles().stream().allMatch(file -> "java".equals(file.getLanguage())));
+        assertTrue(maxInFlight.get() <= 6, "in flight: " + maxInFlight.get());
+        assertTrue(gitHub.maxFetching.get() <= 4);
+    }
+
+    @Test
+    void failedFilesDoNotFailTheAnalysis() throws Exception {
+        gitHub.add("a.py", "print('a')");
+        gitHub.add("b.py", "explode()");
+        gitHub.entries.add(new GitHubClient.TreeEntry("c.py", "missing", 10, false));
+
+        RepositoryAnalysis analysis = service.analyze("acme/widgets/tree/feature/x", null);
+
+        assertEquals("feature/x", analysis.getRef());
+        assertEquals(1, analysis.getReviewed());
+        assertEquals(2, analysis.getFailed());
+        Map<String, String> errors = new ConcurrentHashMap<>();
+        for (FileReview file : analysis.getFiles()) {
+            if (file.getError() != null) errors.put(file.getPath(), file.getError());
+        }
+        assertEquals("model error", errors.get("b.py"));
+        assertEquals("GitHub returned HTTP 404", errors.get("c.py"));
+    }
+
+    @Test
+    void reanalysisOnlyReviewsChangedFiles() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            gitHub.add("src/F" + i + ".go", "package f" + i);
+        }
+        User user = user("u1");
+        RepositoryAnalysis first = service.analyze("https://github.com/Acme/Widgets", user);
+        assertEquals(10, first.getReviewed());
+        assertEquals(0, first.getReused());
+
+        gitHub.add("src/F3.go", "package f3 // changed");
+        gitHub.add("src/New.go", "package added");
+        gitHub.entries.removeIf(entry -> entry.path().equals("src/F9.go"));
+        gitHub.fetches.set(0);
+
+        RepositoryAnalysis second = service.analyze("acme/widgets", user);
+        assertEquals(2, second.getReviewed());
+        assertEquals(8, second.getReused());
+        assertEquals(2, gitHub.fetches.get());
+        verify(reviewService, times(12)).review(any(), anyString(), anyString());
+        assertTrue(second.getFiles().stream().filter(FileReview::isReused).allMatch(file -> file.getReview() != null));
+        assertFalse(indexed.containsKey("u1:acme/widgets:src/F9.go"));
+        assertEquals(10, indexed.size());
+    }
+
+    @Test
+    void reusesOnlyTheCallersOwnReviews() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            gitHub.add("src/F" + i + ".go", "package f" + i);
+        }
+        service.analyze("acme/widgets", user("alice"));
+
+        RepositoryAnalysis analysis = service.analyze("acme/widgets", user("bob"));
+        assertEquals(5, analysis.getReviewed());
+        assertEquals(0, analysis.getReused());
+        assertTrue(analysis.getFiles().stream().allMatch(file -> "r-bob-go".equals(file.getReviewId())));
+        verify(reviewService, times(5)).save(eq("bob"), anyString(), anyString(), any());
+
+        // Without a user there is no index to read or write
+        RepositoryAnalysis anonymous = service.analyze("acme/widgets", null);
+        assertEquals(0, anonymous.getReused());
+        assertEquals(10, indexed.size());
+    }
+
+    @Test
+    void tarballAnalysisSharesTheIndexWithTreeAnalysis() throws Exception {
+        for (int i = 0; i < 20; i++) {
+            gitHub.add("pkg/m" + i + ".py", "def m" + i + "(): pass");
+        }
+        gitHub.add("docs/guide.md", "# guide");
+        User user = user("u1");
+        service.analyze("acme/widgets", user);
+
+        gitHub.add("pkg/m7.py", "def m7(): return 7");
+        gitHub.fetches.set(0);
+        RepositoryAnalysis analysis = service.analyzeTarball("acme/widgets", user);
+
+        assertEquals("c0ffee", analysis.getCommitSha());
+        assertEquals(1, analysis.getReviewed());
+        assertEquals(19, analysis.getReused());
+        assertEquals(1, analysis.getSkipped());
+        assertEquals(0, gitHub.fetches.get());
+        verify(reviewService, times(21)).review(any(), anyString(), anyString());
+    }
+
+    @Test
+    void uploadedArchivesAreReviewedWithoutTheIndex() throws Exception {
+        Map<String, String> files = new LinkedHashMap<>();
+        for (int i = 0; i < 30; i++) {
+            files.put("src/f" + i + ".rs", "fn f" + i + "() {}");
+        }
+        byte[] archive = ArchiveReaderTests.tarGz("upload-root", null, files);
+
+        RepositoryAnalysis analysis = service.analyzeArchive("my-upload", new ByteArrayInputStream(archive), null);
+        assertEquals("my-upload", analysis.getRepository());
+        assertEquals(30, analysis.getReviewed());
+        assertTrue(indexed.isEmpty());
+        assertTrue(maxInFlight.get() <= 6, "in flight: " + maxInFlight.get());
+
+        assertThrows(IllegalArgumentException.class, () -> service.analyzeArchive("junk",
+                new ByteArrayInputStream("not an archive".getBytes(StandardCharsets.UTF_8)), null));
+    }
+
+    @Test
+    void skippedFilesAreCountedByReason() throws Exception {
+        gitHub.add(".gitignore", "out/\n");
+        gitHub.add(".gitattributes", "third_party/** -linguist-vendored\n");
+        gitHub.add("out/Main.java", "class Main {}");
+        gitHub.add("node_modules/lib/index.js", "module.exports = 1;");
+        gitHub.add("third_party/util.c", "int util(void);");
+        gitHub.add("api/service.pb.go", "package api");
+        gitHub.add("gen/Model.java", "// @generated\nclass Model {}");
+        gitHub.add("src/App.java", "class App {}");
+        gitHub.add("bin/deploy", "#!/usr/bin/env python3\nprint('deploy')\n");
+        gitHub.entries.replaceAll(entry -> entry.path().equals("bin/deploy")
+                ? new GitHubClient.TreeEntry(entry.path(), entry.sha(), entry.size(), true) : entry);
+
+        RepositoryAnalysis analysis = service.analyze("acme/widgets", null);
+
+        assertEquals(3, analysis.getReviewed());
+        assertEquals(Map.of("unsupported-language", 2, "ignored", 1, "vendored", 1, "generated", 2),
+                analysis.getSkippedByReason());
+        assertEquals(6, analysis.getSkipped());
+        assertEquals(List.of("bin/deploy", "src/App.java", "third_party/util.c"),
+                analysis.getFiles().stream().map(FileReview::getPath).sorted().toList());
+        assertTrue(analysis.getFiles().stream().anyMatch(file -> "python".equals(file.getLanguage())));
+    }
+
+    @Test
+    void chargesOneCreditPerReviewedFileAndStopsWhenTheyRunOut() throws Exception {
+        for (int i = 0; i < 10; i++) {
+            gitHub.add("src/F" + i + ".java", "class F" + i + " {}");
+        }
+        gitHub.add("src/Bad.java", "explode()");
+        User user = user("u1");
+        balance.set(6);
+
+        RepositoryAnalysis analysis = service.analyze("acme/widgets", user);
+
+        // The failed file was refunded, so the six credits pay for exactly six reviews
+        assertEquals(6, analysis.getReviewed());
+        assertEquals(0, balance.get());
+        assertEquals(0, analysis.getCreditsRemaining());
+        assertTrue(analysis.isOutOfCredits());
+        assertEquals(5, analysis.getFailed());
+        // Bad.java either failed in the model or was reached after the credits ran out
+        assertTrue(analysis.getFiles().stream()
+                .filter(file -> RepositoryAnalysisService.INSUFFICIENT_CREDITS.equals(file.getError())).count() >= 4);
+    }
+
+    @Test
+    void uploadedArchivesAreChargedPerReviewedFile() throws Exception {
+        Map<String, String> files = new LinkedHashMap<>();
+        for (int i = 0; i < 8; i++) {
+            files.put("src/f" + i + ".rs", "fn f" + i + "() {}");
+        }
+        files.put("README.md", "# not reviewed, not charged");
+        User user = user("u1");
+        balance.set(20);
+
+        RepositoryAnalysis analysis = service.analyzeArchive("my-upload",
+                new ByteArrayInputStream(ArchiveReaderTests.tarGz("upload-root", null, files)), user);
+
+        assertEquals(8, analysis.getReviewed());
+        assertEquals(12, balance.get());
+        assertEquals(12, analysis.getCreditsRemaining());
+        assertFalse(analysis.isOutOfCredits());
+    }
+
+    @Test
+    void parsesRepositoryUrls() {
+        assertEquals(new GitHubRepository("acme", "widgets", null), GitHubRepository.parse("https://github.com/acme/widgets.git"));
+        assertEquals(new GitHubRepository("acme", "widgets", null), GitHubRepository.parse("git@github.com:acme/widgets.git"));
+        assertEquals(new GitHubRepository("acme", "wid.gets", "v1.2"), GitHubRepository.parse("github.com/acme/wid.gets/tree/v1.2/"));
+        assertThrows(IllegalArgumentException.class, () -> GitHubRepository.parse("https://gitlab.com/acme/widgets"));
+    }
+}
@@ -0,0 +1,147 @@
+package com.example.codepilot.service;
+
+import com.example.codepilot.models.ReviewCacheEntry;
+import com.example.codepilot.models.ReviewResult;
+import com.example.codepilot.repository.ReviewCacheRepository;
+import com.mongodb.client.result.DeleteResult;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ReviewCacheTests {
+
+    private final Map<String, ReviewCacheEntry> stored = new ConcurrentHashMap<>();
+    private final ReviewCacheRepository repository = mock(ReviewCacheRepository.class);
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final OllamaClient ollamaClient = mock(OllamaClient.class);
+    private ReviewCache cache;
+
+    private ReviewCache newCache() {
+        ReviewCache cache = new ReviewCache();
+        ReflectionTestUtils.setField(cache, "reviewCacheRepository", repository);
+        ReflectionTestUtils.setField(cache, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(cache, "ollamaClient", ollamaClient);
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "maxEntries", 100L);
+        ReflectionTestUtils.setField(cache, "memoryTtlMinutes", 60L);
+        ReflectionTestUtils.setField(cache, "ttlHours", 168L);
+        cache.init();
+        return cache;
+    }
+
+    private static ReviewResult result(String suggestions, String correctedCode) {
+        ReviewResult result = new ReviewResult();
+        result.setSuggestions(suggestions);
+        result.setCorrectedCode(correctedCode);
+        return result;
+    }
+
+    private long stat(ReviewCache cache, String name) {
+        return ((Number) cache.getStats().get(name)).longValue();
+    }
+
+    @BeforeEach
+    void setUp() {
+        when(ollamaClient.getModel()).thenReturn("codellama");
+        when(repository.save(any(ReviewCacheEntry.class))).thenAnswer(invocation -> {
+            ReviewCacheEntry entry = invocation.getArgument(0);
+            stored.put(entry.getKey(), entry);
+            return entry;
+        });
+        when(repository.findById(anyString()))
+                .thenAnswer(invocation -> Optional.ofNullable(stored.get(invocation.<String>getArgument(0))));
+        cache = newCache();
+    }
+
+    @Test
+    void keyIgnoresLayoutButNotLanguageModelOrPromptVersion() throws Exception {
+        String key = cache.key("int x = 1;  \r\n\r\nint y;\n", "Java");
+        assertEquals(key, cache.key("\nint x = 1;\n\nint y;", " java "));
+        assertNotEquals(key, cache.key("int x = 2;\n\nint y;", "java"));
+        assertNotEquals(key, cache.key("int x = 1;\n\nint y;", "kotlin"));
+
+        // PROMPT_VERSION is hashed in, so bumping it moves every entry to a new key
+        assertEquals(sha256("int x = 1;\n\nint y;", "java", "codellama", ReviewService.PROMPT_VERSION), key);
+        assertNotEquals(key, sha256("int x = 1;\n\nint y;", "java", "codellama", ReviewService.PROMPT_VERSION + "1"));
+
+        when(ollamaClient.getModel()).thenReturn("llama3");
+        assertNotEquals(key, cache.key("int x = 1;\n\nint y;", "java"));
+    }
+
+    private static String sha256(String... parts) throws Exception {
+        MessageDigest digest = MessageDigest.getInstance("SHA-256");
+        for (String part : parts) {
+            digest.update(part.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    @Test
+    void servesFromMemoryThenFromMongoAfterARestart() {
+        cache.put("int x;", "java", result("1. Fine", "int x;"));
+
+        ReviewResult hit = cache.get("int x;", "java").orElseThrow();
+        assertTrue(hit.isCached());
+        assertEquals("1. Fine", hit.getSuggestions());
+        assertEquals(1, stat(cache, "memoryHits"));
+        verify(repository, never()).findById(anyString());
+
+        ReviewCache restarted = newCache();
+        assertEquals("int x;", restarted.get("int x;  ", "java").orElseThrow().getCorrectedCode());
+        assertEquals(1, stat(restarted, "persistentHits"));
+        assertTrue(restarted.get("int y;", "java").isEmpty());
+        assertEquals(1, stat(restarted, "misses"));
+    }
+
+    @Test
+    void skipsPartialResultsAndExpiredEntries() {
+        cache.put("a();", "java", result("1. Fine", null));
+        cache.put("b();", "java", result(null, "b();"));
+        assertTrue(stored.isEmpty());
+        assertTrue(cache.get("a();", "java").isEmpty());
+
+        cache.put("c();", "java", result("1. Fine", "c();"));
+        stored.values().forEach(entry -> entry.setExpiresAt(Instant.now().minusSeconds(1)));
+        assertTrue(newCache().get("c();", "java").isEmpty());
+    }
+
+    @Test
+    void purgesEntriesOfOlderPromptVersionsOnStartup() {
+        when(repository.deleteByPromptVersionNot(ReviewService.PROMPT_VERSION)).thenReturn(3L);
+        cache.dropStalePromptVersions();
+        verify(repository).deleteByPromptVersionNot(ReviewService.PROMPT_VERSION);
+
+        cache.put("d();", "java", result("1. Fine", "d();"));
+        assertEquals(ReviewService.PROMPT_VERSION, stored.values().iterator().next().getPromptVersion());
+    }
+
+    @Test
+    void invalidateAllReportsWhatTheDeleteRemoved() {
+        cache.put("e();", "java", result("1. Fine", "e();"));
+        when(mongoTemplate.remove(any(Query.class), eq(ReviewCacheEntry.class))).thenReturn(DeleteResult.acknowledged(7));
+
+        assertEquals(7, cache.invalidateAll());
+        assertEquals(0, stat(cache, "memoryEntries"));
+        verify(repository, never()).count();
+    }
+}
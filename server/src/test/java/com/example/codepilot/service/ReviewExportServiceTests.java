@@ -0,0 +1,150 @@
+package com.example.codepilot.service;
+
+import com.example.codepilot.models.Review;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ReviewExportServiceTests {
+
+    private final ReviewExportService exportService = new ReviewExportService();
+    private final AtomicReference<Query> lastQuery = new AtomicReference<>();
+    private final AtomicBoolean cursorClosed = new AtomicBoolean();
+
+    private final Map<String, String> blobs = new HashMap<>();
+    private final BlobStore blobStore = mock(BlobStore.class);
+
+    private static String code(int i) {
+        return "class A" + i + " {\n  String s = \"x\";\n}";
+    }
+
+    // Review 1 predates the BlobStore and keeps its bodies inline; the others store refs only
+    private ReviewExportService.Row row(int i) {
+        LocalDateTime timestamp = LocalDateTime.of(2024, 5, 1, 12, 0).minusMinutes(i);
+        if (i == 1) {
+            return new ReviewExportService.Row("r1", "u1", "java", timestamp, null, null, null, code(i), "1. Bug 1", null);
+        }
+        blobs.put("c" + i, code(i));
+        blobs.put("s" + i, "1. Bug " + i);
+        return new ReviewExportService.Row("r" + i, "u1", "java", timestamp, "c" + i, "s" + i, null, null, null, null);
+    }
+
+    @BeforeEach
+    void setUp() {
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+        when(mongoTemplate.getCollectionName(Review.class)).thenReturn("reviews");
+        when(mongoTemplate.stream(any(Query.class), eq(ReviewExportService.Row.class), eq("reviews"))).thenAnswer(invocation -> {
+            lastQuery.set(invocation.getArgument(0));
+            return IntStream.range(0, 3).mapToObj(this::row).onClose(() -> cursorClosed.set(true));
+        });
+        when(blobStore.getAll(any())).thenAnswer(invocation -> {
+            Map<String, String> found = new HashMap<>();
+            for (String hash : invocation.<Collection<String>>getArgument(0)) {
+                found.put(hash, blobs.get(hash));
+            }
+            return found;
+        });
+        ReflectionTestUtils.setField(exportService, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(exportService, "blobStore", blobStore);
+        ReflectionTestUtils.setField(exportService, "batchSize", 500);
+    }
+
+    // Records whether the service closed the stream it was handed
+    private static class ResponseStream extends ByteArrayOutputStream {
+        boolean closed;
+
+        @Override
+        public void close() {
+            closed = true;
+        }
+    }
+
+    @Test
+    void writesOneJsonObjectPerLine() throws IOException {
+        ResponseStream out = new ResponseStream();
+        long written = exportService.export(ReviewExportService.filter("u1", "java", null, null), out, false);
+
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(3, written);
+        assertEquals(3, lines.length);
+        JsonNode first = new ObjectMapper().readTree(lines[0]);
+        assertEquals("r0", first.get("id").asText());
+        assertEquals(code(0), first.get("code").asText());
+        assertEquals("2024-05-01T12:00", first.get("timestamp").asText());
+        assertTrue(first.get("correctedCode").isNull());
+        assertTrue(cursorClosed.get());
+        assertFalse(out.closed);
+        assertEquals(500, lastQuery.get().getMeta().getCursorBatchSize());
+        JsonNode legacy = new ObjectMapper().readTree(lines[1]);
+        assertEquals(code(1), legacy.get("code").asText());
+        assertEquals("1. Bug 2", new ObjectMapper().readTree(lines[2]).get("suggestions").asText());
+    }
+
+    @Test
+    void readsOnlyStoredFieldsAndResolvesBodiesOncePerBatch() throws IOException {
+        ReflectionTestUtils.setField(exportService, "batchSize", 2);
+        assertEquals(3, exportService.export(ReviewExportService.filter(null, null, null, null),
+                new ByteArrayOutputStream(), false));
+
+        ArgumentCaptor<Collection<String>> refs = ArgumentCaptor.captor();
+        verify(blobStore, times(2)).getAll(refs.capture());
+        assertEquals(Set.of("c0", "s0"), Set.copyOf(refs.getAllValues().get(0)));
+        assertEquals(Set.of("c2", "s2"), Set.copyOf(refs.getAllValues().get(1)));
+        verify(blobStore, never()).get(any());
+        String fields = lastQuery.get().getFieldsObject().toJson();
+        assertTrue(fields.contains("codeRef"));
+        assertFalse(fields.contains("terms"));
+        assertFalse(fields.contains("shingleSketch"));
+    }
+
+    @Test
+    void gzipOutputDecompressesToTheSameLines() throws IOException {
+        ByteArrayOutputStream plain = new ByteArrayOutputStream();
+        exportService.export(ReviewExportService.filter(null, null, null, null), plain, false);
+        ResponseStream compressed = new ResponseStream();
+        exportService.export(ReviewExportService.filter(null, null, null, null), compressed, true);
+
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray()))) {
+            assertArrayEquals(plain.toByteArray(), in.readAllBytes());
+        }
+        assertFalse(compressed.closed);
+    }
+
+    @Test
+    void filtersOnlyOnTheGivenFields() {
+        LocalDateTime from = LocalDateTime.of(2024, 1, 1, 0, 0);
+        String query = new Query(ReviewExportService.filter(null, "go", from, null)).getQueryObject().toString();
+        assertTrue(query.contains("language=go"));
+        assertTrue(query.contains("$gte"));
+        assertFalse(query.contains("userId"));
+        assertFalse(query.contains("$lt="));
+    }
+}
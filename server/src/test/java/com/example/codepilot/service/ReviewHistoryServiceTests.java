@@ -0,0 +1,80 @@
+package com.example.codepilot.service;
+
+import com.example.codepilot.models.Review;
+import com.example.codepilot.models.ReviewSummary;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ReviewHistoryServiceTests {
+
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final ReviewHistoryService service = new ReviewHistoryService();
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(service, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(service, "defaultPageSize", 20);
+        ReflectionTestUtils.setField(service, "maxPageSize", 100);
+        when(mongoTemplate.getCollectionName(Review.class)).thenReturn("reviews");
+    }
+
+    private static List<ReviewSummary> summaries(int count) {
+        List<ReviewSummary> summaries = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            ReviewSummary summary = new ReviewSummary();
+            summary.setId(new ObjectId().toHexString());
+            summary.setLanguage("java");
+            summary.setTimestamp(LocalDateTime.of(2024, 5, 1, 12, 0).minusMinutes(i));
+            summaries.add(summary);
+        }
+        return summaries;
+    }
+
+    @Test
+    void pagesByKeysetWithoutReadingBodies() {
+        List<ReviewSummary> firstPage = summaries(4);
+        when(mongoTemplate.find(any(Query.class), eq(ReviewSummary.class), eq("reviews"))).thenReturn(firstPage);
+
+        ReviewHistoryService.Page page = service.page(Criteria.where("language").is("java"), null, 3);
+        assertEquals(3, page.reviews().size());
+        assertNotNull(page.nextCursor());
+
+        service.page(Criteria.where("language").is("java"), page.nextCursor(), 3);
+        ArgumentCaptor<Query> queries = ArgumentCaptor.forClass(Query.class);
+        verify(mongoTemplate, org.mockito.Mockito.times(2)).find(queries.capture(), eq(ReviewSummary.class), eq("reviews"));
+
+        Query first = queries.getAllValues().get(0);
+        assertEquals(4, first.getLimit());
+        assertEquals(new Document("language", 1).append("timestamp", 1), first.getFieldsObject());
+        assertEquals(new Document("timestamp", -1).append("_id", -1), first.getSortObject());
+
+        String next = queries.getAllValues().get(1).getQueryObject().toString();
+        assertTrue(next.contains(firstPage.get(2).getId()), next);
+        assertTrue(next.contains("$or") && next.contains("language=java"), next);
+    }
+
+    @Test
+    void lastPageHasNoCursorAndBadCursorsAreRejected() {
+        when(mongoTemplate.find(any(Query.class), eq(ReviewSummary.class), eq("reviews"))).thenReturn(summaries(2));
+        assertNull(service.page(new Criteria(), null, null).nextCursor());
+        assertThrows(IllegalArgumentException.class, () -> service.page(new Criteria(), "not-a-cursor", null));
+    }
+}
@@ -0,0 +1,185 @@
+package com.example.codepilot.service;
+
+import com.example.codepilot.models.ReviewJob;
+import com.example.codepilot.models.ReviewResult;
+import com.example.codepilot.repository.ReviewJobRepository;
+import com.mongodb.client.result.UpdateResult;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ReviewJobServiceTests {
+
+    private static final long LEASE_MS = 60_000;
+
+    private final ReviewJobService jobService = new ReviewJobService();
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    private final ReviewService reviewService = mock(ReviewService.class);
+    private final CreditService creditService = mock(CreditService.class);
+    private ReviewJob stored; // the single document of review_jobs
+
+    // Equality and $lt on top-level fields, $or of those: all the service's filters use
+    private boolean matches(Document filter) {
+        for (Map.Entry<String, Object> condition : filter.entrySet()) {
+            if (condition.getKey().equals("$or")) {
+                if (((List<?>) condition.getValue()).stream().noneMatch(branch -> matches((Document) branch))) {
+                    return false;
+                }
+                continue;
+            }
+            Object actual = ReflectionTestUtils.getField(stored, condition.getKey().equals("_id") ? "id" : condition.getKey());
+            if (condition.getValue() instanceof Document operator) {
+                Instant bound = (Instant) operator.get("$lt");
+                if (actual == null || !((Instant) actual).isBefore(bound)) {
+                    return false;
+                }
+            } else if (!condition.getValue().equals(actual)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Applies $set and $inc in place, as findAndModify and updateFirst do on a match
+    private ReviewJob apply(Query query, Update update) {
+        if (stored == null || !matches(query.getQueryObject())) {
+            return null;
+        }
+        Document changes = update.getUpdateObject();
+        Document set = changes.get("$set", new Document());
+        set.forEach((field, value) -> ReflectionTestUtils.setField(stored, field, value));
+        Document inc = changes.get("$inc", new Document());
+        inc.forEach((field, amount) -> ReflectionTestUtils.setField(stored, field,
+                (Integer) ReflectionTestUtils.getField(stored, field) + ((Number) amount).intValue()));
+        return copy(stored);
+    }
+
+    private static ReviewJob copy(ReviewJob job) {
+        ReviewJob copy = new ReviewJob(job.getUserId(), job.getLanguage(), job.getCode());
+        copy.setId(job.getId());
+        copy.setStatus(job.getStatus());
+        copy.setCreditReserved(job.isCreditReserved());
+        copy.setCreditSettled(job.isCreditSettled());
+        copy.setAttempts(job.getAttempts());
+        copy.setWorkerId(job.getWorkerId());
+        copy.setLeaseExpiresAt(job.getLeaseExpiresAt());
+        return copy;
+    }
+
+    @BeforeEach
+    void setUp() {
+        stored = new ReviewJob("u1", "java", "class A {}");
+        stored.setId("j1");
+        stored.setCreditReserved(true);
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class),
+                eq(ReviewJob.class))).thenAnswer(invocation -> apply(invocation.getArgument(0), invocation.getArgument(1)));
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), eq(ReviewJob.class)))
+                .thenAnswer(invocation -> apply(invocation.getArgument(0), invocation.getArgument(1)));
+        when(mongoTemplate.updateFirst(any(Query.class), any(Update.class), eq(ReviewJob.class))).thenAnswer(invocation -> {
+            boolean applied = apply(invocation.getArgument(0), invocation.getArgument(1)) != null;
+            return UpdateResult.acknowledged(applied ? 1 : 0, applied ? 1L : 0L, null);
+        });
+        ReflectionTestUtils.setField(jobService, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(jobService, "reviewService", reviewService);
+        ReflectionTestUtils.setField(jobService, "creditService", creditService);
+        ReflectionTestUtils.setField(jobService, "reviewJobRepository", mock(ReviewJobRepository.class));
+        ReflectionTestUtils.setField(jobService, "usageRollups", mock(UsageRollups.class));
+        ReflectionTestUtils.setField(jobService, "leaseMs", LEASE_MS);
+        ReflectionTestUtils.setField(jobService, "maxAttempts", 3);
+    }
+
+    private ReviewJob claim(String workerId) {
+        return ReflectionTestUtils.invokeMethod(jobService, "claim", workerId);
+    }
+
+    private void fail(ReviewJob job, String workerId) {
+        ReflectionTestUtils.invokeMethod(jobService, "fail", job, workerId, "boom");
+    }
+
+    @Test
+    void claimLeasesAQueuedJobToOneWorker() {
+        Instant before = Instant.now();
+        ReviewJob job = claim("w1");
+
+        assertEquals(ReviewJob.RUNNING, job.getStatus());
+        assertEquals("w1", job.getWorkerId());
+        assertEquals(1, job.getAttempts());
+        assertFalse(job.getLeaseExpiresAt().isBefore(before.plusMillis(LEASE_MS)));
+        // The lease is still running, so nobody else gets the job
+        assertNull(claim("w2"));
+    }
+
+    @Test
+    void reclaimsAJobOnceItsLeaseExpiresAndIgnoresTheFormerOwner() {
+        ReviewJob first = claim("w1");
+        stored.setLeaseExpiresAt(Instant.now().minusSeconds(1));
+
+        ReviewJob second = claim("w2");
+        assertEquals("w2", second.getWorkerId());
+        assertEquals(2, second.getAttempts());
+
+        // The worker that lost the lease can no longer finish the job
+        fail(first, "w1");
+        assertEquals(ReviewJob.RUNNING, stored.getStatus());
+        verify(creditService, never()).refund(anyString());
+    }
+
+    @Test
+    void requeuesAnOverloadedJobWithoutUsingAnAttempt() {
+        ReviewResult shed = new ReviewResult();
+        shed.setRetryAfterSeconds(0L);
+        when(reviewService.review("u1", "class A {}", "java")).thenReturn(shed);
+
+        ReflectionTestUtils.invokeMethod(jobService, "process", claim("w1"), "w1");
+
+        assertEquals(ReviewJob.QUEUED, stored.getStatus());
+        assertEquals(0, stored.getAttempts());
+        assertFalse(stored.isCreditSettled());
+        verify(creditService, never()).refund(anyString());
+        assertNotNull(claim("w2"));
+    }
+
+    @Test
+    void refundsTheCreditOfAFailedJobOnlyOnce() {
+        ReviewJob job = claim("w1");
+        fail(job, "w1");
+        assertEquals(ReviewJob.FAILED, stored.getStatus());
+        assertTrue(stored.isCreditSettled());
+        assertNotNull(stored.getFinishedAt());
+
+        // A second failure report, e.g. from a worker racing on a reclaimed job, refunds nothing
+        stored.setStatus(ReviewJob.RUNNING);
+        fail(job, "w1");
+        verify(creditService, times(1)).refund("u1");
+    }
+
+    @Test
+    void givesUpAfterTheLastAttempt() {
+        stored.setAttempts(3);
+        ReflectionTestUtils.invokeMethod(jobService, "process", claim("w1"), "w1");
+
+        assertEquals(ReviewJob.FAILED, stored.getStatus());
+        assertEquals("Gave up after 3 attempts", stored.getError());
+        verify(reviewService, never()).review(anyString(), anyString(), anyString());
+        verify(creditService).refund("u1");
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.codepilot.service;
+
+/**
+ * Rough microbenchmark of the post-processor, with its patterns compiled once, against the
+ * original chain that compiled them on every call. See {@link Microbenchmark} for how to run it.
+ */
+public final class ReviewPostProcessorBenchmark {
+
+    private static volatile int sink;
+
+    public static void main(String[] args) {
+        String suggestions = largeSuggestions(200);
+        String corrected = "Here is the fixed code:\n```java\n" + suggestions + "\n```\nDone.";
+        System.out.printf("suggestions: %d chars%n", suggestions.length());
+
+        for (int round = 0; round < 3; round++) {
+            Microbenchmark.measure("inline   cleanSuggestions", 2000, () ->
+                    sink += ReviewPostProcessorTests.LegacyPostProcessor.cleanSuggestions(suggestions).length());
+            Microbenchmark.measure("compiled cleanSuggestions", 2000, () ->
+                    sink += ReviewPostProcessor.cleanSuggestions(suggestions).length());
+            Microbenchmark.measure("inline   extractCleanCode", 2000, () ->
+                    sink += ReviewPostProcessorTests.LegacyPostProcessor.extractCleanCode(corrected).length());
+            Microbenchmark.measure("compiled extractCleanCode", 2000, () ->
+                    sink += ReviewPostProcessor.extractCleanCode(corrected).length());
+        }
+    }
+
+    private static String largeSuggestions(int items) {
+        StringBuilder text = new StringBuilder("Here are my suggestions:\r\n\r\n");
+        for (int i = 1; i <= items; i++) {
+            text.append(i).append(") Consider making the public static helper ").append(i)
+                    .append(" private; it leaks { internal state } to callers.\r\n");
+            text.append("   - Also check the class invariants in method ").append(i).append(".\r\n\r\n");
+            if (i % 20 == 0) {
+                text.append("```java\nvoid example").append(i).append("() { return; }\n```\n");
+            }
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.codepilot.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReviewPostProcessorTests {
+
+    // Typical model output: fenced blocks, CRLF, "1)" numbering, bullets, stray code
+    static final List<String> SAMPLES = List.of(
+            "1) Use a StringBuilder in the loop.\n2) Close the reader.\n",
+            "```java\npublic class Foo {\n  void bar() {}\n}\n```\n1. Rename Foo.\n\n\n2.   Add tests.",
+            "Here are my suggestions:\r\n\r\n- Avoid static state\r\n* Prefer final fields\r\n+ Validate input\r\n",
+            "  \n\n1.\n\nCheck null before calling {@code foo}.\n  - nested bullet\n\t\ttabbed line\n",
+            "```\nno label fence\n```\n```python\nprint('x')\n```\nThe function is fine.",
+            "3) The class `Foo` has a public static void main; consider extracting it.\n10) Done.",
+            "publicity classic voids statics public_ class1 (public) {a}{b} { unterminated",
+            "````\n```` four ticks\n``js\n`` two ticks ```ts\nx\n",
+            "Line one\r\rLine two\r\n\r\nLine three\u2028- after LS\u0085* after NEL\u2029+ after PS",
+            "\u00E9t\u00E9 public \u0301public e\u0301public public\u0301 _public void\uD834\uDD67 class",
+            "",
+            "   \n\t  ",
+            "\u2003",
+            "\u0000public\u0000");
+
+    @Test
+    void cleanSuggestionsMatchesRegexChainOnSamples() {
+        for (String sample : SAMPLES) {
+            assertEquals(LegacyPostProcessor.cleanSuggestions(sample), ReviewPostProcessor.cleanSuggestions(sample),
+                    () -> "Mismatch for " + escape(sample));
+        }
+    }
+
+    @Test
+    void cleanSuggestionsMatchesRegexChainOnRandomInput() {
+        // Alphabet built from everything the regex chain reacts to
+        String alphabet = "``````\n\n\n\r\r \t\u000B\f1234567890)).  **--++{{}}abcdeilnoprstuv_publicclassvoidstatic"
+                + "\u0085\u2028\u2029\u0301\u00E9\u2003";
+        Random random = new Random(42);
+        for (int round = 0; round < 20000; round++) {
+            StringBuilder input = new StringBuilder();
+            int length = random.nextInt(60);
+            for (int i = 0; i < length; i++) {
+                if (random.nextInt(8) == 0) {
+                    String word = List.of("public", "class", "void", "static", "```java\n", "\r\n", "\n\n").get(random.nextInt(7));
+                    input.append(word);
+                } else {
+                    input.append(alphabet.charAt(random.nextInt(alphabet.length())));
+                }
+            }
+            String text = input.toString();
+            String expected = LegacyPostProcessor.cleanSuggestions(text);
+            assertEquals(expected, ReviewPostProcessor.cleanSuggestions(text), () -> "Mismatch for " + escape(text));
+        }
+    }
+
+    @Test
+    void extractCleanCodeMatchesRegex() {
+        List<String> inputs = List.of(
+                "Here you go:\n```java\npublic class A {}\n```\ntrailing",
+                "```\n\n```",
+                "```java   \n\n  int x;\n```",
+                "no fences at all\n",
+                "```java int x; ```",
+                "text ```` \n```\ncode\n```",
+                "```py\r\nprint(1)\r\n```",
+                "```a\n```b\nfirst\n```\n```c\nsecond\n```");
+        for (String input : inputs) {
+            assertEquals(LegacyPostProcessor.extractCleanCode(input), ReviewPostProcessor.extractCleanCode(input),
+                    () -> "Mismatch for " + escape(input));
+        }
+
+        String alphabet = "```\n\n \r\tab_1`";
+        Random random = new Random(7);
+        for (int round = 0; round < 20000; round++) {
+            StringBuilder input = new StringBuilder();
+            int length = random.nextInt(30);
+            for (int i = 0; i < length; i++) {
+                input.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            String text = input.toString();
+            assertEquals(LegacyPostProcessor.extractCleanCode(text), ReviewPostProcessor.extractCleanCode(text),
+                    () -> "Mismatch for " + escape(text));
+        }
+    }
+
+    private static String escape(String text) {
+        StringBuilder escaped = new StringBuilder("\"");
+        for (char c : text.toCharArray()) {
+            escaped.append(c >= ' ' && c < 127 ? String.valueOf(c) : String.format("\\u%04x", (int) c));
+        }
+        return escaped.append('"').toString();
+    }
+
+    // The original regex chain, compiling its patterns on every call, kept as the reference
+    static final class LegacyPostProcessor {
+
+        static String cleanSuggestions(String suggestions) {
+            if (suggestions == null || suggestions.isBlank())
+                return "";
+
+            suggestions = suggestions.replaceAll("```[a-zA-Z]*\\n", "")
+                                   .replaceAll("```", "");
+            suggestions = suggestions.replace("\r\n", "\n").trim();
+            suggestions = suggestions.replaceAll("(?m)^(\\d+)\\)", "$1.")
+                                   .replaceAll("(?m)^(\\d+)\\.\\s*", "$1. ");
+            suggestions = suggestions.replaceAll("(?m)^[\\s*\\-+]\\s*", "");
+            suggestions = suggestions.replaceAll("(?m)^\\s*$[\r\n]+", "");
+            suggestions = suggestions.replaceAll("\\b(?:public|class|void|static)\\b", "")
+                                   .replaceAll("\\{[^}]*\\}", "");
+            return suggestions.trim();
+        }
+
+        static String extractCleanCode(String response) {
+            Pattern pattern = Pattern.compile("(?s)```(?:\\w+)?\\s*\\n(.*?)\\n```");
+            Matcher matcher = pattern.matcher(response);
+            if (matcher.find()) {
+                return matcher.group(1).trim();
+            }
+            return response.trim();
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package com.example.codepilot.service;
+
+import com.example.codepilot.models.Review;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class ReviewSearchServiceTests {
+
+    private final ReviewSearchService searchService = new ReviewSearchService();
+    private final AtomicReference<Query> lastQuery = new AtomicReference<>();
+
+    @BeforeEach
+    void setUp() {
+        MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+        when(mongoTemplate.getCollectionName(Review.class)).thenReturn("reviews");
+        when(mongoTemplate.find(any(Query.class), eq(ReviewSearchService.Hit.class), anyString())).thenAnswer(invocation -> {
+            Query query = invocation.getArgument(0);
+            lastQuery.set(query);
+            return IntStream.range(0, query.getLimit())
+                    .mapToObj(i -> new ReviewSearchService.Hit("r" + i, "java", null, 10.0 - i)).toList();
+        });
+        ReflectionTestUtils.setField(searchService, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(searchService, "defaultPageSize", 20);
+        ReflectionTestUtils.setField(searchService, "maxPageSize", 100);
+        ReflectionTestUtils.setField(searchService, "maxResults", 1000);
+    }
+
+    @Test
+    void searchesOneUsersReviewsRankedByScore() {
+        ReviewSearchService.Page page = searchService.search("u1", "null pointer", "java", 2, 10);
+
+        Query query = lastQuery.get();
+        String filter = query.getQueryObject().toString();
+        assertTrue(filter.contains("$search=null pointer"));
+        assertTrue(filter.contains("userId=u1"));
+        assertTrue(filter.contains("language=java"));
+        assertTrue(query.getSortObject().toString().contains("textScore"));
+        assertEquals(20, query.getSkip());
+        assertEquals(11, query.getLimit());
+        assertEquals(10, page.reviews().size());
+        assertTrue(page.hasMore());
+        assertEquals(2, page.page());
+    }
+
+    @Test
+    void refusesPagesPastTheResultLimit() {
+        assertThrows(IllegalArgumentException.class, () -> searchService.search("u1", "npe", null, 10, 100));
+        assertEquals(20, searchService.search("u1", "npe", null, null, null).reviews().size());
+    }
+
+    @Test
+    void termsKeepIdentifiersAndTheirParts() {
+        List<String> terms = SearchTerms.of("String getUserName(user_id) { return null; } // 42 x",
+                "1. Bug: possible NullPointerException");
+        assertTrue(terms.containsAll(List.of("string", "getusername", "get", "user", "name", "user_id", "id",
+                "nullpointerexception", "pointer", "exception", "bug", "possible")));
+        assertFalse(terms.contains("42"));
+        assertFalse(terms.contains("x"));
+        assertEquals(terms.size(), terms.stream().distinct().count());
+    }
+
+    @Test
+    void termsLeaveOutKeywordsAndStopwords() {
+        assertEquals(List.of("total", "values", "length", "loop", "fine"),
+                SearchTerms.of("public static int total(int[] values) { return values.length; }",
+                        "The loop is fine and you can return it."));
+    }
+
+    @Test
+    void termsKeepARareIdentifierOfALongBody() {
+        StringBuilder code = new StringBuilder();
+        for (int i = 0; i < 2000; i++) {
+            code.append("int count").append(i % 50).append(" = offset + count").append(i % 50).append(";\n");
+            if (i == 1500) {
+                code.append("reconcileLedgerEntries(batch);\n");
+            }
+        }
+        List<String> terms = SearchTerms.of(code.toString(), "1. Rename the counters.");
+        assertTrue(terms.contains("reconcileledgerentries"));
+        assertTrue(terms.contains("ledger"));
+        assertFalse(terms.contains("int"));
+    }
+}
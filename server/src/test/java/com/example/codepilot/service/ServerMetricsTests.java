@@ -0,0 +1,67 @@
+package com.example.codepilot.service;
+
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ServerMetricsTests {
+
+    private final ServerMetrics metrics = new ServerMetrics();
+
+    private ObservationRegistry registry() {
+        ObservationRegistry registry = ObservationRegistry.create();
+        registry.observationConfig().observationHandler(metrics);
+        return registry;
+    }
+
+    @Test
+    void observationsBecomeTaggedTimers() {
+        ObservationRegistry registry = registry();
+        for (int i = 0; i < 3; i++) {
+            Observation.createNotStarted("ollama.generate", registry)
+                    .lowCardinalityKeyValue("model", "m1")
+                    .lowCardinalityKeyValue("prompt.type", "suggestions")
+                    .observe(() -> { });
+        }
+        assertThrows(IllegalStateException.class, () -> Observation.createNotStarted("ollama.generate", registry)
+                .lowCardinalityKeyValue("model", "m1")
+                .lowCardinalityKeyValue("prompt.type", "suggestions")
+                .observe(() -> {
+                    throw new IllegalStateException("down");
+                }));
+
+        String scrape = metrics.scrape();
+        assertTrue(scrape.contains("# TYPE ollama_generate_seconds summary\n"));
+        assertTrue(scrape.contains(
+                "ollama_generate_seconds_count{error=\"none\",model=\"m1\",prompt_type=\"suggestions\"} 3\n"), scrape);
+        assertTrue(scrape.contains(
+                "ollama_generate_seconds_count{error=\"IllegalStateException\",model=\"m1\",prompt_type=\"suggestions\"} 1\n"));
+        assertTrue(scrape.contains("quantile=\"0.99\"}"));
+        // The maximum is its own gauge family, after the summary rather than inside it
+        int maxFamily = scrape.indexOf("# TYPE ollama_generate_seconds_max gauge\n");
+        assertTrue(maxFamily > scrape.lastIndexOf("ollama_generate_seconds_sum{"), scrape);
+        assertTrue(scrape.indexOf("ollama_generate_seconds_max{") > maxFamily);
+        assertTrue(scrape.contains("ollama_generate_active_count 0\n"));
+    }
+
+    @Test
+    void reportsRunningObservationsAndGauges() {
+        AtomicInteger waiting = new AtomicInteger(2);
+        metrics.gauge("model.admission.waiting", waiting::get);
+        Observation running = Observation.createNotStarted("ollama.generate", registry()).start();
+
+        String scrape = metrics.scrape();
+        assertTrue(scrape.contains("ollama_generate_active_count 1\n"));
+        assertTrue(scrape.contains("model_admission_waiting 2\n"));
+
+        running.stop();
+        waiting.set(0);
+        scrape = metrics.scrape();
+        assertTrue(scrape.contains("ollama_generate_active_count 0\n"));
+        assertTrue(scrape.contains("model_admission_waiting 0\n"));
+    }
+}
@@ -0,0 +1,142 @@
+package com.example.codepilot.service;
+
+import com.example.codepilot.models.Review;
+import com.example.codepilot.repository.ReviewRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class SimilarityIndexTests {
+
+    private static final String PARSE = """
+            def parse(line):
+                key, value = line.split("=", 1)
+                if not key:
+                    raise ValueError("empty key")
+                return key.strip(), value.strip()
+            """;
+
+    private static final String AVERAGE = """
+            def average(numbers):
+                total = 0
+                for n in numbers:
+                    total += n
+                return total / len(numbers)
+            """;
+
+    private final Map<String, Review> stored = new ConcurrentHashMap<>();
+    private final ReviewRepository reviewRepository = mock(ReviewRepository.class);
+    private SimilarityIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new SimilarityIndex();
+        ReflectionTestUtils.setField(index, "reviewRepository", reviewRepository);
+        ReflectionTestUtils.setField(index, "enabled", true);
+        ReflectionTestUtils.setField(index, "maxDistance", 3);
+        ReflectionTestUtils.setField(index, "minJaccard", 0.85);
+        ReflectionTestUtils.setField(index, "maxEntries", 1000);
+        when(reviewRepository.findById(anyString()))
+                .thenAnswer(invocation -> Optional.ofNullable(stored.get(invocation.<String>getArgument(0))));
+    }
+
+    // A saved review as ReviewEventListener leaves it
+    private Review add(String id, String userId, String code) {
+        return add(id, userId, code, CodeFingerprint.of(code, "python").simHash());
+    }
+
+    // simHash may be taken from other code, to make the entry a candidate for that code
+    private Review add(String id, String userId, String code, long simHash) {
+        Review review = new Review();
+        review.setId(id);
+        review.setUserId(userId);
+        review.setLanguage("python");
+        review.setCode(code);
+        review.setSuggestions("suggestions for " + id);
+        CodeFingerprint fingerprint = CodeFingerprint.of(code, "python");
+        review.setSimHash(simHash);
+        review.setShingleSketch(CodeFingerprint.encodeSketch(fingerprint.sketch()));
+        stored.put(id, review);
+        index.add(review);
+        return review;
+    }
+
+    private long stat(String name) {
+        return ((Number) index.getStats().get(name)).longValue();
+    }
+
+    @Test
+    void findsReformattedAndRenamedCodeOfTheSameUser() {
+        add("r1", "alice", PARSE);
+        String variant = "# split a setting\ndef parse_setting(text):\n  k, v = text.split('=', 1)\n"
+                + "  if not k:\n    raise ValueError('no key')\n  return k.strip(), v.strip()\n";
+
+        Optional<SimilarityIndex.Match> match = index.findSimilar("alice", variant, "Python");
+
+        assertTrue(match.isPresent());
+        assertEquals("r1", match.get().review().getId());
+        assertEquals(1.0, match.get().similarity());
+        assertEquals(1, stat("hits"));
+    }
+
+    @Test
+    void neverServesAnotherUsersReview() {
+        add("r1", "alice", PARSE);
+
+        assertTrue(index.findSimilar("bob", PARSE, "python").isEmpty());
+        assertTrue(index.findSimilar(null, PARSE, "python").isEmpty());
+        assertTrue(index.findSimilar("alice", PARSE, "ruby").isEmpty());
+        assertEquals(0, stat("candidates"));
+    }
+
+    @Test
+    void confirmsCandidatesInMemoryAndCountsFalsePositives() {
+        // A SimHash collision: the entry is a candidate for PARSE, but its shingles are not
+        add("r1", "alice", AVERAGE, CodeFingerprint.of(PARSE, "python").simHash());
+
+        assertTrue(index.findSimilar("alice", PARSE, "python").isEmpty());
+        assertEquals(1, stat("candidates"));
+        assertEquals(1, stat("falsePositives"));
+        assertEquals(0, stat("hits"));
+        verify(reviewRepository, never()).findById(anyString());
+    }
+
+    @Test
+    void appliesTheJaccardThreshold() {
+        String longer = AVERAGE.replace("return total / len(numbers)",
+                "if not numbers:\n        return 0\n    return total / len(numbers)");
+        add("r1", "alice", AVERAGE, CodeFingerprint.of(longer, "python").simHash());
+        double similarity = CodeFingerprint.of(AVERAGE, "python").jaccard(CodeFingerprint.of(longer, "python"));
+        assertTrue(similarity > 0.3 && similarity < 0.85, "similarity " + similarity);
+
+        assertTrue(index.findSimilar("alice", longer, "python").isEmpty());
+        ReflectionTestUtils.setField(index, "minJaccard", similarity - 0.01);
+        assertEquals(similarity, index.findSimilar("alice", longer, "python").orElseThrow().similarity(), 1e-9);
+    }
+
+    @Test
+    void evictsTheOldestEntriesPastTheCap() {
+        ReflectionTestUtils.setField(index, "maxEntries", 2);
+        add("r1", "alice", PARSE);
+        add("r2", "alice", AVERAGE);
+        add("r3", "alice", "def greet(name):\n    print('hello', name)\n    return None\n");
+
+        assertEquals(2, stat("entries"));
+        assertEquals(1, stat("evictions"));
+        assertTrue(index.findSimilar("alice", PARSE, "python").isEmpty());
+        assertEquals("r2", index.findSimilar("alice", AVERAGE, "python").orElseThrow().review().getId());
+        assertEquals("r3", index.findSimilar("alice", "def greet(who):\n    print('hi', who)\n    return None\n",
+                "python").orElseThrow().review().getId());
+    }
+}
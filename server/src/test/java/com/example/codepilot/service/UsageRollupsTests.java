@@ -0,0 +1,160 @@
+package com.example.codepilot.service;
+
+import com.example.codepilot.models.DailyLatency;
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Clock;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class UsageRollupsTests {
+
+    private final UsageRollups rollups = new UsageRollups();
+    private final MongoTemplate mongoTemplate = mock(MongoTemplate.class);
+    // Rollup documents by id, as the bulk upserts left them
+    private final Map<String, Document> stored = new ConcurrentHashMap<>();
+    private boolean failWrites;
+
+    @SuppressWarnings("unchecked")
+    private void upsert(Query query, Update update) {
+        if (failWrites) {
+            throw new IllegalStateException("write failed");
+        }
+        String id = query.getQueryObject().getString("_id");
+        Document operations = update.getUpdateObject();
+        Document document = stored.computeIfAbsent(id, key -> {
+            Document created = new Document("_id", key);
+            ((Map<String, Object>) operations.get("$setOnInsert")).forEach(created::put);
+            return created;
+        });
+        ((Map<String, Object>) operations.get("$inc")).forEach((field, value) -> {
+            Number current = (Number) document.getOrDefault(field, 0L);
+            if (value instanceof Double || current instanceof Double) {
+                document.put(field, current.doubleValue() + ((Number) value).doubleValue());
+            } else {
+                document.put(field, current.longValue() + ((Number) value).longValue());
+            }
+        });
+        Map<String, Object> max = (Map<String, Object>) operations.get("$max");
+        if (max != null) {
+            max.forEach((field, value) -> document.put(field,
+                    Math.max(((Number) document.getOrDefault(field, Long.MIN_VALUE)).longValue(), ((Number) value).longValue())));
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        when(mongoTemplate.bulkOps(eq(BulkOperations.BulkMode.UNORDERED), any(Class.class))).thenAnswer(invocation -> {
+            List<Object[]> ops = new java.util.ArrayList<>();
+            BulkOperations bulk = mock(BulkOperations.class);
+            when(bulk.upsert(any(Query.class), any(Update.class))).thenAnswer(call -> {
+                ops.add(new Object[]{call.getArgument(0), call.getArgument(1)});
+                return bulk;
+            });
+            when(bulk.execute()).thenAnswer(call -> {
+                ops.forEach(op -> upsert((Query) op[0], (Update) op[1]));
+                return null;
+            });
+            return bulk;
+        });
+        ReflectionTestUtils.setField(rollups, "mongoTemplate", mongoTemplate);
+        ReflectionTestUtils.setField(rollups, "enabled", true);
+        rollups.clock = Clock.fixed(Instant.parse("2024-05-01T23:59:00Z"), ZoneOffset.UTC);
+    }
+
+    @Test
+    void sumsEventsIntoOneDocumentPerDayAndKey() {
+        rollups.recordReview("Java", false, false);
+        rollups.recordReview("java", true, false);
+        rollups.recordReview("go", false, true);
+        rollups.recordConsumed("u1", 1);
+        rollups.recordConsumed("u1", 1);
+        rollups.recordConsumed("u1", -1);
+        rollups.recordPurchase("u1", 100, 49.5);
+        rollups.flush();
+        rollups.recordReview("java", false, false);
+        rollups.flush();
+
+        Document java = stored.get("2024-05-01|java");
+        assertEquals(3L, java.get("reviews"));
+        assertEquals(1L, java.get("cached"));
+        assertEquals("java", java.get("language"));
+        assertEquals(1L, stored.get("2024-05-01|go").get("partial"));
+        Document credits = stored.get("2024-05-01|u1");
+        assertEquals(1L, credits.get("consumed"));
+        assertEquals(100L, credits.get("purchased"));
+        assertEquals(49.5, credits.get("spent"));
+        assertEquals(3, stored.size());
+    }
+
+    @Test
+    void keepsIncrementsOfAFailedFlushForTheNext() {
+        rollups.recordModelCall("m", 120, false);
+        failWrites = true;
+        rollups.flush();
+        rollups.recordModelCall("m", 80, true);
+        failWrites = false;
+        rollups.flush();
+
+        Document latency = stored.get("2024-05-01|m");
+        assertEquals(2L, latency.get("calls"));
+        assertEquals(1L, latency.get("failures"));
+        assertEquals(200L, latency.get("totalMs"));
+        assertEquals(120L, latency.get("maxMs"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void latencyPercentilesMergeAcrossDays() {
+        Random random = new Random(7);
+        long[] samples = new long[20000];
+        LatencyHistogram[] days = {new LatencyHistogram(), new LatencyHistogram()};
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = 50 + (long) (random.nextDouble() * random.nextDouble() * 60000);
+            days[i % 2].record(samples[i]);
+        }
+        java.util.Arrays.sort(samples);
+
+        List<DailyLatency> stored = List.of(
+                new DailyLatency("2024-05-01|m", "2024-05-01", "m", 10000, 0, 0, 0, days[0].buckets()),
+                new DailyLatency("2024-05-02|m", "2024-05-02", "m", 10000, 0, 0, 0, days[1].buckets()));
+        when(mongoTemplate.find(any(Query.class), eq(DailyLatency.class))).thenReturn(stored);
+
+        Map<String, Object> stats = (Map<String, Object>) rollups.latency(LocalDate.of(2024, 5, 1), LocalDate.of(2024, 5, 2), "m").get("m");
+        assertEquals(20000L, stats.get("calls"));
+        for (String p : List.of("p50", "p90", "p99")) {
+            double q = Integer.parseInt(p.substring(1)) / 100.0;
+            long exact = samples[(int) Math.ceil(q * samples.length) - 1];
+            long estimate = (Long) stats.get(p);
+            assertTrue(Math.abs(estimate - exact) <= exact * 0.05, p + ": " + estimate + " vs " + exact);
+        }
+    }
+
+    @Test
+    void bucketsCoverEveryValueWithBoundedError() {
+        for (long value : new long[]{0, 1, 15, 16, 17, 31, 32, 33, 1000, 123456, 86_400_000L}) {
+            int bucket = LatencyHistogram.bucketOf(value);
+            assertTrue(LatencyHistogram.lowerBound(bucket) <= value);
+            assertTrue(LatencyHistogram.lowerBound(bucket + 1) > value);
+            assertTrue(LatencyHistogram.lowerBound(bucket + 1) - LatencyHistogram.lowerBound(bucket) <= Math.max(1, value / 16));
+        }
+    }
+}